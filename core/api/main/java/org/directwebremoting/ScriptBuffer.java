@@ -188,6 +188,29 @@ public class ScriptBuffer
         return this;
     }
 
+    /**
+     * Scripts that have not yet been sent to a browser may be replaced by a
+     * newer script with the same key, if the script session is configured to
+     * do so when it has too many scripts waiting. This is useful for scripts
+     * that carry the latest value of something, where older values are of no
+     * interest once a newer one is available.
+     * @param replaceKey The key that identifies what this script updates, or
+     * null if this script should never replace another.
+     */
+    public void setReplaceKey(String replaceKey)
+    {
+        this.replaceKey = replaceKey;
+    }
+
+    /**
+     * @see #setReplaceKey(String)
+     * @return The key that identifies what this script updates, or null
+     */
+    public String getReplaceKey()
+    {
+        return replaceKey;
+    }
+
     /* (non-Javadoc)
      * @see java.lang.Object#toString()
      */
@@ -211,4 +234,9 @@ public class ScriptBuffer
      * This is where we store all the script components waiting to be serialized
      */
     private final List<Object> parts = new ArrayList<Object>();
+
+    /**
+     * @see #setReplaceKey(String)
+     */
+    private String replaceKey = null;
 }
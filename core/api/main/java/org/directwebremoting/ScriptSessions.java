@@ -18,6 +18,8 @@ package org.directwebremoting;
 import java.util.Collection;
 
 import org.directwebremoting.event.ScriptSessionBindingListener;
+import org.directwebremoting.extend.ConvertedScriptBuffer;
+import org.directwebremoting.extend.ConverterManager;
 
 /**
  * A class to act on the current {@link ScriptSession}(s).
@@ -92,14 +94,53 @@ public class ScriptSessions
             public void run()
             {
                 Collection<ScriptSession> sessions = Browser.getTargetSessions();
+                ScriptBuffer shared = convertForSessions(script, sessions.size());
                 for (ScriptSession scriptSession : sessions)
                 {
-                    scriptSession.addScript(script);
+                    scriptSession.addScript(shared);
                 }
             }
         });
     }
 
+    /**
+     * When a script is going to many script sessions we convert it once here
+     * rather than once for each of them.
+     * @param script The script to send
+     * @param sessionCount The number of script sessions that it is going to
+     * @return A converted copy of the script, or the original if there is
+     * nothing to gain or it could not be converted
+     */
+    private static ScriptBuffer convertForSessions(ScriptBuffer script, int sessionCount)
+    {
+        if (sessionCount < 2)
+        {
+            return script;
+        }
+
+        ServerContext serverContext = ServerContextFactory.get();
+        if (serverContext == null)
+        {
+            return script;
+        }
+
+        ConverterManager converterManager = serverContext.getContainer().getBean(ConverterManager.class);
+        if (converterManager == null)
+        {
+            return script;
+        }
+
+        try
+        {
+            return new ConvertedScriptBuffer(script, converterManager);
+        }
+        catch (ConversionException ex)
+        {
+            // Each session will try again and report the failure as usual
+            return script;
+        }
+    }
+
     /**
      * Utility to add the given script to all known browsers.
      * This version automatically wraps the string in a ClientScript object.
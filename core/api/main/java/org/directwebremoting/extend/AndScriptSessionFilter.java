@@ -38,6 +38,22 @@ public class AndScriptSessionFilter implements ScriptSessionFilter
         return left.match(session) && right.match(session);
     }
 
+    /**
+     * @return The first filter to be checked
+     */
+    public ScriptSessionFilter getLeft()
+    {
+        return left;
+    }
+
+    /**
+     * @return The second filter to be checked
+     */
+    public ScriptSessionFilter getRight()
+    {
+        return right;
+    }
+
     private final ScriptSessionFilter left;
 
     private final ScriptSessionFilter right;
@@ -15,6 +15,9 @@
  */
 package org.directwebremoting.extend;
 
+import java.io.IOException;
+import java.io.Writer;
+
 /**
  * An OutboundVariable that declares a JavaScript array
  * @author Joe Walker [joe at getahead dot ltd dot uk]
@@ -34,14 +37,13 @@ public class ArrayOutboundVariable extends NestedOutboundVariable
      */
     public String getDeclareCode()
     {
-        if (isInline())
-        {
-            return getChildDeclareCodes();
-        }
-        else
+        return toCode(new CodeWriter()
         {
-            return getChildDeclareCodes() + "var " + getVariableName() + "=[];";
-        }
+            public void write(Writer out) throws IOException
+            {
+                writeDeclareCode(out);
+            }
+        });
     }
 
     /* (non-Javadoc)
@@ -49,66 +51,102 @@ public class ArrayOutboundVariable extends NestedOutboundVariable
      */
     public String getBuildCode()
     {
-        if (isInline())
+        return toCode(new CodeWriter()
         {
-            return getChildBuildCodes();
-        }
-        else
+            public void write(Writer out) throws IOException
+            {
+                writeBuildCode(out);
+            }
+        });
+    }
+
+    /* (non-Javadoc)
+     * @see org.directwebremoting.extend.OutboundVariable#getAssignCode()
+     */
+    public String getAssignCode()
+    {
+        return toCode(new CodeWriter()
         {
-            StringBuffer buffer = new StringBuffer(getChildBuildCodes());
+            public void write(Writer out) throws IOException
+            {
+                writeAssignCode(out);
+            }
+        });
+    }
+
+    /* (non-Javadoc)
+     * @see org.directwebremoting.extend.NestedOutboundVariable#writeDeclareCode(java.io.Writer)
+     */
+    @Override
+    public void writeDeclareCode(Writer out) throws IOException
+    {
+        writeChildDeclareCodes(out);
+
+        if (!isInline())
+        {
+            out.write("var ");
+            out.write(getVariableName());
+            out.write("=[];");
+        }
+    }
 
+    /* (non-Javadoc)
+     * @see org.directwebremoting.extend.NestedOutboundVariable#writeBuildCode(java.io.Writer)
+     */
+    @Override
+    public void writeBuildCode(Writer out) throws IOException
+    {
+        writeChildBuildCodes(out);
+
+        if (!isInline())
+        {
             int i = 0;
             String variableName = getVariableName();
             for (OutboundVariable child : getChildren())
             {
                 if (child != null)
                 {
-                    buffer.append(variableName);
-                    buffer.append('[');
-                    buffer.append(i);
-                    buffer.append("]=");
-                    buffer.append(child.getAssignCode());
-                    buffer.append(';');
+                    out.write(variableName);
+                    out.write('[');
+                    out.write(String.valueOf(i));
+                    out.write("]=");
+                    ScriptBufferUtil.writeAssignCode(child, out);
+                    out.write(';');
                 }
 
                 i++;
             }
-            buffer.append("\r\n");
-
-            return buffer.toString();
+            out.write("\r\n");
         }
     }
 
     /* (non-Javadoc)
-     * @see org.directwebremoting.extend.OutboundVariable#getAssignCode()
+     * @see org.directwebremoting.extend.NestedOutboundVariable#writeAssignCode(java.io.Writer)
      */
-    public String getAssignCode()
+    @Override
+    public void writeAssignCode(Writer out) throws IOException
     {
         if (isInline())
         {
-            StringBuffer buffer = new StringBuffer();
-
-            buffer.append("[");
+            out.write('[');
 
             boolean first = true;
             for (OutboundVariable child : getChildren())
             {
                 if (!first)
                 {
-                    buffer.append(',');
+                    out.write(',');
                 }
 
-                buffer.append(child.getAssignCode());
+                ScriptBufferUtil.writeAssignCode(child, out);
 
                 first = false;
             }
-            buffer.append("]");
-
-            return buffer.toString();
+            out.write(']');
         }
         else
         {
-            return getVariableName();
+            out.write(getVariableName());
         }
     }
 }
@@ -15,11 +15,16 @@
  */
 package org.directwebremoting.extend;
 
+import java.lang.ref.WeakReference;
 import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
+import java.util.WeakHashMap;
+import java.util.concurrent.ConcurrentHashMap;
 
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
@@ -133,9 +138,53 @@ public class Call
         }
 
         int inputArgCount = inctx.getParameterCount(callNum);
+        Creator creator = creatorManager.getCreator(scriptName, true);
+
+        // The outcome of the match depends only on the type, the method name
+        // and the shape of the inbound parameters, so we can remember it.
+        // The type is part of the key, so a reloaded class is a new entry
+        Class<?>[] declaredTypes = new Class<?>[inputArgCount];
+        for (int i = 0; i < inputArgCount; i++)
+        {
+            declaredTypes[i] = converterManager.getClientDeclaredType(inctx.getParameter(callNum, i));
+        }
+
+        Map<MethodKey, Method> methodCache = getMethodCache(converterManager);
+        MethodKey key = new MethodKey(creator.getType(), methodName, declaredTypes);
+        Method cached = methodCache.get(key);
+        if (cached != null)
+        {
+            method = cached;
+            checkProxiedMethod(creatorManager);
+            return;
+        }
+
+        method = matchMethod(creator, converterManager, inctx, callNum, inputArgCount);
+
+        // A varargs method can match any number of inputs, so caching them
+        // would allow a client to grow the cache without limit
+        if (!method.isVarArgs())
+        {
+            skipAccessChecks(method);
+            methodCache.put(key, method);
+        }
+
+        checkProxiedMethod(creatorManager);
+    }
 
+    /**
+     * Do the reflective work for {@link #findMethod}, without any caching.
+     * @param creator The creator for the script that we are calling
+     * @param converterManager To check that we can convert the parameters
+     * @param inctx The parsed inbound data
+     * @param callNum The call number within the batch
+     * @param inputArgCount The number of parameters passed by the client
+     * @return The single best matching method
+     * @throws IllegalArgumentException If there is no single best match
+     */
+    private Method matchMethod(Creator creator, ConverterManager converterManager, InboundContext inctx, int callNum, int inputArgCount)
+    {
         // Get a mutable list of all methods on the type specified by the creator
-        Creator creator = creatorManager.getCreator(scriptName, true);
         List<Method> allMethods = new ArrayList<Method>();
         allMethods.addAll(Arrays.asList(creator.getType().getMethods()));
 
@@ -207,9 +256,7 @@ public class Call
         }
         else if (allMethods.size() == 1)
         {
-            method = allMethods.get(0);
-            checkProxiedMethod(creatorManager);
-            return;
+            return allMethods.get(0);
         }
 
         // If we have methods that exactly match the param count we use a
@@ -226,9 +273,7 @@ public class Call
         if (exactParamCountMatches.size() == 1)
         {
             // One method with the right number of params - use that
-            method = exactParamCountMatches.get(0);
-            checkProxiedMethod(creatorManager);
-            return;
+            return exactParamCountMatches.get(0);
         }
 
         // Lots of methods with the right name, but none with the right
@@ -245,9 +290,7 @@ public class Call
 
         if (varargsMathods.size() == 1)
         {
-            method = varargsMathods.get(0);
-            checkProxiedMethod(creatorManager);
-            return;
+            return varargsMathods.get(0);
         }
 
         log.warn("Can't find single method to match " + creator.getType() + "." + methodName);
@@ -347,6 +390,167 @@ public class Call
         }
     }
 
+    /**
+     * The methods that we cache are shared between calls, so we can turn off
+     * the access checks once and save {@link Method#invoke(Object, Object...)}
+     * from repeating them on every call. We only do this for methods of public
+     * classes so we don't change what can be called.
+     * @param method The method that we are about to cache
+     */
+    private static void skipAccessChecks(Method method)
+    {
+        if (Modifier.isPublic(method.getDeclaringClass().getModifiers()))
+        {
+            try
+            {
+                method.setAccessible(true);
+            }
+            catch (RuntimeException ex)
+            {
+                // A SecurityException, or on Java 9+ an exception because the
+                // class is in a module that is not open to us. Either way
+                // Method.invoke() will just do the checks itself.
+            }
+        }
+    }
+
+    /**
+     * Find the cache of resolved methods for a set of converters
+     * @param converterManager The converters that the methods were matched with
+     * @return The cache, created if needed
+     */
+    private static Map<MethodKey, Method> getMethodCache(ConverterManager converterManager)
+    {
+        // There is almost always only one ConverterManager, so we can usually
+        // use the last cache without taking the lock
+        LastMethodCache last = lastMethodCache;
+        if (last != null && last.converterManager.get() == converterManager)
+        {
+            return last.methodCache;
+        }
+
+        synchronized (methodCaches)
+        {
+            Map<MethodKey, Method> methodCache = methodCaches.get(converterManager);
+            if (methodCache == null)
+            {
+                methodCache = new ConcurrentHashMap<MethodKey, Method>();
+                methodCaches.put(converterManager, methodCache);
+            }
+
+            lastMethodCache = new LastMethodCache(converterManager, methodCache);
+            return methodCache;
+        }
+    }
+
+    /**
+     * Forget the methods that we have matched using a set of converters.
+     * Changing the converters can change which methods match a call, so
+     * {@link ConverterManager}s should call this when they are altered.
+     * @param converterManager The converters that have changed
+     */
+    public static void clearMethodCache(ConverterManager converterManager)
+    {
+        synchronized (methodCaches)
+        {
+            methodCaches.remove(converterManager);
+            lastMethodCache = null;
+        }
+    }
+
+    /**
+     * The cache that {@link #getMethodCache(ConverterManager)} last found.
+     * The converters are weakly held for the same reason as in
+     * {@link Call#methodCaches}.
+     */
+    private static final class LastMethodCache
+    {
+        LastMethodCache(ConverterManager converterManager, Map<MethodKey, Method> methodCache)
+        {
+            this.converterManager = new WeakReference<ConverterManager>(converterManager);
+            this.methodCache = methodCache;
+        }
+
+        private final WeakReference<ConverterManager> converterManager;
+
+        private final Map<MethodKey, Method> methodCache;
+    }
+
+    /**
+     * The key for the cache of resolved methods.
+     * Two lookups are the same if they are for the same method name on the
+     * same type, with the same number of inbound parameters and the same
+     * client declared types for those parameters.
+     */
+    private static final class MethodKey
+    {
+        MethodKey(Class<?> type, String methodName, Class<?>[] declaredTypes)
+        {
+            this.type = type;
+            this.methodName = methodName;
+            this.declaredTypes = declaredTypes;
+
+            int hash = type.hashCode();
+            hash = 31 * hash + methodName.hashCode();
+            hash = 31 * hash + Arrays.hashCode(declaredTypes);
+            this.hashCode = hash;
+        }
+
+        /* (non-Javadoc)
+         * @see java.lang.Object#equals(java.lang.Object)
+         */
+        @Override
+        public boolean equals(Object obj)
+        {
+            if (this == obj)
+            {
+                return true;
+            }
+
+            if (!(obj instanceof MethodKey))
+            {
+                return false;
+            }
+
+            MethodKey that = (MethodKey) obj;
+            return this.type == that.type &&
+                   this.methodName.equals(that.methodName) &&
+                   Arrays.equals(this.declaredTypes, that.declaredTypes);
+        }
+
+        /* (non-Javadoc)
+         * @see java.lang.Object#hashCode()
+         */
+        @Override
+        public int hashCode()
+        {
+            return hashCode;
+        }
+
+        private final Class<?> type;
+
+        private final String methodName;
+
+        private final Class<?>[] declaredTypes;
+
+        private final int hashCode;
+    }
+
+    /**
+     * The methods that we have previously matched, for each set of converters.
+     * Calls are created for every request, so this needs to be shared. The
+     * converters are weakly held so a redeployed webapp does not leave its
+     * classes pinned here.
+     * <p>GuardedBy("methodCaches")
+     */
+    private static final Map<ConverterManager, Map<MethodKey, Method>> methodCaches = new WeakHashMap<ConverterManager, Map<MethodKey, Method>>();
+
+    /**
+     * The last entry found in {@link #methodCaches}, so most calls can skip
+     * the lock.
+     */
+    private static volatile LastMethodCache lastMethodCache = null;
+
     private final String callId;
 
     private final String scriptName;
@@ -0,0 +1,82 @@
+/*
+ * Copyright 2005 Joe Walker
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.directwebremoting.extend;
+
+import org.directwebremoting.ConversionException;
+import org.directwebremoting.ScriptBuffer;
+
+/**
+ * A copy of a {@link ScriptBuffer} together with its script output, converted
+ * when the copy was made.
+ * <p>When the same script is sent to many script sessions we convert it once
+ * and hand every session this copy, so the conduits can send the output
+ * without converting it again. The copy belongs to DWR, so the output can't
+ * get out of step with the user's buffer, which is free to change after it
+ * has been sent.
+ * <p>Conduits that need JSON output, or that use a different
+ * {@link ConverterManager}, convert the copied parts as normal.
+ * @author Joe Walker [joe at getahead dot ltd dot uk]
+ */
+public class ConvertedScriptBuffer extends ScriptBuffer
+{
+    /**
+     * Copy and convert a script
+     * @param script The script to be sent
+     * @param converterManager How we convert script variable to Javascript
+     * @throws ConversionException If an error happens during parameter marshalling
+     */
+    public ConvertedScriptBuffer(ScriptBuffer script, ConverterManager converterManager) throws ConversionException
+    {
+        appendAll(script);
+        setReplaceKey(script.getReplaceKey());
+
+        this.converterManager = converterManager;
+        this.output = ScriptBufferUtil.convertOutput(this, converterManager, false);
+        this.partCount = getParts().size();
+    }
+
+    /**
+     * @param converterManager How we are converting script variables
+     * @param jsonOutput Are we doing strict JSON output?
+     * @return The converted output, or null if it was not converted in the
+     * given way or if the script has changed since
+     */
+    public String getOutput(ConverterManager converterManager, boolean jsonOutput)
+    {
+        if (jsonOutput || converterManager != this.converterManager || getParts().size() != partCount)
+        {
+            return null;
+        }
+
+        return output;
+    }
+
+    /**
+     * How the script was converted
+     */
+    private final ConverterManager converterManager;
+
+    /**
+     * The script output from the converterManager
+     */
+    private final String output;
+
+    /**
+     * We don't expect anything to add to a converted script, but if it does
+     * we can tell because there are more parts than there were.
+     */
+    private final int partCount;
+}
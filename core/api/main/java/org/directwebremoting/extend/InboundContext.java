@@ -117,18 +117,133 @@ public final class InboundContext
             log.warn("Duplicate variable called: " + key);
         }
 
-        String paramPrefix = ProtocolConstants.INBOUND_CALLNUM_PREFIX + callNum +
-                             ProtocolConstants.INBOUND_CALLNUM_SUFFIX +
-                             ProtocolConstants.INBOUND_KEY_PARAM;
+        int index = getParameterIndex(callNum, key);
+        if (index != -1)
+        {
+            addParameter(callNum, index, iv);
+
+            if (index + 1 > paramCount)
+            {
+                paramCount = index + 1;
+            }
+        }
+    }
+
+    /**
+     * If the key is the name of a parameter to the given call (i.e. it looks
+     * like <code>c[callNum]-param[index]</code>) then find the index
+     * @param callNum The number of this call
+     * @param key The name of the variable
+     * @return The parameter index, or -1 if the key is not a parameter
+     * @throws SecurityException If the index is too high to be reasonable
+     */
+    private static int getParameterIndex(int callNum, String key)
+    {
+        // Check the "c" prefix
+        int pos = 0;
+        if (!key.startsWith(ProtocolConstants.INBOUND_CALLNUM_PREFIX, pos))
+        {
+            return -1;
+        }
+        pos += ProtocolConstants.INBOUND_CALLNUM_PREFIX.length();
+
+        // Check the call number, without creating a String for it
+        int digits = 1;
+        for (int remainder = callNum / 10; remainder > 0; remainder /= 10)
+        {
+            digits++;
+        }
+
+        if (key.length() < pos + digits)
+        {
+            return -1;
+        }
+
+        for (int i = pos + digits - 1, remainder = callNum; i >= pos; i--, remainder /= 10)
+        {
+            if (key.charAt(i) != '0' + remainder % 10)
+            {
+                return -1;
+            }
+        }
+        pos += digits;
+
+        // Check the "-param" part
+        if (!key.startsWith(ProtocolConstants.INBOUND_CALLNUM_SUFFIX, pos))
+        {
+            return -1;
+        }
+        pos += ProtocolConstants.INBOUND_CALLNUM_SUFFIX.length();
 
-        if (key.startsWith(paramPrefix))
+        if (!key.startsWith(ProtocolConstants.INBOUND_KEY_PARAM, pos))
         {
-            int i = Integer.parseInt(key.substring(paramPrefix.length())) + 1;
-            if (i > paramCount)
+            return -1;
+        }
+        pos += ProtocolConstants.INBOUND_KEY_PARAM.length();
+
+        // And what is left is the parameter index
+        if (pos == key.length())
+        {
+            return -1;
+        }
+
+        int index = 0;
+        for (int i = pos; i < key.length(); i++)
+        {
+            char c = key.charAt(i);
+            if (c < '0' || c > '9')
+            {
+                return -1;
+            }
+
+            index = index * 10 + (c - '0');
+            if (index > MAX_PARAMETER_INDEX)
             {
-                paramCount = i;
+                throw new SecurityException("Too many parameters in a call");
             }
         }
+
+        return index;
+    }
+
+    /**
+     * Store a parameter so we can find it by call number and index
+     * @param callNum The number of this call
+     * @param index The parameter index
+     * @param iv The parameter
+     */
+    private void addParameter(int callNum, int index, InboundVariable iv)
+    {
+        if (callNum >= parameters.length)
+        {
+            InboundVariable[][] grown = new InboundVariable[callNum + 1][];
+            System.arraycopy(parameters, 0, grown, 0, parameters.length);
+            parameters = grown;
+
+            int[] grownCounts = new int[callNum + 1];
+            System.arraycopy(parameterCounts, 0, grownCounts, 0, parameterCounts.length);
+            parameterCounts = grownCounts;
+        }
+
+        InboundVariable[] callParameters = parameters[callNum];
+        if (callParameters == null)
+        {
+            callParameters = new InboundVariable[Math.max(index + 1, 4)];
+            parameters[callNum] = callParameters;
+        }
+        else if (index >= callParameters.length)
+        {
+            InboundVariable[] grown = new InboundVariable[Math.max(index + 1, callParameters.length * 2)];
+            System.arraycopy(callParameters, 0, grown, 0, callParameters.length);
+            callParameters = grown;
+            parameters[callNum] = callParameters;
+        }
+
+        if (callParameters[index] == null)
+        {
+            parameterCounts[callNum]++;
+        }
+        callParameters[index] = iv;
     }
 
     /**
@@ -160,11 +275,27 @@ public final class InboundContext
      */
     public void addConverted(InboundVariable iv, Class<?> type, Object bean)
     {
-        Conversion conversion = new Conversion(iv, type);
-        Object old = converted.put(conversion, bean);
+        if (iv == null)
+        {
+            throw new NullPointerException("InboundVariable");
+        }
+
+        if (type == null)
+        {
+            throw new NullPointerException("Class type");
+        }
+
+        Map<Class<?>, Object> conversions = converted.get(iv);
+        if (conversions == null)
+        {
+            conversions = new HashMap<Class<?>, Object>();
+            converted.put(iv, conversions);
+        }
+
+        Object old = conversions.put(type, bean);
         if (old != null)
         {
-            log.warn("Duplicate variable conversion called: " + conversion);
+            log.warn("Duplicate variable conversion called: " + iv + "," + type.getName());
         }
     }
 
@@ -176,8 +307,13 @@ public final class InboundContext
      */
     public Object getConverted(InboundVariable iv, Class<?> type)
     {
-        Conversion conversion = new Conversion(iv, type);
-        return converted.get(conversion);
+        Map<Class<?>, Object> conversions = converted.get(iv);
+        if (conversions == null)
+        {
+            return null;
+        }
+
+        return conversions.get(type);
     }
 
     /**
@@ -197,16 +333,12 @@ public final class InboundContext
      */
     public int getParameterCount(int callNum)
     {
-        int count = 0;
-        String prefix = ProtocolConstants.INBOUND_CALLNUM_PREFIX + callNum + ProtocolConstants.INBOUND_CALLNUM_SUFFIX + ProtocolConstants.INBOUND_KEY_PARAM;
-        for (String key : variables.keySet())
+        if (callNum < 0 || callNum >= parameterCounts.length)
         {
-            if (key.startsWith(prefix))
-            {
-                count++;
-            }
+            return 0;
         }
-        return count;
+
+        return parameterCounts[callNum];
     }
 
     /**
@@ -217,14 +349,13 @@ public final class InboundContext
      */
     public InboundVariable getParameter(int callNum, int index)
     {
-        String key = ProtocolConstants.INBOUND_CALLNUM_PREFIX + callNum +
-                     ProtocolConstants.INBOUND_CALLNUM_SUFFIX +
-                     ProtocolConstants.INBOUND_KEY_PARAM + index;
-
-        InboundVariable found = variables.get(key);
-        if (found != null)
+        if (callNum >= 0 && callNum < parameters.length && index >= 0)
         {
-            return found;
+            InboundVariable[] callParameters = parameters[callNum];
+            if (callParameters != null && index < callParameters.length && callParameters[index] != null)
+            {
+                return callParameters[index];
+            }
         }
 
         return nullInboundVariable;
@@ -263,71 +394,6 @@ public final class InboundContext
         return variables.keySet().iterator();
     }
 
-    /**
-     * A Class to use as a key in a map for conversion purposes.
-     * A collection of an InboundVariable and a type
-     */
-    protected static class Conversion
-    {
-        /**
-         * @param inboundVariable The new inboundVariable
-         * @param type The new type
-         */
-        Conversion(InboundVariable inboundVariable, Class<?> type)
-        {
-            if (inboundVariable == null)
-            {
-                throw new NullPointerException("InboundVariable");
-            }
-
-            if (type == null)
-            {
-                throw new NullPointerException("Class type");
-            }
-
-            this.inboundVariable = inboundVariable;
-            this.type = type;
-        }
-
-        /* (non-Javadoc)
-         * @see java.lang.Object#equals(java.lang.Object)
-         */
-        @Override
-        public boolean equals(Object obj)
-        {
-            if (!(obj instanceof Conversion))
-            {
-                return false;
-            }
-
-            Conversion that = (Conversion) obj;
-
-            return this.type.equals(that.type) && this.inboundVariable.equals(that.inboundVariable);
-        }
-
-        /* (non-Javadoc)
-         * @see java.lang.Object#hashCode()
-         */
-        @Override
-        public int hashCode()
-        {
-            return inboundVariable.hashCode() + type.hashCode();
-        }
-
-        /* (non-Javadoc)
-         * @see java.lang.Object#toString()
-         */
-        @Override
-        public String toString()
-        {
-            return "Conversion[" + inboundVariable + "," + type.getName() + "]";
-        }
-
-        private final InboundVariable inboundVariable;
-
-        private final Class<?> type;
-    }
-
     /* (non-Javadoc)
      * @see java.lang.Object#toString()
      */
@@ -371,9 +437,29 @@ public final class InboundContext
     private final Map<String, InboundVariable> variables = new HashMap<String, InboundVariable>();
 
     /**
-     * A map of all the variables converted.
+     * The parameters to each call, indexed by call number and then by
+     * parameter index
+     */
+    private InboundVariable[][] parameters = new InboundVariable[0][];
+
+    /**
+     * The number of parameters to each call, indexed by call number
+     */
+    private int[] parameterCounts = new int[0];
+
+    /**
+     * A map of all the variables converted, and the types they were converted
+     * to. Looking up by variable and then by type means we don't need to
+     * create a key object for each lookup.
+     */
+    private final Map<InboundVariable, Map<Class<?>, Object>> converted = new HashMap<InboundVariable, Map<Class<?>, Object>>();
+
+    /**
+     * We size arrays by parameter index, so we don't allow silly indexes.
+     * This is well beyond the 255 parameter limit of a Java method because
+     * the members of a varargs array are passed as separate parameters.
      */
-    private final Map<Conversion, Object> converted = new HashMap<Conversion, Object>();
+    private static final int MAX_PARAMETER_INDEX = 10000;
 
     /**
      * The log stream
@@ -15,13 +15,16 @@
  */
 package org.directwebremoting.extend;
 
+import java.io.IOException;
+import java.io.StringWriter;
+import java.io.Writer;
 import java.util.Collection;
 
 /**
  * A helper for implementing OutboundVariable when you have children
  * @author Joe Walker [joe at getahead dot ltd dot uk]
  */
-public abstract class NestedOutboundVariable implements OutboundVariable
+public abstract class NestedOutboundVariable implements StreamingOutboundVariable
 {
     /**
      * OutboundVariable may need to create variables or deny outlining
@@ -78,6 +81,87 @@ public abstract class NestedOutboundVariable implements OutboundVariable
         return builder.toString();
     }
 
+    /**
+     * Write the {@link #getDeclareCode()}s of all our children
+     */
+    protected void writeChildDeclareCodes(Writer out) throws IOException
+    {
+        for (OutboundVariable child : children)
+        {
+            ScriptBufferUtil.writeDeclareCode(child, out);
+        }
+    }
+
+    /**
+     * Write the {@link #getBuildCode()}s of all our children
+     */
+    protected void writeChildBuildCodes(Writer out) throws IOException
+    {
+        for (OutboundVariable child : children)
+        {
+            ScriptBufferUtil.writeBuildCode(child, out);
+        }
+    }
+
+    /* (non-Javadoc)
+     * @see org.directwebremoting.extend.StreamingOutboundVariable#writeDeclareCode(java.io.Writer)
+     */
+    public void writeDeclareCode(Writer out) throws IOException
+    {
+        out.write(getDeclareCode());
+    }
+
+    /* (non-Javadoc)
+     * @see org.directwebremoting.extend.StreamingOutboundVariable#writeBuildCode(java.io.Writer)
+     */
+    public void writeBuildCode(Writer out) throws IOException
+    {
+        out.write(getBuildCode());
+    }
+
+    /* (non-Javadoc)
+     * @see org.directwebremoting.extend.StreamingOutboundVariable#writeAssignCode(java.io.Writer)
+     */
+    public void writeAssignCode(Writer out) throws IOException
+    {
+        out.write(getAssignCode());
+    }
+
+    /**
+     * For subclasses that implement the write*Code() methods, this creates
+     * the String for the matching get*Code() method.
+     * @param writer One of {@link #writeDeclareCode(Writer)},
+     * {@link #writeBuildCode(Writer)} or {@link #writeAssignCode(Writer)}
+     * @return The output of the given writer
+     */
+    protected String toCode(CodeWriter writer)
+    {
+        StringWriter buffer = new StringWriter();
+        try
+        {
+            writer.write(buffer);
+        }
+        catch (IOException ex)
+        {
+            // StringWriter doesn't throw IOException
+            throw new IllegalStateException(ex.toString());
+        }
+        return buffer.toString();
+    }
+
+    /**
+     * Something that writes the code for part of an OutboundVariable.
+     * @see NestedOutboundVariable#toCode(CodeWriter)
+     */
+    protected interface CodeWriter
+    {
+        /**
+         * @param out The stream to write to
+         * @throws IOException If the write fails
+         */
+        void write(Writer out) throws IOException;
+    }
+
     /* (non-Javadoc)
      * @see org.directwebremoting.OutboundVariable#getReference()
      */
@@ -15,6 +15,9 @@
  */
 package org.directwebremoting.extend;
 
+import java.io.IOException;
+import java.io.Writer;
+
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 
@@ -22,7 +25,7 @@ import org.apache.commons.logging.LogFactory;
  * An {@link OutboundVariable} that we know to be unable to recurse
  * @author Joe Walker [joe at getahead dot ltd dot uk]
  */
-public class NonNestedOutboundVariable implements OutboundVariable
+public class NonNestedOutboundVariable implements StreamingOutboundVariable
 {
     /**
      * Create a new NonNestedOutboundVariable
@@ -69,6 +72,28 @@ public class NonNestedOutboundVariable implements OutboundVariable
         return assignCode;
     }
 
+    /* (non-Javadoc)
+     * @see org.directwebremoting.extend.StreamingOutboundVariable#writeDeclareCode(java.io.Writer)
+     */
+    public void writeDeclareCode(Writer out)
+    {
+    }
+
+    /* (non-Javadoc)
+     * @see org.directwebremoting.extend.StreamingOutboundVariable#writeBuildCode(java.io.Writer)
+     */
+    public void writeBuildCode(Writer out)
+    {
+    }
+
+    /* (non-Javadoc)
+     * @see org.directwebremoting.extend.StreamingOutboundVariable#writeAssignCode(java.io.Writer)
+     */
+    public void writeAssignCode(Writer out) throws IOException
+    {
+        out.write(getAssignCode());
+    }
+
     /* (non-Javadoc)
      * @see org.directwebremoting.OutboundVariable#getReference()
      */
@@ -15,6 +15,8 @@
  */
 package org.directwebremoting.extend;
 
+import java.io.IOException;
+import java.io.Writer;
 import java.util.Collection;
 import java.util.Map;
 
@@ -80,36 +82,78 @@ public class ObjectOutboundVariable extends NestedOutboundVariable
      */
     public String getDeclareCode()
     {
-        if (isInline())
+        return toCode(new CodeWriter()
         {
-            return getChildDeclareCodes();
-        }
-        else
+            public void write(Writer out) throws IOException
+            {
+                writeDeclareCode(out);
+            }
+        });
+    }
+
+    /* (non-Javadoc)
+     * @see org.directwebremoting.extend.OutboundVariable#getBuildCode()
+     */
+    public String getBuildCode()
+    {
+        return toCode(new CodeWriter()
+        {
+            public void write(Writer out) throws IOException
+            {
+                writeBuildCode(out);
+            }
+        });
+    }
+
+    /* (non-Javadoc)
+     * @see org.directwebremoting.extend.OutboundVariable#getAssignCode()
+     */
+    public String getAssignCode()
+    {
+        return toCode(new CodeWriter()
+        {
+            public void write(Writer out) throws IOException
+            {
+                writeAssignCode(out);
+            }
+        });
+    }
+
+    /* (non-Javadoc)
+     * @see org.directwebremoting.extend.NestedOutboundVariable#writeDeclareCode(java.io.Writer)
+     */
+    @Override
+    public void writeDeclareCode(Writer out) throws IOException
+    {
+        writeChildDeclareCodes(out);
+
+        if (!isInline())
         {
+            out.write("var ");
+            out.write(getVariableName());
             if (!isNamed)
             {
-                return getChildDeclareCodes() + "var " + getVariableName() + "={};";
+                out.write("={};");
             }
             else
             {
-                return getChildDeclareCodes() + "var " + getVariableName() + "=new " + scriptClassName + "();";
+                out.write("=new ");
+                out.write(scriptClassName);
+                out.write("();");
             }
         }
     }
 
     /* (non-Javadoc)
-     * @see org.directwebremoting.extend.OutboundVariable#getBuildCode()
+     * @see org.directwebremoting.extend.NestedOutboundVariable#writeBuildCode(java.io.Writer)
      */
-    public String getBuildCode()
+    @Override
+    public void writeBuildCode(Writer out) throws IOException
     {
-        if (isInline())
-        {
-            return getChildBuildCodes();
-        }
-        else
-        {
-            StringBuffer buildCode = new StringBuffer(getChildBuildCodes());
+        writeChildBuildCodes(out);
 
+        if (!isInline())
+        {
             String variableName = getVariableName();
 
             for (Map.Entry<String, OutboundVariable> entry : childMap.entrySet())
@@ -117,52 +161,46 @@ public class ObjectOutboundVariable extends NestedOutboundVariable
                 String name = entry.getKey();
                 OutboundVariable nested = entry.getValue();
 
-                String nestedAssignCode = nested.getAssignCode();
-
                 // The semi-compact syntax is only any good for simple names
                 if (LocalUtil.isSimpleName(name))
                 {
-                    buildCode.append(variableName);
-                    buildCode.append('.');
-                    buildCode.append(name);
-                    buildCode.append('=');
-                    buildCode.append(nestedAssignCode);
-                    buildCode.append(';');
+                    out.write(variableName);
+                    out.write('.');
+                    out.write(name);
+                    out.write('=');
                 }
                 else
                 {
-                    buildCode.append(variableName);
-                    buildCode.append("['");
-                    buildCode.append(name);
-                    buildCode.append("']=");
-                    buildCode.append(nestedAssignCode);
-                    buildCode.append(';');
+                    out.write(variableName);
+                    out.write("['");
+                    out.write(name);
+                    out.write("']=");
                 }
-            }
-            buildCode.append("\r\n");
 
-            return buildCode.toString();
+                ScriptBufferUtil.writeAssignCode(nested, out);
+                out.write(';');
+            }
+            out.write("\r\n");
         }
     }
 
     /* (non-Javadoc)
-     * @see org.directwebremoting.extend.OutboundVariable#getAssignCode()
+     * @see org.directwebremoting.extend.NestedOutboundVariable#writeAssignCode(java.io.Writer)
      */
-    public String getAssignCode()
+    @Override
+    public void writeAssignCode(Writer out) throws IOException
     {
         if (isInline())
         {
-            StringBuffer buffer = new StringBuffer();
-
             if (isNamed)
             {
-                buffer.append("dwr.engine.remote.newObject(\"");
-                buffer.append(scriptClassName);
-                buffer.append("\",{");
+                out.write("dwr.engine.remote.newObject(\"");
+                out.write(scriptClassName);
+                out.write("\",{");
             }
             else
             {
-                buffer.append('{');
+                out.write('{');
             }
 
             boolean first = true;
@@ -171,28 +209,25 @@ public class ObjectOutboundVariable extends NestedOutboundVariable
                 String name = entry.getKey();
                 OutboundVariable nested = entry.getValue();
 
-                String innerAssignCode = nested.getAssignCode();
-
                 if (!first)
                 {
-                    buffer.append(',');
+                    out.write(',');
                 }
 
                 // The compact syntax is only any good for simple names, when
                 // we are not recursive, and when we're not doing JSON
                 if (LocalUtil.isSimpleName(name) && !isJsonMode())
                 {
-                    buffer.append(name);
-                    buffer.append(':');
-                    buffer.append(innerAssignCode);
+                    out.write(name);
+                    out.write(':');
                 }
                 else
                 {
-                    buffer.append('\"');
-                    buffer.append(name);
-                    buffer.append("\":");
-                    buffer.append(innerAssignCode);
+                    out.write('\"');
+                    out.write(name);
+                    out.write("\":");
                 }
+                ScriptBufferUtil.writeAssignCode(nested, out);
 
                 // we don't need to do this one the hard way
                 first = false;
@@ -200,18 +235,16 @@ public class ObjectOutboundVariable extends NestedOutboundVariable
 
             if (isNamed)
             {
-                buffer.append("})");
+                out.write("})");
             }
             else
             {
-                buffer.append('}');
+                out.write('}');
             }
-
-            return buffer.toString();
         }
         else
         {
-            return getVariableName();
+            out.write(getVariableName());
         }
     }
 
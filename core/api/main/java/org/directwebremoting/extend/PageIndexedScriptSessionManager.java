@@ -0,0 +1,38 @@
+/*
+ * Copyright 2005 Joe Walker
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.directwebremoting.extend;
+
+import java.util.Collection;
+
+import org.directwebremoting.ScriptSession;
+
+/**
+ * A ScriptSessionManager that keeps track of which page each session is
+ * viewing, so sessions for a page can be found without checking every one.
+ * @author Joe Walker [joe at getahead dot ltd dot uk]
+ */
+public interface PageIndexedScriptSessionManager extends ScriptSessionManager
+{
+    /**
+     * Lookup all the windows that are viewing a given page.
+     * The index may briefly be out of date, so callers should still check
+     * the sessions that are returned against their filter.
+     * @param normalizedPage The page to lookup, as normalized by the
+     * {@link PageNormalizer}
+     * @return A list of script sessions for each window viewing the page
+     */
+    Collection<ScriptSession> getScriptSessionsByPage(String normalizedPage);
+}
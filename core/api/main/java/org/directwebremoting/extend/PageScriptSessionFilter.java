@@ -40,5 +40,13 @@ public class PageScriptSessionFilter implements ScriptSessionFilter
         return session.getPage().equals(page);
     }
 
+    /**
+     * @return The normalized page that we are looking for
+     */
+    public String getPage()
+    {
+        return page;
+    }
+
     private final String page;
 }
@@ -15,6 +15,8 @@
  */
 package org.directwebremoting.extend;
 
+import java.io.IOException;
+import java.io.Writer;
 import java.util.ArrayList;
 import java.util.List;
 
@@ -23,7 +25,8 @@ import org.directwebremoting.ScriptBuffer;
 import org.directwebremoting.util.Loggers;
 
 /**
- * A simple utility class to extract a {@link String} from a {@link ScriptBuffer}.
+ * A simple utility class to extract a {@link String} from a {@link ScriptBuffer},
+ * or to write one directly to a {@link Writer}.
  * @author Joe Walker [joe at getahead dot ltd dot uk]
  */
 public class ScriptBufferUtil
@@ -57,19 +60,39 @@ public class ScriptBufferUtil
      */
     public static String createOutput(ScriptBuffer script, ConverterManager converterManager, boolean jsonOutput) throws ConversionException
     {
-        OutboundContext context = new OutboundContext(jsonOutput);
-        List<OutboundVariable> scriptParts = new ArrayList<OutboundVariable>();
-        boolean outboundError = false;
+        String output = null;
+        if (script instanceof ConvertedScriptBuffer)
+        {
+            output = ((ConvertedScriptBuffer) script).getOutput(converterManager, jsonOutput);
+        }
 
-        // First convert everything into OutboundVariables
-        for (Object part : script.getParts())
+        if (output == null)
+        {
+            output = convertOutput(script, converterManager, jsonOutput);
+        }
+
+        Loggers.SCRIPTS.debug(output);
+        return output;
+    }
+
+    /**
+     * Convert a script into a string ready for output.
+     * @param script The source of the script data
+     * @param converterManager How we convert script variable to Javascript
+     * @param jsonOutput Are we doing strict JSON output?
+     * @return Some Javascript to be eval()ed by a browser.
+     * @throws ConversionException If an error happens during parameter marshalling
+     */
+    static String convertOutput(ScriptBuffer script, ConverterManager converterManager, boolean jsonOutput) throws ConversionException
+    {
+        List<OutboundVariable> scriptParts = convertParts(script, converterManager, jsonOutput);
+        boolean outboundError = false;
+        for (OutboundVariable ov : scriptParts)
         {
-            OutboundVariable ov = converterManager.convertOutbound(part, context);
             if (ov instanceof ErrorOutboundVariable)
             {
                 outboundError = true;
             }
-            scriptParts.add(ov);
         }
 
         StringBuilder buffer = new StringBuilder();
@@ -112,7 +135,134 @@ public class ScriptBufferUtil
             }
         }
 
-        Loggers.SCRIPTS.debug(output);
         return output;
     }
+
+    /**
+     * Write the same output as {@link #createOutput(ScriptBuffer, ConverterManager, boolean)}
+     * directly to a Writer.
+     * Everything is converted before anything is written, so a
+     * {@link ConversionException} leaves the Writer untouched, but the script
+     * is never assembled as a String, so large replies do not need several
+     * copies of their payload on the heap.
+     * <p>JSON output needs to inspect the whole script before it can decide how
+     * to wrap it, script logging needs the whole script, and a
+     * {@link ConvertedScriptBuffer} already has it, so in those cases we fall
+     * back to {@link #createOutput(ScriptBuffer, ConverterManager, boolean)}.
+     * @param script The source of the script data
+     * @param converterManager How we convert script variable to Javascript
+     * @param jsonOutput Are we doing strict JSON output?
+     * @param out The stream to write to
+     * @throws ConversionException If an error happens during parameter marshalling
+     * @throws IOException If the write fails
+     */
+    public static void writeOutput(ScriptBuffer script, ConverterManager converterManager, boolean jsonOutput, Writer out) throws ConversionException, IOException
+    {
+        boolean converted = script instanceof ConvertedScriptBuffer && ((ConvertedScriptBuffer) script).getOutput(converterManager, jsonOutput) != null;
+        if (converted || jsonOutput || Loggers.SCRIPTS.isDebugEnabled())
+        {
+            out.write(createOutput(script, converterManager, jsonOutput));
+            return;
+        }
+
+        List<OutboundVariable> scriptParts = convertParts(script, converterManager, jsonOutput);
+
+        for (OutboundVariable ov : scriptParts)
+        {
+            writeDeclareCode(ov, out);
+        }
+
+        for (OutboundVariable ov : scriptParts)
+        {
+            writeBuildCode(ov, out);
+        }
+
+        for (OutboundVariable ov : scriptParts)
+        {
+            writeAssignCode(ov, out);
+        }
+    }
+
+    /**
+     * Convert all the parts of a script into OutboundVariables
+     * @param script The source of the script data
+     * @param converterManager How we convert script variable to Javascript
+     * @param jsonOutput Are we doing strict JSON output?
+     * @return An OutboundVariable for each part of the script
+     * @throws ConversionException If an error happens during parameter marshalling
+     */
+    private static List<OutboundVariable> convertParts(ScriptBuffer script, ConverterManager converterManager, boolean jsonOutput) throws ConversionException
+    {
+        OutboundContext context = new OutboundContext(jsonOutput);
+        List<OutboundVariable> scriptParts = new ArrayList<OutboundVariable>();
+
+        for (Object part : script.getParts())
+        {
+            scriptParts.add(converterManager.convertOutbound(part, context));
+        }
+
+        return scriptParts;
+    }
+
+    /**
+     * Write the {@link OutboundVariable#getDeclareCode()} of a variable,
+     * streaming it if the variable allows
+     * @param ov The variable to write
+     * @param out The stream to write to
+     * @throws IOException If the write fails
+     */
+    static void writeDeclareCode(OutboundVariable ov, Writer out) throws IOException
+    {
+        if (ov instanceof StreamingOutboundVariable)
+        {
+            ((StreamingOutboundVariable) ov).writeDeclareCode(out);
+        }
+        else
+        {
+            out.write(ov.getDeclareCode());
+        }
+    }
+
+    /**
+     * Write the {@link OutboundVariable#getBuildCode()} of a variable,
+     * streaming it if the variable allows
+     * @param ov The variable to write
+     * @param out The stream to write to
+     * @throws IOException If the write fails
+     */
+    static void writeBuildCode(OutboundVariable ov, Writer out) throws IOException
+    {
+        if (ov instanceof StreamingOutboundVariable)
+        {
+            ((StreamingOutboundVariable) ov).writeBuildCode(out);
+        }
+        else
+        {
+            out.write(ov.getBuildCode());
+        }
+    }
+
+    /**
+     * Write the {@link OutboundVariable#getAssignCode()} of a variable,
+     * streaming it if the variable allows
+     * @param ov The variable to write
+     * @param out The stream to write to
+     * @throws IOException If the write fails
+     */
+    static void writeAssignCode(OutboundVariable ov, Writer out) throws IOException
+    {
+        if (ov instanceof StreamingOutboundVariable)
+        {
+            ((StreamingOutboundVariable) ov).writeAssignCode(out);
+        }
+        else
+        {
+            String assignCode = ov.getAssignCode();
+            if (assignCode == null)
+            {
+                throw new NullPointerException();
+            }
+            out.write(assignCode);
+        }
+    }
 }
@@ -0,0 +1,52 @@
+/*
+ * Copyright 2005 Joe Walker
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.directwebremoting.extend;
+
+import java.io.IOException;
+import java.io.Writer;
+
+/**
+ * An {@link OutboundVariable} that can write its code directly to a
+ * {@link Writer} rather than building a String for each of its parts.
+ * Nested variables would otherwise copy the code of their children into their
+ * own Strings at each level, so for large replies streaming avoids holding
+ * several copies of the payload in memory.
+ * @see ScriptBufferUtil#writeOutput(org.directwebremoting.ScriptBuffer, ConverterManager, boolean, Writer)
+ * @author Joe Walker [joe at getahead dot ltd dot uk]
+ */
+public interface StreamingOutboundVariable extends OutboundVariable
+{
+    /**
+     * Write the same output as {@link #getDeclareCode()}
+     * @param out The stream to write to
+     * @throws IOException If the write fails
+     */
+    void writeDeclareCode(Writer out) throws IOException;
+
+    /**
+     * Write the same output as {@link #getBuildCode()}
+     * @param out The stream to write to
+     * @throws IOException If the write fails
+     */
+    void writeBuildCode(Writer out) throws IOException;
+
+    /**
+     * Write the same output as {@link #getAssignCode()}
+     * @param out The stream to write to
+     * @throws IOException If the write fails
+     */
+    void writeAssignCode(Writer out) throws IOException;
+}
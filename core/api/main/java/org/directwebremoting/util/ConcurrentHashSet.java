@@ -0,0 +1,99 @@
+/*
+ * Copyright 2005 Joe Walker
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.directwebremoting.util;
+
+import java.util.AbstractSet;
+import java.util.Iterator;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * A thread-safe Set backed by a {@link ConcurrentHashMap}. Iterators are
+ * weakly consistent and never throw ConcurrentModificationException.
+ * <p>Java 6 has Collections.newSetFromMap() to do this, but we need to run on
+ * Java 5.
+ * @author Joe Walker [joe at getahead dot ltd dot uk]
+ */
+public class ConcurrentHashSet<E> extends AbstractSet<E>
+{
+    /* (non-Javadoc)
+     * @see java.util.AbstractCollection#add(java.lang.Object)
+     */
+    @Override
+    public boolean add(E e)
+    {
+        return map.putIfAbsent(e, Boolean.TRUE) == null;
+    }
+
+    /* (non-Javadoc)
+     * @see java.util.AbstractCollection#remove(java.lang.Object)
+     */
+    @Override
+    public boolean remove(Object o)
+    {
+        return map.remove(o) != null;
+    }
+
+    /* (non-Javadoc)
+     * @see java.util.AbstractCollection#contains(java.lang.Object)
+     */
+    @Override
+    public boolean contains(Object o)
+    {
+        return map.containsKey(o);
+    }
+
+    /* (non-Javadoc)
+     * @see java.util.AbstractCollection#isEmpty()
+     */
+    @Override
+    public boolean isEmpty()
+    {
+        return map.isEmpty();
+    }
+
+    /* (non-Javadoc)
+     * @see java.util.AbstractCollection#clear()
+     */
+    @Override
+    public void clear()
+    {
+        map.clear();
+    }
+
+    /* (non-Javadoc)
+     * @see java.util.AbstractCollection#iterator()
+     */
+    @Override
+    public Iterator<E> iterator()
+    {
+        return map.keySet().iterator();
+    }
+
+    /* (non-Javadoc)
+     * @see java.util.AbstractCollection#size()
+     */
+    @Override
+    public int size()
+    {
+        return map.size();
+    }
+
+    /**
+     * The members of the set are the keys to this map
+     */
+    private final ConcurrentMap<E, Boolean> map = new ConcurrentHashMap<E, Boolean>();
+}
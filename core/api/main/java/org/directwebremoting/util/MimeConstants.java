@@ -43,4 +43,9 @@ public interface MimeConstants
      * MIME constant for JSON
      */
     public static final String MIME_JSON = "application/json";
+
+    /**
+     * MIME constant for Server-Sent Events, which are always UTF-8
+     */
+    public static final String MIME_EVENT_STREAM = "text/event-stream; charset=utf-8";
 }
@@ -18,12 +18,14 @@ package org.directwebremoting.convert;
 import java.lang.reflect.Constructor;
 import java.lang.reflect.InvocationTargetException;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.StringTokenizer;
 import java.util.TreeMap;
 import java.util.Map.Entry;
+import java.util.concurrent.ConcurrentHashMap;
 
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
@@ -327,6 +329,8 @@ public abstract class BasicObjectConverter implements NamedConverter
 
             exclusions.add(rule);
         }
+
+        propertyMapCache.clear();
     }
 
     /**
@@ -354,6 +358,8 @@ public abstract class BasicObjectConverter implements NamedConverter
 
             inclusions.add(rule);
         }
+
+        propertyMapCache.clear();
     }
 
     /**
@@ -374,13 +380,10 @@ public abstract class BasicObjectConverter implements NamedConverter
     {
         if (exclusions != null)
         {
-            // Check each exclusions and return false if we get a match
-            for (String exclusion : exclusions)
+            // Return false if we match any of the exclusions
+            if (exclusions.contains(property))
             {
-                if (property.equals(exclusion))
-                {
-                    return false;
-                }
+                return false;
             }
 
             // So we passed all the exclusions. The setters enforce mutual
@@ -391,22 +394,123 @@ public abstract class BasicObjectConverter implements NamedConverter
 
         if (inclusions != null)
         {
-            // Check each inclusion and return true if we get a match
-            for (String inclusion : inclusions)
+            // Since we are white-listing with inclusions, if there is no
+            // match, this property is not allowed.
+            return inclusions.contains(property);
+        }
+
+        // default to allow if there are no inclusions or exclusions
+        return true;
+    }
+
+    /**
+     * A caching version of {@link #getPropertyMapFromClass(Class, boolean, boolean)}.
+     * Finding the properties of a class is expensive (particularly through
+     * {@link java.beans.Introspector}) and the answer only depends on the
+     * type and our include/exclude rules, so we remember it.
+     * <p>The returned map is shared and must not be altered.
+     * @param type The class to find the properties of
+     * @param readRequired Do we only want properties that can be read
+     * @param writeRequired Do we only want properties that can be written
+     * @return An unmodifiable map of property names to properties
+     * @throws ConversionException If the properties can't be read
+     */
+    protected Map<String, Property> getCachedPropertyMapFromClass(Class<?> type, boolean readRequired, boolean writeRequired) throws ConversionException
+    {
+        PropertyMapKey key = new PropertyMapKey(type, readRequired, writeRequired);
+        Map<String, Property> properties = propertyMapCache.get(key);
+        if (properties == null)
+        {
+            properties = Collections.unmodifiableMap(getPropertyMapFromClass(type, readRequired, writeRequired));
+
+            // We must not keep hold of classes from ClassLoaders that could be
+            // thrown away before we are, so we only remember classes that are
+            // visible to the web-app
+            if (isLoaderVisible(type.getClassLoader()))
             {
-                if (property.equals(inclusion))
+                propertyMapCache.put(key, properties);
+            }
+        }
+
+        return properties;
+    }
+
+    /**
+     * Is the given ClassLoader one that will live at least as long as this
+     * converter? i.e. is it the ClassLoader of DWR or of the web-app, or one
+     * of their parents
+     * @param loader The ClassLoader to check
+     * @return true if classes from the ClassLoader can be safely cached
+     */
+    private static boolean isLoaderVisible(ClassLoader loader)
+    {
+        if (loader == null)
+        {
+            // The bootstrap ClassLoader isn't going away
+            return true;
+        }
+
+        ClassLoader[] roots = new ClassLoader[]
+        {
+            BasicObjectConverter.class.getClassLoader(),
+            Thread.currentThread().getContextClassLoader(),
+        };
+
+        for (ClassLoader root : roots)
+        {
+            for (ClassLoader check = root; check != null; check = check.getParent())
+            {
+                if (check == loader)
                 {
                     return true;
                 }
             }
+        }
 
-            // Since we are white-listing with inclusions and there was not
-            // match, this property is not allowed.
-            return false;
+        return false;
+    }
+
+    /**
+     * The key for {@link BasicObjectConverter#propertyMapCache}
+     */
+    private static final class PropertyMapKey
+    {
+        PropertyMapKey(Class<?> type, boolean readRequired, boolean writeRequired)
+        {
+            this.type = type;
+            this.readRequired = readRequired;
+            this.writeRequired = writeRequired;
         }
 
-        // default to allow if there are no inclusions or exclusions
-        return true;
+        /* (non-Javadoc)
+         * @see java.lang.Object#equals(java.lang.Object)
+         */
+        @Override
+        public boolean equals(Object obj)
+        {
+            if (!(obj instanceof PropertyMapKey))
+            {
+                return false;
+            }
+
+            PropertyMapKey that = (PropertyMapKey) obj;
+            return this.type == that.type && this.readRequired == that.readRequired && this.writeRequired == that.writeRequired;
+        }
+
+        /* (non-Javadoc)
+         * @see java.lang.Object#hashCode()
+         */
+        @Override
+        public int hashCode()
+        {
+            return type.hashCode() * 4 + (readRequired ? 2 : 0) + (writeRequired ? 1 : 0);
+        }
+
+        private final Class<?> type;
+
+        private final boolean readRequired;
+
+        private final boolean writeRequired;
     }
 
     /**
@@ -610,6 +714,11 @@ public abstract class BasicObjectConverter implements NamedConverter
      */
     protected List<String> inclusions = null;
 
+    /**
+     * The results of {@link #getCachedPropertyMapFromClass(Class, boolean, boolean)}
+     */
+    protected final Map<PropertyMapKey, Map<String, Property>> propertyMapCache = new ConcurrentHashMap<PropertyMapKey, Map<String, Property>>();
+
     /**
      * The log stream
      */
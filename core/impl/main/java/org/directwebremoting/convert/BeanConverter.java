@@ -38,7 +38,7 @@ public class BeanConverter extends BasicObjectConverter
      */
     public Map<String, Property> getPropertyMapFromObject(Object example, boolean readRequired, boolean writeRequired) throws ConversionException
     {
-        return getPropertyMapFromClass(example.getClass(), readRequired, writeRequired);
+        return getCachedPropertyMapFromClass(example.getClass(), readRequired, writeRequired);
     }
 
     /* (non-Javadoc)
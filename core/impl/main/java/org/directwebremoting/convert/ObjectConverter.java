@@ -38,6 +38,7 @@ public class ObjectConverter extends BasicObjectConverter
     public void setForce(String force)
     {
         this.force = Boolean.valueOf(force);
+        propertyMapCache.clear();
     }
 
     /* (non-Javadoc)
@@ -46,7 +47,7 @@ public class ObjectConverter extends BasicObjectConverter
     public Map<String, Property> getPropertyMapFromObject(Object example, boolean readRequired, boolean writeRequired) throws ConversionException
     {
         Class<?> clazz = example.getClass();
-        return getPropertyMapFromClass(clazz, readRequired, writeRequired);
+        return getCachedPropertyMapFromClass(clazz, readRequired, writeRequired);
     }
 
     /* (non-Javadoc)
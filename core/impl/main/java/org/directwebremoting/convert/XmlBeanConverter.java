@@ -110,7 +110,7 @@ public class XmlBeanConverter extends BeanConverter
                 data.getContext().addConverted(data, paramType, bean);
             }
 
-            Map<String, Property> properties = getPropertyMapFromClass(paramType, false, true);
+            Map<String, Property> properties = getCachedPropertyMapFromClass(paramType, false, true);
 
             // Loop through the properties passed in
             Map<String, String> tokens = extractInboundTokens(paramType, value);
@@ -134,6 +134,10 @@ if (typeof window['dwr'] == 'undefined') {
       if (dwr.engine._activeReverseAjax && dwr.engine._pollReq) {
         dwr.engine._pollReq.abort();
       }
+      if (dwr.engine._eventSource) {
+        dwr.engine._eventSource.close();
+        dwr.engine._eventSource = null;
+      }
       dwr.engine._activeReverseAjax = false;
     }
     // TODO: in iframe mode, if we start, stop, start then the second start may
@@ -365,6 +369,16 @@ if (typeof window['dwr'] == 'undefined') {
   dwr.engine._partialResponseNo = 0;
   dwr.engine._partialResponseYes = 1;
   dwr.engine._partialResponseFlush = 2;
+  dwr.engine._partialResponseEventStream = 3;
+
+  /** Has the server enabled polling using Server-Sent Events? */
+  dwr.engine._eventStreamEnabled = "${eventStreamEnabled}";
+
+  /** Do we poll using Server-Sent Events where the browser supports them? */
+  dwr.engine._useEventSource = (dwr.engine._eventStreamEnabled == "true" && typeof window.EventSource != "undefined");
+
+  /** The EventSource that we are currently polling with, if any */
+  dwr.engine._eventSource = null;
 
   /** Are we doing page unloading? */
   dwr.engine._isNotifyServerOnPageUnload = false;
@@ -1121,6 +1135,9 @@ if (typeof window['dwr'] == 'undefined') {
       else if (isCrossDomain && !dwr.engine.isJaxerServer) {
         batch.transport = dwr.engine.transport.scriptTag;
       }
+      else if (batch.isPoll && dwr.engine._useEventSource && dwr.engine._pollWithXhr != "true") {
+        batch.transport = dwr.engine.transport.eventSource;
+      }
       // else if (batch.isPoll && dwr.engine.isIE) {
       //   batch.transport = dwr.engine.transport.htmlfile;
       // }
@@ -1138,6 +1155,7 @@ if (typeof window['dwr'] == 'undefined') {
     remove:function(batch) {
       dwr.engine.transport.iframe.remove(batch);
       dwr.engine.transport.xhr.remove(batch);
+      dwr.engine.transport.eventSource.remove(batch);
     },
 
     /**
@@ -1654,6 +1672,66 @@ if (typeof window['dwr'] == 'undefined') {
       }
     },
 
+    /**
+     * Reverse Ajax through a Server-Sent Events EventSource. The server sends
+     * each script as an event and the browser reconnects by itself when the
+     * server closes the stream, so a single batch lasts as long as the
+     * EventSource does.
+     */
+    eventSource:{
+      /**
+       * Setup a poll batch for transfer through an EventSource
+       * @param {Object} batch The batch to alter for EventSource transmit
+       */
+      send:function(batch) {
+        batch.map.partialResponse = dwr.engine._partialResponseEventStream;
+        batch.mode = dwr.engine._ModePlainPoll;
+        var request = dwr.engine.batch.constructRequest(batch, "GET");
+
+        batch.eventSource = new EventSource(request.url);
+        dwr.engine._eventSource = batch.eventSource;
+
+        batch.eventSource.onmessage = function(event) {
+          if (typeof dwr == 'undefined') return;
+          dwr.engine._pollRetries = 0;
+          dwr.engine._receivedBatch = batch;
+          try {
+            dwr.engine._eval(event.data);
+          }
+          catch (ex) {
+            dwr.engine._handleError(batch, ex);
+          }
+          dwr.engine._receivedBatch = null;
+        };
+
+        batch.eventSource.onerror = function() {
+          if (typeof dwr == 'undefined') return;
+          // While connecting the browser is retrying by itself. If it has
+          // given up (for example we got the wrong content type) then we fall
+          // back to polling with XHR.
+          if (batch.eventSource && batch.eventSource.readyState == 2) {
+            dwr.engine._useEventSource = false;
+            dwr.engine.batch.remove(batch);
+            dwr.engine._pollErrorHandler("EventSource failed", { name:"dwr.engine.eventSource", message:"EventSource failed" });
+          }
+        };
+      },
+
+      /**
+       * Close the EventSource used by a batch
+       * @param {Object} batch The batch that has completed
+       */
+      remove:function(batch) {
+        if (batch.eventSource) {
+          batch.eventSource.close();
+          if (dwr.engine._eventSource == batch.eventSource) {
+            dwr.engine._eventSource = null;
+          }
+          delete batch.eventSource;
+        }
+      }
+    },
+
     /**
      * Remoting through IE's htmlfile ActiveX control
      */
@@ -15,8 +15,8 @@
  */
 package org.directwebremoting.impl;
 
-import java.util.ArrayList;
-import java.util.List;
+import java.util.Iterator;
+import java.util.Set;
 
 import javax.servlet.ServletContextListener;
 
@@ -25,6 +25,7 @@ import org.apache.commons.logging.LogFactory;
 import org.directwebremoting.extend.ServerLoadMonitor;
 import org.directwebremoting.extend.UninitializingBean;
 import org.directwebremoting.extend.WaitController;
+import org.directwebremoting.util.ConcurrentHashSet;
 
 /**
  * A base implementation of {@link ServerLoadMonitor} that implements waiting
@@ -50,19 +51,16 @@ public abstract class AbstractServerLoadMonitor implements ServerLoadMonitor, Un
             return;
         }
 
-        synchronized (waitControllers)
-        {
-            List<WaitController> copy = new ArrayList<WaitController>();
-            copy.addAll(waitControllers);
-
-            for (WaitController controller : copy)
-            {
-                controller.shutdown();
-            }
+        shutdownCalled = true;
 
-            log.debug(" - shutdown on: " + this);
-            shutdownCalled = true;
+        // The set is concurrent so controllers that remove themselves as they
+        // shutdown don't upset the iteration
+        for (WaitController controller : waitControllers)
+        {
+            controller.shutdown();
         }
+
+        log.debug(" - shutdown on: " + this);
     }
 
     /* (non-Javadoc)
@@ -70,10 +68,7 @@ public abstract class AbstractServerLoadMonitor implements ServerLoadMonitor, Un
      */
     public void threadWaitStarting(WaitController controller)
     {
-        synchronized (waitControllers)
-        {
-            waitControllers.add(controller);
-        }
+        waitControllers.add(controller);
     }
 
     /* (non-Javadoc)
@@ -81,10 +76,7 @@ public abstract class AbstractServerLoadMonitor implements ServerLoadMonitor, Un
      */
     public void threadWaitEnding(WaitController controller)
     {
-        synchronized (waitControllers)
-        {
-            waitControllers.remove(controller);
-        }
+        waitControllers.remove(controller);
     }
 
     /**
@@ -94,24 +86,23 @@ public abstract class AbstractServerLoadMonitor implements ServerLoadMonitor, Un
      */
     public void shutdownRandomWaitControllers(int count)
     {
-        synchronized (waitControllers)
+        Iterator<WaitController> it = waitControllers.iterator();
+        for (int i = 0; i < count && it.hasNext(); i++)
         {
-            for (int i = 0; i < count && !waitControllers.isEmpty(); i++)
-            {
-                waitControllers.get(0).shutdown();
-            }
+            it.next().shutdown();
         }
     }
 
     /**
      * Have we been shutdown already?
      */
-    private boolean shutdownCalled = false;
+    private volatile boolean shutdownCalled = false;
 
     /**
-     * The known wait controllers
+     * The known wait controllers. Concurrent so that adding and removing the
+     * controller for each poll is O(1) and doesn't contend on a lock.
      */
-    protected final List<WaitController> waitControllers = new ArrayList<WaitController>();
+    protected final Set<WaitController> waitControllers = new ConcurrentHashSet<WaitController>();
 
     /**
      * The log stream
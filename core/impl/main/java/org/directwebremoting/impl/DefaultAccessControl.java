@@ -18,12 +18,14 @@ package org.directwebremoting.impl;
 import java.lang.reflect.Method;
 import java.lang.reflect.Modifier;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 
 import javax.servlet.http.HttpServletRequest;
 
@@ -43,7 +45,9 @@ public class DefaultAccessControl implements AccessControl
      */
     public void assertExecutionIsPossible(Creator creator, String className, Method method) throws SecurityException
     {
-        assertIsRestrictedByRole(className, method);
+        // The roles depend only on the configuration, so they are worked out
+        // with the rest of the decision. Only the user changes per request.
+        assertIsRestrictedByRole(getDecision(creator, className, method).roles);
         assertIsDisplayable(creator, className, method);
     }
 
@@ -51,6 +55,63 @@ public class DefaultAccessControl implements AccessControl
      * @see org.directwebremoting.AccessControl#getReasonToNotDisplay(org.directwebremoting.Creator, java.lang.String, java.lang.reflect.Method)
      */
     public void assertIsDisplayable(Creator creator, String className, Method method) throws SecurityException
+    {
+        Decision decision = getDecision(creator, className, method);
+        if (!decision.displayable)
+        {
+            throw new SecurityException(decision.reason);
+        }
+    }
+
+    /**
+     * The checks depend only on the configuration, so we work them out once
+     * for each creator and method, and remember the outcome.
+     * @param creator The {@link Creator} that exposes the class
+     * @param className The name of the creator to Javascript
+     * @param method The method to execute
+     * @return The outcome of the checks, and the roles allowed to execute
+     */
+    private Decision getDecision(Creator creator, String className, Method method)
+    {
+        DecisionKey key = new DecisionKey(className, creator == null ? null : creator.getType(), method);
+        Decision decision = decisions.get(key);
+        if (decision == null)
+        {
+            Set<String> roles = getRoleRestrictions(className, method.getName());
+            if (roles == null)
+            {
+                roles = Collections.emptySet();
+            }
+            else
+            {
+                roles = new HashSet<String>(roles);
+            }
+
+            try
+            {
+                checkIsDisplayable(creator, className, method);
+                decision = new Decision(true, null, roles);
+            }
+            catch (SecurityException ex)
+            {
+                decision = new Decision(false, ex.getMessage(), roles);
+            }
+
+            decisions.put(key, decision);
+        }
+
+        return decision;
+    }
+
+    /**
+     * Perform the (uncached) checks to see if a method can be displayed
+     * @see #assertIsDisplayable(Creator, String, Method)
+     * @param creator The {@link Creator} that exposes the class
+     * @param className The name of the creator to Javascript
+     * @param method The method to execute
+     * @throws SecurityException If the method may not be displayed
+     */
+    protected void checkIsDisplayable(Creator creator, String className, Method method) throws SecurityException
     {
         assertIsMethodPublic(method);
         assertIsExecutable(className, method.getName());
@@ -77,6 +138,7 @@ public class DefaultAccessControl implements AccessControl
         }
 
         roles.add(role);
+        decisions.clear();
     }
 
     /* (non-Javadoc)
@@ -100,6 +162,7 @@ public class DefaultAccessControl implements AccessControl
 
         // Add the rule to this policy
         policy.rules.add(methodName);
+        decisions.clear();
     }
 
     /* (non-Javadoc)
@@ -123,18 +186,28 @@ public class DefaultAccessControl implements AccessControl
 
         // Add the rule to this policy
         policy.rules.add(methodName);
+        decisions.clear();
     }
 
     /**
      * @param scriptName The name of the creator to Javascript
      * @param method The method to execute
+     * @deprecated {@link #assertExecutionIsPossible(Creator, String, Method)}
+     * uses {@link #assertIsRestrictedByRole(Set)} with the roles it has
+     * already found using {@link #getRoleRestrictions(String, String)}
      */
+    @Deprecated
     protected void assertIsRestrictedByRole(String scriptName, Method method)
     {
-        String methodName = method.getName();
+        assertIsRestrictedByRole(getRoleRestrictions(scriptName, method.getName()));
+    }
 
+    /**
+     * @param roles The roles allowed to execute a method, if any
+     */
+    protected void assertIsRestrictedByRole(Set<String> roles)
+    {
         // What if there is some J2EE role based restriction?
-        Set<String> roles = getRoleRestrictions(scriptName, methodName);
         if (roles != null && !roles.isEmpty())
         {
             HttpServletRequest req = WebContextFactory.get().getHttpServletRequest();
@@ -326,6 +399,7 @@ public class DefaultAccessControl implements AccessControl
     public void setExposeInternals(boolean exposeInternals)
     {
         this.exposeInternals = exposeInternals;
+        decisions.clear();
     }
 
     /**
@@ -344,6 +418,86 @@ public class DefaultAccessControl implements AccessControl
      */
     protected Map<String, Set<String>> roleRestrictMap = new HashMap<String, Set<String>>();
 
+    /**
+     * The outcome of {@link #checkIsDisplayable(Creator, String, Method)} and
+     * the role restrictions for each creator and method
+     */
+    private final Map<DecisionKey, Decision> decisions = new ConcurrentHashMap<DecisionKey, Decision>();
+
+    /**
+     * The outcome of the checks for a creator and method. We don't keep any
+     * SecurityException because it would be thrown on many threads with a
+     * stale stack trace, so we just remember its message.
+     */
+    private static final class Decision
+    {
+        Decision(boolean displayable, String reason, Set<String> roles)
+        {
+            this.displayable = displayable;
+            this.reason = reason;
+            this.roles = roles;
+        }
+
+        private final boolean displayable;
+
+        private final String reason;
+
+        /**
+         * From {@link DefaultAccessControl#getRoleRestrictions(String, String)}
+         */
+        private final Set<String> roles;
+    }
+
+    /**
+     * The key for {@link DefaultAccessControl#decisions}
+     */
+    private static final class DecisionKey
+    {
+        /**
+         * @param className The name of the creator to Javascript
+         * @param type The type that the creator exposes
+         * @param method The method to execute
+         */
+        DecisionKey(String className, Class<?> type, Method method)
+        {
+            this.className = className;
+            this.type = type;
+            this.method = method;
+        }
+
+        /* (non-Javadoc)
+         * @see java.lang.Object#equals(java.lang.Object)
+         */
+        @Override
+        public boolean equals(Object obj)
+        {
+            if (!(obj instanceof DecisionKey))
+            {
+                return false;
+            }
+
+            DecisionKey that = (DecisionKey) obj;
+            return this.type == that.type &&
+                   this.method.equals(that.method) &&
+                   (this.className == null ? that.className == null : this.className.equals(that.className));
+        }
+
+        /* (non-Javadoc)
+         * @see java.lang.Object#hashCode()
+         */
+        @Override
+        public int hashCode()
+        {
+            return method.hashCode() + (className == null ? 0 : className.hashCode());
+        }
+
+        private final String className;
+
+        private final Class<?> type;
+
+        private final Method method;
+    }
+
     /**
      * A struct that contains a method access policy for a Creator
      */
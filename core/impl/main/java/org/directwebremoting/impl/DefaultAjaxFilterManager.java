@@ -20,6 +20,7 @@ import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 import org.directwebremoting.AjaxFilter;
 import org.directwebremoting.extend.AjaxFilterManager;
@@ -40,18 +41,26 @@ public class DefaultAjaxFilterManager implements AjaxFilterManager
             return Collections.emptyList();
         }
 
-        // PERFORMANCE: we could probably cache the results of these if we wanted to
-        List<AjaxFilter> reply = new ArrayList<AjaxFilter>();
+        // This is called for every remote call, so we remember the answers.
+        // Filters are only added during configuration which clears the cache
+        List<AjaxFilter> reply = filterCache.get(scriptName);
+        if (reply == null)
+        {
+            List<AjaxFilter> combined = new ArrayList<AjaxFilter>();
 
-        reply.addAll(global);
+            combined.addAll(global);
 
-        List<AjaxFilter> classBased = classBasedMap.get(scriptName);
-        if (classBased != null)
-        {
-            reply.addAll(classBased);
+            List<AjaxFilter> classBased = classBasedMap.get(scriptName);
+            if (classBased != null)
+            {
+                combined.addAll(classBased);
+            }
+
+            reply = Collections.unmodifiableList(combined);
+            filterCache.put(scriptName, reply);
         }
 
-        return Collections.unmodifiableList(reply);
+        return reply;
     }
 
     /* (non-Javadoc)
@@ -60,6 +69,7 @@ public class DefaultAjaxFilterManager implements AjaxFilterManager
     public void addAjaxFilter(AjaxFilter filter)
     {
         global.add(filter);
+        filterCache.clear();
     }
 
     /* (non-Javadoc)
@@ -75,6 +85,7 @@ public class DefaultAjaxFilterManager implements AjaxFilterManager
         }
 
         classBased.add(filter);
+        filterCache.clear();
     }
 
     /**
@@ -86,4 +97,9 @@ public class DefaultAjaxFilterManager implements AjaxFilterManager
      * The map of lists of class based filters
      */
     private Map<String, List<AjaxFilter>> classBasedMap = new HashMap<String, List<AjaxFilter>>();
+
+    /**
+     * The combined global and class based filters for each script name
+     */
+    private final Map<String, List<AjaxFilter>> filterCache = new ConcurrentHashMap<String, List<AjaxFilter>>();
 }
@@ -21,10 +21,12 @@ import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 import org.directwebremoting.ConversionException;
+import org.directwebremoting.extend.Call;
 import org.directwebremoting.extend.Converter;
 import org.directwebremoting.extend.ConverterManager;
 import org.directwebremoting.extend.ErrorOutboundVariable;
@@ -178,6 +180,8 @@ public class DefaultConverterManager implements ConverterManager
             }
 
             converters.put(match, converter);
+            converterCache.clear();
+            Call.clearMethodCache(this);
         }
     }
 
@@ -433,6 +437,8 @@ public class DefaultConverterManager implements ConverterManager
     public void setConverters(Map<String, Converter> converters)
     {
         this.converters = converters;
+        converterCache.clear();
+        Call.clearMethodCache(this);
     }
 
     /**
@@ -501,10 +507,32 @@ public class DefaultConverterManager implements ConverterManager
     }
 
     /**
+     * Find a converter for a type, remembering the answer (even if it is that
+     * there is no converter) for next time.
      * @param paramType The type to find a converter for
      * @return The converter for the given type, or null if one can't be found
      */
     private Converter getConverter(Class<?> paramType)
+    {
+        Object cached = converterCache.get(paramType);
+        if (cached == null)
+        {
+            // If 2 threads get here at the same time, they will both come up
+            // with the same answer, so there is no need to lock
+            Converter converter = findConverter(paramType);
+            cached = (converter != null) ? converter : NO_CONVERTER;
+            converterCache.put(paramType, cached);
+        }
+
+        return (cached == NO_CONVERTER) ? null : (Converter) cached;
+    }
+
+    /**
+     * Search the configured converters for a given type
+     * @param paramType The type to find a converter for
+     * @return The converter for the given type, or null if one can't be found
+     */
+    private Converter findConverter(Class<?> paramType)
     {
         // Can we find a converter assignable to paramType in the HashMap?
         Converter converter = getConverterAssignableFrom(paramType);
@@ -610,19 +638,12 @@ public class DefaultConverterManager implements ConverterManager
             converter = getConverterAssignableFrom(anInterface);
             if (converter != null)
             {
-                converters.put(lookup, converter);
                 return converter;
             }
         }
 
         // Let's search it in paramType superClass
-        converter = getConverterAssignableFrom(paramType.getSuperclass());
-        if (converter != null)
-        {
-            converters.put(lookup, converter);
-        }
-
-        return converter;
+        return getConverterAssignableFrom(paramType.getSuperclass());
     }
 
     /**
@@ -640,6 +661,19 @@ public class DefaultConverterManager implements ConverterManager
      */
     protected Map<String, Converter> converters = new HashMap<String, Converter>();
 
+    /**
+     * The results of {@link #getConverter(Class)} so far. The values are
+     * either a Converter or {@link #NO_CONVERTER}.
+     * The configured converters are fixed once DWR has started so this only
+     * needs clearing when a converter is added.
+     */
+    protected Map<Class<?>, Object> converterCache = new ConcurrentHashMap<Class<?>, Object>();
+
+    /**
+     * Marker in {@link #converterCache} for types that can't be converted
+     */
+    private static final Object NO_CONVERTER = new Object();
+
     /**
      * The properties that we don't warn about if they don't exist.
      * @see DefaultConverterManager#addConverter(String, String, Map)
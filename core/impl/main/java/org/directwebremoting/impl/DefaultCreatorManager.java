@@ -150,18 +150,29 @@ public class DefaultCreatorManager implements CreatorManager
         }
         else
         {
-            Collection<String> noHidden = new HashSet<String>();
-            for (Map.Entry<String, Creator> entry : creators.entrySet())
+            return getVisibleCreatorNames();
+        }
+    }
+
+    /**
+     * The names of the creators that are not hidden. Unlike
+     * {@link #getCreatorNames(boolean)} this works outside of debug mode, so
+     * it is only for use by DWR itself, for example at startup.
+     * @return The names of the non-hidden creators
+     */
+    Collection<String> getVisibleCreatorNames()
+    {
+        Collection<String> noHidden = new HashSet<String>();
+        for (Map.Entry<String, Creator> entry : creators.entrySet())
+        {
+            Creator creator = entry.getValue();
+            if (!creator.isHidden())
             {
-                Creator creator = entry.getValue();
-                if (!creator.isHidden())
-                {
-                    noHidden.add(entry.getKey());
-                }
+                noHidden.add(entry.getKey());
             }
-
-            return noHidden;
         }
+
+        return noHidden;
     }
 
     /* (non-Javadoc)
@@ -15,21 +15,38 @@
  */
 package org.directwebremoting.impl;
 
-import java.util.HashMap;
-import java.util.HashSet;
-import java.util.Map;
+import java.util.LinkedList;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CopyOnWriteArraySet;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
 import org.directwebremoting.Hub;
 import org.directwebremoting.event.DefaultMessageEvent;
 import org.directwebremoting.event.MessageEvent;
 import org.directwebremoting.event.MessageListener;
+import org.directwebremoting.extend.UninitializingBean;
 
 /**
  * DWR's default implementation of {@link Hub}
+ * <p>By default messages are delivered to every listener on the publisher's
+ * thread. In asynchronous mode each topic has a bounded queue of messages that
+ * are delivered in order by a pool of threads, so a publisher only waits for
+ * a slow subscriber when that topic's queue is full. Then it waits for at
+ * most maxPublishWait milliseconds before the publish is rejected with a
+ * {@link RejectedExecutionException}.
  * @author Joe Walker [joe at getahead dot ltd dot uk]
  */
-public class DefaultHub implements Hub
+public class DefaultHub implements Hub, UninitializingBean
 {
     /* (non-Javadoc)
      * @see org.directwebremoting.Hub#subscribe(java.lang.String, org.directwebremoting.event.MessageListener)
@@ -41,7 +58,7 @@ public class DefaultHub implements Hub
             Set<MessageListener> listeners = subscriptions.get(topicName);
             if (listeners == null)
             {
-                listeners = new HashSet<MessageListener>();
+                listeners = new CopyOnWriteArraySet<MessageListener>();
                 subscriptions.put(topicName, listeners);
             }
 
@@ -77,38 +94,470 @@ public class DefaultHub implements Hub
      */
     public void publish(String topicName, Object data)
     {
-        // First clone the list of subscriptions
-        Set<MessageListener> listeners;
-        synchronized (subscriptions)
+        if (!subscriptions.containsKey(topicName))
+        {
+            return;
+        }
+
+        MessageEvent event;
+        if (data instanceof MessageEvent)
         {
-            Set<MessageListener> current = subscriptions.get(topicName);
-            if (current == null)
+            event = (MessageEvent) data;
+        }
+        else
+        {
+            event = new DefaultMessageEvent(this, data);
+        }
+
+        if (!asynchronous)
+        {
+            deliver(topicName, event, false);
+            return;
+        }
+
+        // A queue that is retired has just been removed from topicQueues
+        // because it was empty, so we go round again for a new one.
+        while (true)
+        {
+            TopicQueue queue = topicQueues.get(topicName);
+            if (queue == null)
+            {
+                queue = new TopicQueue(topicName);
+                TopicQueue existing = topicQueues.putIfAbsent(topicName, queue);
+                if (existing != null)
+                {
+                    queue = existing;
+                }
+            }
+
+            if (queue.offer(event))
             {
                 return;
             }
+        }
+    }
 
-            listeners = new HashSet<MessageListener>();
-            listeners.addAll(current);
+    /**
+     * Tell everyone subscribed to a topic about a message
+     * @param topicName The topic that the message was published to
+     * @param event The message
+     * @param isolate Do we catch exceptions from listeners so that one broken
+     * listener can't stop the others from hearing about the message?
+     */
+    protected void deliver(String topicName, MessageEvent event, boolean isolate)
+    {
+        // The set is copy on write, so we are iterating over a snapshot
+        Set<MessageListener> listeners = subscriptions.get(topicName);
+        if (listeners == null)
+        {
+            return;
         }
 
-        // Then tell everyone about the message
         for (MessageListener listener : listeners)
         {
-            MessageEvent event;
-            if (data instanceof MessageEvent)
+            if (!isolate)
+            {
+                listener.onMessage(event);
+                continue;
+            }
+
+            try
+            {
+                listener.onMessage(event);
+            }
+            catch (Exception ex)
+            {
+                log.warn("MessageListener for topic '" + topicName + "' failed", ex);
+            }
+        }
+    }
+
+    /**
+     * The pool of threads that deliver messages in asynchronous mode, created
+     * when it is first needed.
+     * @return The delivery pool
+     */
+    protected ExecutorService getExecutor()
+    {
+        synchronized (executorLock)
+        {
+            if (executor == null)
+            {
+                if (destroyed)
+                {
+                    throw new RejectedExecutionException("The hub has been shut down");
+                }
+
+                executor = new ThreadPoolExecutor(publishThreads, publishThreads, 60, TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>(), new ThreadFactory()
+                {
+                    public Thread newThread(Runnable runnable)
+                    {
+                        // We are only shut down if the container knows about
+                        // us, so we must not keep the VM running
+                        Thread thread = new Thread(runnable, "DWR-Hub-" + threadCount.incrementAndGet());
+                        thread.setDaemon(true);
+                        return thread;
+                    }
+
+                    private final AtomicInteger threadCount = new AtomicInteger();
+                });
+            }
+
+            return executor;
+        }
+    }
+
+    /* (non-Javadoc)
+     * @see org.directwebremoting.extend.UninitializingBean#contextDestroyed()
+     */
+    public void contextDestroyed()
+    {
+        shutdown();
+    }
+
+    /* (non-Javadoc)
+     * @see org.directwebremoting.extend.UninitializingBean#servletDestroyed()
+     */
+    public void servletDestroyed()
+    {
+        shutdown();
+    }
+
+    /**
+     * Stop the delivery threads. Messages that have not been delivered are
+     * dropped, and asynchronous publishes from now on are rejected.
+     */
+    protected void shutdown()
+    {
+        synchronized (executorLock)
+        {
+            destroyed = true;
+            if (executor != null)
+            {
+                executor.shutdownNow();
+            }
+        }
+    }
+
+    /**
+     * The messages waiting to be delivered for a single topic. Only one thread
+     * delivers the messages for a topic at a time, which keeps them in order.
+     */
+    protected class TopicQueue implements Runnable
+    {
+        /**
+         * @param topicName The topic whose messages we deliver
+         */
+        protected TopicQueue(String topicName)
+        {
+            this.topicName = topicName;
+        }
+
+        /**
+         * Add a message to the queue, waiting for space if it is full.
+         * @param event The message to deliver
+         * @return false if this queue has been retired and the caller should
+         * find a new one
+         * @throws RejectedExecutionException If the queue stays full
+         */
+        protected boolean offer(MessageEvent event)
+        {
+            boolean schedule;
+            synchronized (this)
+            {
+                if (retired)
+                {
+                    return false;
+                }
+
+                if (messages.size() >= maxQueuedMessages)
+                {
+                    // Waiting for ourselves to drain the queue would deadlock
+                    if (Thread.currentThread() != deliveryThread)
+                    {
+                        waitForSpace();
+                        if (retired)
+                        {
+                            return false;
+                        }
+                    }
+
+                    if (messages.size() >= maxQueuedMessages)
+                    {
+                        log.warn("Hub queue for topic '" + topicName + "' is full (" + maxQueuedMessages + " messages). Rejecting publish.");
+                        throw new RejectedExecutionException("Hub queue for topic '" + topicName + "' is full");
+                    }
+                }
+
+                messages.add(event);
+                schedule = !scheduled;
+                scheduled = true;
+            }
+
+            if (schedule)
+            {
+                try
+                {
+                    getExecutor().execute(this);
+                }
+                catch (RejectedExecutionException ex)
+                {
+                    synchronized (this)
+                    {
+                        scheduled = false;
+                    }
+                    throw ex;
+                }
+            }
+
+            return true;
+        }
+
+        /**
+         * Wait for up to maxPublishWait milliseconds for the queue to have
+         * space in it.
+         * <p>GuardedBy("this")
+         */
+        private void waitForSpace()
+        {
+            long end = System.currentTimeMillis() + maxPublishWait;
+            long remaining = maxPublishWait;
+            try
+            {
+                while (messages.size() >= maxQueuedMessages && remaining > 0)
+                {
+                    wait(remaining);
+                    remaining = end - System.currentTimeMillis();
+                }
+            }
+            catch (InterruptedException ex)
+            {
+                Thread.currentThread().interrupt();
+            }
+        }
+
+        /* (non-Javadoc)
+         * @see java.lang.Runnable#run()
+         */
+        public void run()
+        {
+            // We deliver a limited number of messages at a time so a busy
+            // topic doesn't keep a thread from the other topics
+            for (int i = 0; i < MAX_MESSAGES_PER_RUN; i++)
             {
-                event = (MessageEvent) data;
+                MessageEvent event;
+                synchronized (this)
+                {
+                    event = messages.poll();
+                    if (event == null)
+                    {
+                        scheduled = false;
+                        retired = true;
+                        topicQueues.remove(topicName, this);
+                        return;
+                    }
+
+                    deliveryThread = Thread.currentThread();
+
+                    // Publishers may be waiting for space
+                    notifyAll();
+                }
+
+                try
+                {
+                    deliver(topicName, event, true);
+                }
+                finally
+                {
+                    synchronized (this)
+                    {
+                        deliveryThread = null;
+                    }
+                }
             }
-            else
+
+            // There may be more to do, so go to the back of the line
+            try
+            {
+                getExecutor().execute(this);
+            }
+            catch (RejectedExecutionException ex)
             {
-                event = new DefaultMessageEvent(this, data);
+                log.warn("Failed to reschedule delivery for topic '" + topicName + "'", ex);
+                synchronized (this)
+                {
+                    scheduled = false;
+                }
             }
-            listener.onMessage(event);
+        }
+
+        /**
+         * The topic whose messages we deliver
+         */
+        private final String topicName;
+
+        /**
+         * The messages waiting to be delivered
+         * <p>GuardedBy("this")
+         */
+        private final LinkedList<MessageEvent> messages = new LinkedList<MessageEvent>();
+
+        /**
+         * Is this queue waiting for, or running on, a delivery thread?
+         * <p>GuardedBy("this")
+         */
+        private boolean scheduled = false;
+
+        /**
+         * Has this queue been removed from topicQueues?
+         * <p>GuardedBy("this")
+         */
+        private boolean retired = false;
+
+        /**
+         * The thread currently delivering messages from this queue
+         * <p>GuardedBy("this")
+         */
+        private Thread deliveryThread = null;
+    }
+
+    /**
+     * Do we deliver messages on a pool of threads rather than the publisher's
+     * thread?
+     * @param asynchronous true to deliver messages asynchronously
+     */
+    public void setAsynchronous(boolean asynchronous)
+    {
+        this.asynchronous = asynchronous;
+    }
+
+    /**
+     * @return Do we deliver messages asynchronously?
+     */
+    public boolean isAsynchronous()
+    {
+        return asynchronous;
+    }
+
+    /**
+     * In asynchronous mode, how many messages can wait for delivery on a
+     * single topic before publishers have to wait?
+     * @param maxQueuedMessages The largest size of a topic's queue
+     */
+    public void setMaxQueuedMessages(int maxQueuedMessages)
+    {
+        if (maxQueuedMessages <= 0)
+        {
+            throw new IllegalArgumentException("maxQueuedMessages must be greater than 0");
+        }
+
+        this.maxQueuedMessages = maxQueuedMessages;
+    }
+
+    /**
+     * @return The largest size of a topic's queue
+     */
+    public int getMaxQueuedMessages()
+    {
+        return maxQueuedMessages;
+    }
+
+    /**
+     * In asynchronous mode, how long does a publisher wait for space in a full
+     * queue before the publish is rejected?
+     * @param maxPublishWait The wait in milliseconds, 0 to reject at once
+     */
+    public void setMaxPublishWait(long maxPublishWait)
+    {
+        this.maxPublishWait = maxPublishWait;
+    }
+
+    /**
+     * @return How long a publisher waits for space in a full queue
+     */
+    public long getMaxPublishWait()
+    {
+        return maxPublishWait;
+    }
+
+    /**
+     * In asynchronous mode, how many threads deliver messages? Must be set
+     * before the first publish.
+     * @param publishThreads The size of the delivery pool
+     */
+    public void setPublishThreads(int publishThreads)
+    {
+        if (publishThreads <= 0)
+        {
+            throw new IllegalArgumentException("publishThreads must be greater than 0");
+        }
+
+        synchronized (executorLock)
+        {
+            if (executor != null)
+            {
+                throw new IllegalStateException("publishThreads can not be altered after messages have been published");
+            }
+
+            this.publishThreads = publishThreads;
         }
     }
 
     /**
      * The cache of current subscriptions
      */
-    private final Map<String, Set<MessageListener>> subscriptions = new HashMap<String, Set<MessageListener>>();
+    private final ConcurrentMap<String, Set<MessageListener>> subscriptions = new ConcurrentHashMap<String, Set<MessageListener>>();
+
+    /**
+     * The queues of messages waiting for delivery in asynchronous mode
+     */
+    private final ConcurrentMap<String, TopicQueue> topicQueues = new ConcurrentHashMap<String, TopicQueue>();
+
+    /**
+     * @see #setAsynchronous(boolean)
+     */
+    private volatile boolean asynchronous = false;
+
+    /**
+     * @see #setMaxQueuedMessages(int)
+     */
+    private volatile int maxQueuedMessages = 1000;
+
+    /**
+     * @see #setMaxPublishWait(long)
+     */
+    private volatile long maxPublishWait = 1000;
+
+    /**
+     * @see #setPublishThreads(int)
+     * <p>GuardedBy("executorLock")
+     */
+    private int publishThreads = 2;
+
+    /**
+     * The pool of delivery threads
+     * <p>GuardedBy("executorLock")
+     */
+    private ExecutorService executor = null;
+
+    /**
+     * Have we been shut down?
+     * <p>GuardedBy("executorLock")
+     */
+    private boolean destroyed = false;
+
+    /**
+     * The lock for the delivery pool
+     */
+    private final Object executorLock = new Object();
+
+    /**
+     * How many messages a topic delivers before giving way to other topics
+     */
+    private static final int MAX_MESSAGES_PER_RUN = 100;
+
+    /**
+     * The log stream
+     */
+    private static final Log log = LogFactory.getLog(DefaultHub.class);
 }
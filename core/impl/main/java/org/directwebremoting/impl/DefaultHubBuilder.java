@@ -15,6 +15,7 @@
  */
 package org.directwebremoting.impl;
 
+import org.directwebremoting.Container;
 import org.directwebremoting.Hub;
 import org.directwebremoting.HubFactory.HubBuilder;
 
@@ -31,4 +32,22 @@ public class DefaultHubBuilder extends DefaultBuilder<Hub> implements HubBuilder
     {
         super(DefaultHub.class);
     }
+
+    /**
+     * DefaultHubs have delivery threads to stop when DWR shuts down, so we add
+     * the hub to the container, which tells its beans when that happens.
+     * @see org.directwebremoting.impl.DefaultBuilder#attach(org.directwebremoting.Container)
+     */
+    @Override
+    public Hub attach(Container container)
+    {
+        Hub hub = super.attach(container);
+
+        if (container instanceof DefaultContainer)
+        {
+            ((DefaultContainer) container).addBean(Hub.class, hub);
+        }
+
+        return hub;
+    }
 }
@@ -15,15 +15,35 @@
  */
 package org.directwebremoting.impl;
 
+import java.lang.reflect.Field;
+import java.lang.reflect.GenericArrayType;
 import java.lang.reflect.InvocationTargetException;
 import java.lang.reflect.Method;
 import java.lang.reflect.Modifier;
+import java.lang.reflect.ParameterizedType;
+import java.lang.reflect.Type;
+import java.lang.reflect.TypeVariable;
+import java.lang.reflect.WildcardType;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
 import java.util.Collections;
 import java.util.HashMap;
-import java.util.Iterator;
+import java.util.HashSet;
+import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import javax.servlet.http.HttpServletRequest;
 
@@ -47,6 +67,7 @@ import org.directwebremoting.extend.Property;
 import org.directwebremoting.extend.Remoter;
 import org.directwebremoting.extend.Replies;
 import org.directwebremoting.extend.Reply;
+import org.directwebremoting.extend.UninitializingBean;
 import org.directwebremoting.filter.LogAjaxFilter;
 import org.directwebremoting.util.Continuation;
 import org.directwebremoting.util.JavascriptUtil;
@@ -57,7 +78,7 @@ import org.directwebremoting.util.LocalUtil;
  * @author Joe Walker [joe at getahead dot ltd dot uk]
  * @author Mike Wilson
  */
-public class DefaultRemoter implements Remoter
+public class DefaultRemoter implements Remoter, UninitializingBean
 {
     /* (non-Javadoc)
      * @see org.directwebremoting.Remoter#generateInterfaceScript(java.lang.String, java.lang.String)
@@ -239,46 +260,203 @@ public class DefaultRemoter implements Remoter
     }
 
     /**
-     * Output the class definitions for all the converted objects.
-     * An optimization for this class might be to only generate class
-     * definitions for classes used as parameters in the class that we are
-     * currently generating a proxy for.
-     * <p>Currently the <code>scriptName</code> parameter is not used, we just
-     * generate the class definitions for all types, however conceptually, it
-     * should be used.
+     * Output the class definitions for the mapped classes that the given
+     * creator can send or receive. We start with the parameter and return
+     * types of the displayable methods and follow the properties of the
+     * classes that we find, along with subclasses and JavaScript superclasses
+     * of mapped classes.
+     * <p>Types declared as Object (including the contents of raw collections)
+     * could be anything so they do not pull in any classes. Pages that need
+     * those can include dtoall.js.
      * @param scriptName The script for which we are generating parameter classes
      */
     protected String createParameterDefinitions(String scriptName)
     {
-        return createAllDtoClassDefinitions();
+        Creator creator = creatorManager.getCreator(scriptName, false);
+        List<NamedConverter> mapped = getMappedConverters();
+        if (creator == null || mapped.isEmpty())
+        {
+            return "";
+        }
+
+        LinkedList<Type> toVisit = new LinkedList<Type>();
+        for (Method method : creator.getType().getMethods())
+        {
+            try
+            {
+                accessControl.assertIsDisplayable(creator, scriptName, method);
+            }
+            catch (SecurityException ex)
+            {
+                if (!allowImpossibleTests)
+                {
+                    continue;
+                }
+            }
+
+            toVisit.addAll(Arrays.asList(method.getGenericParameterTypes()));
+            toVisit.add(method.getGenericReturnType());
+        }
+
+        Set<NamedConverter> reachable = new HashSet<NamedConverter>();
+        Set<Class<?>> visited = new HashSet<Class<?>>();
+        while (!toVisit.isEmpty())
+        {
+            Type type = toVisit.removeFirst();
+
+            if (type instanceof ParameterizedType)
+            {
+                ParameterizedType parameterized = (ParameterizedType) type;
+                toVisit.add(parameterized.getRawType());
+                toVisit.addAll(Arrays.asList(parameterized.getActualTypeArguments()));
+            }
+            else if (type instanceof GenericArrayType)
+            {
+                toVisit.add(((GenericArrayType) type).getGenericComponentType());
+            }
+            else if (type instanceof WildcardType)
+            {
+                WildcardType wildcard = (WildcardType) type;
+                toVisit.addAll(Arrays.asList(wildcard.getUpperBounds()));
+                toVisit.addAll(Arrays.asList(wildcard.getLowerBounds()));
+            }
+            else if (type instanceof TypeVariable<?>)
+            {
+                toVisit.addAll(Arrays.asList(((TypeVariable<?>) type).getBounds()));
+            }
+            else if (type instanceof Class<?>)
+            {
+                Class<?> clazz = (Class<?>) type;
+                if (clazz.isArray())
+                {
+                    toVisit.add(clazz.getComponentType());
+                    continue;
+                }
+
+                if (clazz.isPrimitive() || clazz == Object.class || !visited.add(clazz))
+                {
+                    continue;
+                }
+
+                // The class itself, or any mapped subclass of it
+                for (NamedConverter namedConv : mapped)
+                {
+                    Class<?> instanceType = namedConv.getInstanceType();
+                    if (instanceType != null && clazz.isAssignableFrom(instanceType) && reachable.add(namedConv))
+                    {
+                        toVisit.add(instanceType);
+
+                        String superClass = namedConv.getJavascriptSuperClass();
+                        if (LocalUtil.hasLength(superClass))
+                        {
+                            for (NamedConverter superConv : mapped)
+                            {
+                                if (superClass.equals(superConv.getJavascript()) && superConv.getInstanceType() != null)
+                                {
+                                    toVisit.add(superConv.getInstanceType());
+                                }
+                            }
+                        }
+                    }
+                }
+
+                // Classes from the JDK don't contain mapped classes
+                if (!isJdkClass(clazz))
+                {
+                    addPropertyTypes(clazz, toVisit);
+                }
+            }
+        }
+
+        List<NamedConverter> pruned = new ArrayList<NamedConverter>();
+        for (NamedConverter namedConv : mapped)
+        {
+            // We can't tell what a converter without an instance type is for
+            if (namedConv.getInstanceType() == null || reachable.contains(namedConv))
+            {
+                pruned.add(namedConv);
+            }
+        }
+
+        return createDtoClassDefinitions(pruned);
+    }
+
+    /**
+     * Add the types of the bean properties and public fields of a class
+     * @param clazz The class to examine
+     * @param toVisit The list of types to add to
+     */
+    private static void addPropertyTypes(Class<?> clazz, List<Type> toVisit)
+    {
+        for (Method method : clazz.getMethods())
+        {
+            String name = method.getName();
+            if (method.getParameterTypes().length == 0 && method.getDeclaringClass() != Object.class && (name.startsWith("get") || name.startsWith("is")))
+            {
+                toVisit.add(method.getGenericReturnType());
+            }
+        }
+
+        for (Field field : clazz.getFields())
+        {
+            if (!Modifier.isStatic(field.getModifiers()))
+            {
+                toVisit.add(field.getGenericType());
+            }
+        }
+    }
+
+    /**
+     * Is a class from the JDK (and so can't refer to mapped classes)?
+     * @param clazz The class to check
+     * @return true if the class is in a java or javax package
+     */
+    private static boolean isJdkClass(Class<?> clazz)
+    {
+        String name = clazz.getName();
+        return name.startsWith("java.") || name.startsWith("javax.");
     }
 
     /**
      * Output the class definitions for all mapped converted classes.
      */
     protected String createAllDtoClassDefinitions()
+    {
+        return createDtoClassDefinitions(getMappedConverters());
+    }
+
+    /**
+     * Output the class definitions, and then the superclass definitions, for
+     * some mapped converted classes.
+     * @param converters The converters of the classes to output
+     */
+    protected String createDtoClassDefinitions(Collection<NamedConverter> converters)
     {
         StringBuilder buffer = new StringBuilder();
 
         // First output class definitions
-        for (String match : converterManager.getConverterMatchStrings())
+        for (NamedConverter namedConv : converters)
         {
-            Converter conv = converterManager.getConverterByMatchString(match);
-            // We will only generate JavaScript classes for compound objects/beans
-            if (conv instanceof NamedConverter)
-            {
-                NamedConverter namedConv = (NamedConverter) conv;
-                String jsClassName = namedConv.getJavascript();
-
-                // We need a configured JavaScript class name
-                if (LocalUtil.hasLength(jsClassName))
-                {
-                    buffer.append(createDtoClassDefinition(namedConv));
-                }
-            }
+            buffer.append(createDtoClassDefinition(namedConv));
         }
 
         // Then output superclass definitions
+        for (NamedConverter namedConv : converters)
+        {
+            buffer.append(createDtoSuperClassDefinition(namedConv));
+        }
+
+        return buffer.toString();
+    }
+
+    /**
+     * Find the converters for the mapped converted classes, that is the
+     * {@link NamedConverter}s that have a configured JavaScript class name.
+     * @return The converters, in the order of their match strings
+     */
+    protected List<NamedConverter> getMappedConverters()
+    {
+        List<NamedConverter> mapped = new ArrayList<NamedConverter>();
         for (String match : converterManager.getConverterMatchStrings())
         {
             Converter conv = converterManager.getConverterByMatchString(match);
@@ -286,17 +464,16 @@ public class DefaultRemoter implements Remoter
             if (conv instanceof NamedConverter)
             {
                 NamedConverter namedConv = (NamedConverter) conv;
-                String jsClassName = namedConv.getJavascript();
 
                 // We need a configured JavaScript class name
-                if (LocalUtil.hasLength(jsClassName))
+                if (LocalUtil.hasLength(namedConv.getJavascript()))
                 {
-                    buffer.append(createDtoSuperClassDefinition(namedConv));
+                    mapped.add(namedConv);
                 }
             }
         }
 
-        return buffer.toString();
+        return mapped;
     }
 
     /**
@@ -588,15 +765,92 @@ public class DefaultRemoter implements Remoter
             throw new SecurityException("Call count for batch is too high");
         }
 
-        for (Call call : calls)
+        if (callExecutor == null || callCount < 2)
+        {
+            for (Call call : calls)
+            {
+                Reply reply = execute(call);
+                replies.addReply(reply);
+            }
+        }
+        else
         {
-            Reply reply = execute(call);
-            replies.addReply(reply);
+            executeInParallel(calls, replies);
         }
 
         return replies;
     }
 
+    /**
+     * Execute the calls in a batch concurrently using the configured
+     * {@link #setCallExecutor(Executor) callExecutor}.
+     * The first call is run on the request thread, and the replies are added
+     * in the same order as the calls so the browser sees no difference.
+     * The WebContext of the request is shared with the threads that run the
+     * other calls, however any other thread bound state (for example from
+     * frameworks that wrap DWR) will not be visible to them.
+     * @param calls The calls to execute
+     * @param replies The replies to add to
+     */
+    protected void executeInParallel(Calls calls, Replies replies)
+    {
+        final WebContext webContext = WebContextFactory.get();
+        int callCount = calls.getCallCount();
+
+        List<FutureTask<Reply>> tasks = new ArrayList<FutureTask<Reply>>(callCount - 1);
+        for (int i = 1; i < callCount; i++)
+        {
+            final Call call = calls.getCall(i);
+            FutureTask<Reply> task = new FutureTask<Reply>(new Callable<Reply>()
+            {
+                public Reply call()
+                {
+                    DefaultWebContextBuilder.engageThread(webContext);
+                    try
+                    {
+                        return execute(call);
+                    }
+                    finally
+                    {
+                        DefaultWebContextBuilder.engageThread(null);
+                    }
+                }
+            });
+
+            try
+            {
+                callExecutor.execute(task);
+            }
+            catch (RejectedExecutionException ex)
+            {
+                // The executor is saturated so we do the work ourselves
+                task.run();
+            }
+
+            tasks.add(task);
+        }
+
+        replies.addReply(execute(calls.getCall(0)));
+
+        for (int i = 0; i < tasks.size(); i++)
+        {
+            String callId = calls.getCall(i + 1).getCallId();
+            try
+            {
+                replies.addReply(tasks.get(i).get());
+            }
+            catch (InterruptedException ex)
+            {
+                Thread.currentThread().interrupt();
+                replies.addReply(new Reply(callId, null, ex));
+            }
+            catch (ExecutionException ex)
+            {
+                replies.addReply(new Reply(callId, null, ex.getCause()));
+            }
+        }
+    }
+
     /**
      * Execute a single call object
      * @param call The call to execute
@@ -725,22 +979,7 @@ public class DefaultRemoter implements Remoter
             //*/
 
             // Execute the filter chain method.toString()
-            final Iterator<AjaxFilter> it = filters.iterator();
-            AjaxFilterChain chain = new AjaxFilterChain()
-            {
-                public Object doFilter(Object obj, Method meth, Object[] params) throws Exception
-                {
-                    if (it.hasNext())
-                    {
-                        AjaxFilter next = it.next();
-                        return next.doFilter(obj, meth, params, this);
-                    }
-                    else
-                    {
-                        return meth.invoke(obj, params);
-                    }
-                }
-            };
+            AjaxFilterChain chain = new IndexedAjaxFilterChain(filters);
             Object reply = chain.doFilter(object, method, call.getParameters());
             return new Reply(call.getCallId(), reply);
         }
@@ -777,6 +1016,62 @@ public class DefaultRemoter implements Remoter
         }
     }
 
+    /**
+     * Invoke a method at the end of a filter chain.
+     * The Method objects that we are passed are generally shared between calls
+     * and have had their access checks turned off by {@link Call#findMethod}.
+     * @param method The method to execute
+     * @param obj The object to execute the method on (i.e. 'this')
+     * @param params The parameters to the method call
+     * @return The results of the method execution
+     */
+    protected static Object invoke(Method method, Object obj, Object[] params) throws IllegalAccessException, InvocationTargetException
+    {
+        return method.invoke(obj, params);
+    }
+
+    /**
+     * An AjaxFilterChain that walks a list of filters by index.
+     * The list is shared and read-only so all we need to remember between
+     * filters is our position in it.
+     */
+    private static final class IndexedAjaxFilterChain implements AjaxFilterChain
+    {
+        /**
+         * @param filters The filters to execute before the method
+         */
+        IndexedAjaxFilterChain(List<AjaxFilter> filters)
+        {
+            this.filters = filters;
+        }
+
+        /* (non-Javadoc)
+         * @see org.directwebremoting.AjaxFilterChain#doFilter(java.lang.Object, java.lang.reflect.Method, java.lang.Object[])
+         */
+        public Object doFilter(Object obj, Method meth, Object[] params) throws Exception
+        {
+            if (next < filters.size())
+            {
+                AjaxFilter filter = filters.get(next++);
+                return filter.doFilter(obj, meth, params, this);
+            }
+            else
+            {
+                return invoke(meth, obj, params);
+            }
+        }
+
+        /**
+         * The filters to execute before the method
+         */
+        private final List<AjaxFilter> filters;
+
+        /**
+         * The index of the next filter to execute
+         */
+        private int next = 0;
+    }
+
     /**
      * Do logging output if there are no logging filters and add a note of
      * explanation the first time
@@ -826,6 +1121,14 @@ public class DefaultRemoter implements Remoter
         this.useAbsolutePath = useAbsolutePath;
     }
 
+    /**
+     * @return Does DWR generate an absolute _path property
+     */
+    public boolean isUseAbsolutePath()
+    {
+        return useAbsolutePath;
+    }
+
     /**
      * Accessor for the CreatorManager that we configure
      * @param creatorManager The new ConverterManager
@@ -899,6 +1202,82 @@ public class DefaultRemoter implements Remoter
         this.debug = debug;
     }
 
+    /**
+     * Run the calls in a batch concurrently using the given Executor.
+     * By default calls are executed one after the other on the request thread.
+     * @param callExecutor The Executor to run calls on, or null to run calls
+     * sequentially
+     */
+    public void setCallExecutor(Executor callExecutor)
+    {
+        this.callExecutor = callExecutor;
+    }
+
+    /**
+     * Run the calls in a batch concurrently on a pool of this many threads
+     * that DWR will create and shut down.
+     * This is a shortcut for {@link #setCallExecutor(Executor)} that can be
+     * used from an init-param.
+     * @param parallelCallThreads The size of the pool, or 0 to run calls
+     * sequentially
+     */
+    public void setParallelCallThreads(int parallelCallThreads)
+    {
+        shutdownOwnedExecutor();
+
+        if (parallelCallThreads > 0)
+        {
+            ownedExecutor = Executors.newFixedThreadPool(parallelCallThreads, new ThreadFactory()
+            {
+                public Thread newThread(Runnable runnable)
+                {
+                    Thread thread = new Thread(runnable, "DWR-Call-" + threadCount.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                }
+
+                private final AtomicInteger threadCount = new AtomicInteger();
+            });
+            callExecutor = ownedExecutor;
+        }
+        else
+        {
+            callExecutor = null;
+        }
+    }
+
+    /**
+     * Stop any thread pool that we created in
+     * {@link #setParallelCallThreads(int)}
+     */
+    private void shutdownOwnedExecutor()
+    {
+        if (ownedExecutor != null)
+        {
+            ownedExecutor.shutdownNow();
+            if (callExecutor == ownedExecutor)
+            {
+                callExecutor = null;
+            }
+            ownedExecutor = null;
+        }
+    }
+
+    /* (non-Javadoc)
+     * @see org.directwebremoting.extend.UninitializingBean#contextDestroyed()
+     */
+    public void contextDestroyed()
+    {
+    }
+
+    /* (non-Javadoc)
+     * @see org.directwebremoting.extend.UninitializingBean#servletDestroyed()
+     */
+    public void servletDestroyed()
+    {
+        shutdownOwnedExecutor();
+    }
+
     /**
      * Have we given the hint about {@link org.directwebremoting.filter.AuditLogAjaxFilter}
      */
@@ -950,6 +1329,17 @@ public class DefaultRemoter implements Remoter
      */
     protected int maxCallCount = 20;
 
+    /**
+     * If not null, the calls in a batch are executed concurrently using this
+     */
+    protected Executor callExecutor = null;
+
+    /**
+     * The thread pool created by {@link #setParallelCallThreads(int)}, that we
+     * must shut down
+     */
+    private ExecutorService ownedExecutor = null;
+
     /**
      * Generated Javascript cache
      */
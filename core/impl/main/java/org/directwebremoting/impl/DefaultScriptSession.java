@@ -16,11 +16,10 @@
 package org.directwebremoting.impl;
 
 import java.io.IOException;
-import java.util.ArrayList;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.Iterator;
-import java.util.List;
+import java.util.LinkedList;
 import java.util.Map;
 import java.util.Set;
 import java.util.SortedSet;
@@ -32,6 +31,8 @@ import org.directwebremoting.ConversionException;
 import org.directwebremoting.ScriptBuffer;
 import org.directwebremoting.event.ScriptSessionBindingEvent;
 import org.directwebremoting.event.ScriptSessionBindingListener;
+import org.directwebremoting.extend.ConvertedScriptBuffer;
+import org.directwebremoting.extend.ConverterManager;
 import org.directwebremoting.extend.RealScriptSession;
 import org.directwebremoting.extend.ScriptConduit;
 
@@ -215,6 +216,23 @@ public class DefaultScriptSession implements RealScriptSession
             throw new NullPointerException("null script");
         }
 
+        // Measuring may mean converting, which we don't want to do holding
+        // the lock. The conduits will reuse the converted output.
+        ScriptBuffer converted;
+        int size;
+        try
+        {
+            converted = convert(script);
+            size = measure(converted);
+        }
+        catch (ConversionException ex)
+        {
+            log.error("Failed to convert data. Dropping Javascript: " + script, ex);
+            return;
+        }
+
+        boolean overflowed = false;
+
         // First we try to add the script to an existing conduit
         synchronized (scriptLock)
         {
@@ -244,7 +262,7 @@ public class DefaultScriptSession implements RealScriptSession
 
                 if (!written)
                 {
-                    scripts.add(script);
+                    overflowed = !queueScript(converted, size);
                 }
             }
             else
@@ -256,7 +274,7 @@ public class DefaultScriptSession implements RealScriptSession
                     ScriptConduit conduit = it.next();
                     try
                     {
-                        written = conduit.addScript(script);
+                        written = conduit.addScript(converted);
                     }
                     catch (Exception ex)
                     {
@@ -267,10 +285,140 @@ public class DefaultScriptSession implements RealScriptSession
 
                 if (!written)
                 {
-                    scripts.add(script);
+                    overflowed = !queueScript(converted, size);
                 }
             }
         }
+
+        if (overflowed)
+        {
+            log.info("Too many scripts waiting for " + this + ". Invalidating.");
+            invalidate();
+        }
+    }
+
+    /**
+     * Add a script to the end of the list of waiting scripts, and apply the
+     * overflow policy if there are now too many waiting.
+     * <p>GuardedBy("scriptLock")
+     * @param script The script to wait for a conduit
+     * @param size The size of the script as returned by {@link #measure(ScriptBuffer)}
+     * @return false if the overflow policy is to invalidate this session
+     */
+    private boolean queueScript(ScriptBuffer script, int size)
+    {
+        ScriptQueueOverflowPolicy policy = manager.getWaitingScriptOverflowPolicy();
+
+        String replaceKey = script.getReplaceKey();
+        if (policy == ScriptQueueOverflowPolicy.REPLACE && replaceKey != null)
+        {
+            Iterator<Integer> sizes = scriptSizes.iterator();
+            for (Iterator<ScriptBuffer> it = scripts.iterator(); it.hasNext();)
+            {
+                ScriptBuffer waiting = it.next();
+                int waitingSize = sizes.next();
+
+                if (replaceKey.equals(waiting.getReplaceKey()))
+                {
+                    it.remove();
+                    sizes.remove();
+                    waitingScriptBytes -= waitingSize;
+                }
+            }
+        }
+
+        scripts.add(script);
+        scriptSizes.add(size);
+        waitingScriptBytes += size;
+
+        if (!isOverflowing())
+        {
+            return true;
+        }
+
+        switch (policy)
+        {
+        case REJECT:
+            log.debug("Too many scripts waiting for " + this + ". Rejecting: " + script);
+            scripts.removeLast();
+            waitingScriptBytes -= scriptSizes.removeLast();
+            return true;
+
+        case INVALIDATE:
+            scripts.clear();
+            scriptSizes.clear();
+            waitingScriptBytes = 0;
+            return false;
+
+        default:
+            // We always keep the new script, even if it is too big on its own
+            while (scripts.size() > 1 && isOverflowing())
+            {
+                ScriptBuffer dropped = scripts.removeFirst();
+                waitingScriptBytes -= scriptSizes.removeFirst();
+                log.debug("Too many scripts waiting for " + this + ". Dropping: " + dropped);
+            }
+            return true;
+        }
+    }
+
+    /**
+     * Are there more scripts waiting than the manager allows?
+     * <p>GuardedBy("scriptLock")
+     * @return true if the waiting scripts exceed a limit
+     */
+    private boolean isOverflowing()
+    {
+        int maxScripts = manager.getMaxWaitingScripts();
+        if (maxScripts > 0 && scripts.size() > maxScripts)
+        {
+            return true;
+        }
+
+        long maxBytes = manager.getMaxWaitingScriptBytes();
+        return maxBytes > 0 && waitingScriptBytes > maxBytes;
+    }
+
+    /**
+     * Scripts are only converted before they are sent when they need
+     * measuring against {@link DefaultScriptSessionManager#getMaxWaitingScriptBytes()}.
+     * The conduits then send the output that we measured.
+     * @param script The script to convert
+     * @return A converted copy of the script, or the script itself if it does
+     * not need converting now
+     * @throws ConversionException If the script can't be converted
+     */
+    protected ScriptBuffer convert(ScriptBuffer script) throws ConversionException
+    {
+        ConverterManager converterManager = manager.getConverterManager();
+        if (manager.getMaxWaitingScriptBytes() <= 0 || converterManager == null)
+        {
+            return script;
+        }
+
+        if (script instanceof ConvertedScriptBuffer && ((ConvertedScriptBuffer) script).getOutput(converterManager, false) != null)
+        {
+            return script;
+        }
+
+        return new ConvertedScriptBuffer(script, converterManager);
+    }
+
+    /**
+     * Find the size of a script for comparison against
+     * {@link DefaultScriptSessionManager#getMaxWaitingScriptBytes()}.
+     * @param script The script to measure, as returned by {@link #convert(ScriptBuffer)}
+     * @return The length of the converted script, or 0 if it was not converted
+     */
+    protected int measure(ScriptBuffer script)
+    {
+        if (!(script instanceof ConvertedScriptBuffer))
+        {
+            return 0;
+        }
+
+        String output = ((ConvertedScriptBuffer) script).getOutput(manager.getConverterManager(), false);
+        return output == null ? 0 : output.length();
     }
 
     /* (non-Javadoc)
@@ -320,15 +468,19 @@ public class DefaultScriptSession implements RealScriptSession
 
         synchronized (scriptLock)
         {
+            Iterator<Integer> sizes = scriptSizes.iterator();
             for (Iterator<ScriptBuffer> it = scripts.iterator(); it.hasNext();)
             {
                 ScriptBuffer script = it.next();
+                int size = sizes.next();
 
                 try
                 {
                     if (conduit.addScript(script))
                     {
                         it.remove();
+                        sizes.remove();
+                        waitingScriptBytes -= size;
                     }
                     else
                     {
@@ -340,6 +492,8 @@ public class DefaultScriptSession implements RealScriptSession
                 {
                     log.error("Failed to convert data. Dropping Javascript: " + script, ex);
                     it.remove();
+                    sizes.remove();
+                    waitingScriptBytes -= size;
                 }
             }
         }
@@ -537,10 +691,22 @@ public class DefaultScriptSession implements RealScriptSession
     protected final SortedSet<ScriptConduit> conduits = new TreeSet<ScriptConduit>();
 
     /**
-     * The list of waiting scripts.
+     * The list of waiting scripts, oldest first.
+     * <p>GuardedBy("scriptLock")
+     */
+    protected final LinkedList<ScriptBuffer> scripts = new LinkedList<ScriptBuffer>();
+
+    /**
+     * The sizes of the waiting {@link #scripts}, in the same order.
+     * <p>GuardedBy("scriptLock")
+     */
+    private final LinkedList<Integer> scriptSizes = new LinkedList<Integer>();
+
+    /**
+     * The total of {@link #scriptSizes}
      * <p>GuardedBy("scriptLock")
      */
-    protected final List<ScriptBuffer> scripts = new ArrayList<ScriptBuffer>();
+    private long waitingScriptBytes = 0;
 
     /**
      * The object that we use to synchronize against when we want to alter
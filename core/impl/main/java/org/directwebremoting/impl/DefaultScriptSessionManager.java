@@ -17,11 +17,13 @@ package org.directwebremoting.impl;
 
 import java.util.ArrayList;
 import java.util.Collection;
-import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
-import java.util.Map;
 import java.util.Set;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 import java.util.concurrent.ScheduledFuture;
 import java.util.concurrent.ScheduledThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
@@ -33,26 +35,31 @@ import org.directwebremoting.ScriptBuffer;
 import org.directwebremoting.ScriptSession;
 import org.directwebremoting.event.ScriptSessionEvent;
 import org.directwebremoting.event.ScriptSessionListener;
+import org.directwebremoting.extend.ConverterManager;
 import org.directwebremoting.extend.EnginePrivate;
 import org.directwebremoting.extend.InitializingBean;
+import org.directwebremoting.extend.PageIndexedScriptSessionManager;
 import org.directwebremoting.extend.PageNormalizer;
 import org.directwebremoting.extend.RealScriptSession;
-import org.directwebremoting.extend.ScriptSessionManager;
 import org.directwebremoting.extend.UninitializingBean;
+import org.directwebremoting.util.ConcurrentHashSet;
 import org.directwebremoting.util.IdGenerator;
 import org.directwebremoting.util.Loggers;
 
 /**
  * A default implementation of ScriptSessionManager.
  * <p>There are synchronization constraints on this class that could be broken
- * by subclasses. Specifically anyone accessing either <code>sessionMap</code>
- * or <code>pageSessionMap</code> must be holding the <code>sessionLock</code>.
+ * by subclasses. <code>sessionMap</code> may be read and written freely, but
+ * anyone adding to or removing from the sets in <code>pageSessionMap</code> or
+ * <code>sessionXRef</code> must be holding the lock given by
+ * {@link #getStripeLock(Object)} for the key of the set. These locks must
+ * not be held while calling into a {@link DefaultScriptSession}.
  * <p>In addition you should note that {@link DefaultScriptSession} and
  * {@link DefaultScriptSessionManager} make calls to each other and you should
  * take care not to break any constraints in inheriting from these classes.
  * @author Joe Walker [joe at getahead dot ltd dot uk]
  */
-public class DefaultScriptSessionManager implements ScriptSessionManager, InitializingBean, UninitializingBean
+public class DefaultScriptSessionManager implements PageIndexedScriptSessionManager, InitializingBean, UninitializingBean
 {
     /* (non-Javadoc)
      * @see org.directwebremoting.extend.InitializingBean#afterContainerSetup(org.directwebremoting.Container)
@@ -92,54 +99,50 @@ public class DefaultScriptSessionManager implements ScriptSessionManager, Initia
     {
         maybeCheckTimeouts();
 
-        DefaultScriptSession scriptSession;
-
-        synchronized (sessionLock)
+        DefaultScriptSession scriptSession = sessionMap.get(sentScriptId);
+        if (scriptSession == null)
         {
-            scriptSession = sessionMap.get(sentScriptId);
-            if (scriptSession == null)
-            {
-                // Force creation of a new script session
-                String newSessionId = generator.generateId(16);
+            // Force creation of a new script session
+            String newSessionId = generator.generateId(16);
 
-                scriptSession = new DefaultScriptSession(newSessionId, this, page);
-                Loggers.SESSION.debug("Creating " + scriptSession + " on " + scriptSession.getPage());
+            scriptSession = new DefaultScriptSession(newSessionId, this, page);
+            Loggers.SESSION.debug("Creating " + scriptSession + " on " + scriptSession.getPage());
 
-                sessionMap.put(newSessionId, scriptSession);
+            sessionMap.put(newSessionId, scriptSession);
+            scheduleExpiry(scriptSession, scriptSession.getLastAccessedTime() + scriptSessionTimeout);
 
-                // See notes on synchronization in invalidate()
-                fireScriptSessionCreatedEvent(scriptSession);
+            // See notes on synchronization in invalidate()
+            fireScriptSessionCreatedEvent(scriptSession);
 
-                // Inject a (new) script session id into the page
-                ScriptBuffer script = EnginePrivate.getRemoteHandleNewScriptSessionScript(newSessionId);
-                scriptSession.addScript(script);
+            // Inject a (new) script session id into the page
+            ScriptBuffer script = EnginePrivate.getRemoteHandleNewScriptSessionScript(newSessionId);
+            scriptSession.addScript(script);
 
-                // Use the new script session id not the one passed in
-                Loggers.SESSION.debug("ScriptSession re-sync: " + simplifyId(sentScriptId) + " has become " + simplifyId(newSessionId) + " on " + page);
-            }
-            else
-            {
-                // This could be called from a poll or an rpc call, so this is a
-                // good place to update the session access time
-                scriptSession.updateLastAccessedTime();
+            // Use the new script session id not the one passed in
+            Loggers.SESSION.debug("ScriptSession re-sync: " + simplifyId(sentScriptId) + " has become " + simplifyId(newSessionId) + " on " + page);
+        }
+        else
+        {
+            // This could be called from a poll or an rpc call, so this is a
+            // good place to update the session access time
+            scriptSession.updateLastAccessedTime();
 
-                String storedPage = scriptSession.getPage();
-                if (!storedPage.equals(page))
-                {
-                    Loggers.SESSION.error("Invalid Page: Passed page=" + page + ", but page in script session=" + storedPage);
-                    throw new SecurityException("Invalid Page");
-                }
+            String storedPage = scriptSession.getPage();
+            if (!storedPage.equals(page))
+            {
+                Loggers.SESSION.error("Invalid Page: Passed page=" + page + ", but page in script session=" + storedPage);
+                throw new SecurityException("Invalid Page");
             }
+        }
 
-            associateScriptSessionAndPage(scriptSession, page);
-            associateScriptSessionAndHttpSession(scriptSession, httpSessionId);
+        associateScriptSessionAndPage(scriptSession, page);
+        associateScriptSessionAndHttpSession(scriptSession, httpSessionId);
 
-            // Maybe we should update the access time of the ScriptSession?
-            //  scriptSession.updateLastAccessedTime();
-            // Since this call could come from outside of a call from the
-            // browser, it's not really an indication that this session is still
-            // alive, so we don't.
-        }
+        // Maybe we should update the access time of the ScriptSession?
+        //  scriptSession.updateLastAccessedTime();
+        // Since this call could come from outside of a call from the
+        // browser, it's not really an indication that this session is still
+        // alive, so we don't.
 
         return scriptSession;
     }
@@ -162,14 +165,14 @@ public class DefaultScriptSessionManager implements ScriptSessionManager, Initia
         }
 
         scriptSession.setAttribute(ATTRIBUTE_HTTPSESSIONID, httpSessionId);
+        addToIndex(sessionXRef, httpSessionId, scriptSession.getId());
 
-        Set<String> scriptSessionIds = sessionXRef.get(httpSessionId);
-        if (scriptSessionIds == null)
+        // As for pages, the session could have been invalidated (and removed
+        // from the http session) while we were adding it
+        if (scriptSession.isInvalidated())
         {
-            scriptSessionIds = new HashSet<String>();
-            sessionXRef.put(httpSessionId, scriptSessionIds);
+            removeFromIndex(sessionXRef, httpSessionId, scriptSession.getId());
         }
-        scriptSessionIds.add(scriptSession.getId());
     }
 
     /**
@@ -185,17 +188,11 @@ public class DefaultScriptSessionManager implements ScriptSessionManager, Initia
             return;
         }
 
-        Set<String> scriptSessionIds = sessionXRef.get(httpSessionId);
-        if (scriptSessionIds == null)
+        if (!removeFromIndex(sessionXRef, httpSessionId, scriptSession.getId()))
         {
             Loggers.SESSION.debug("Warning: No script session ids for http session");
             return;
         }
-        scriptSessionIds.remove(scriptSession.getId());
-        if (scriptSessionIds.size() == 0)
-        {
-            sessionXRef.remove(httpSessionId);
-        }
 
         scriptSession.setAttribute(ATTRIBUTE_HTTPSESSIONID, null);
     }
@@ -216,15 +213,15 @@ public class DefaultScriptSessionManager implements ScriptSessionManager, Initia
 
         String normalizedPage = pageNormalizer.normalizePage(page);
 
-        Set<DefaultScriptSession> pageSessions = pageSessionMap.get(normalizedPage);
-        if (pageSessions == null)
+        addToIndex(pageSessionMap, normalizedPage, scriptSession);
+        scriptSession.setAttribute(ATTRIBUTE_PAGE, normalizedPage);
+
+        // Without a global lock the session could have been invalidated (and
+        // removed from the page) while we were adding it
+        if (scriptSession.isInvalidated())
         {
-            pageSessions = new HashSet<DefaultScriptSession>();
-            pageSessionMap.put(normalizedPage, pageSessions);
+            removeFromIndex(pageSessionMap, normalizedPage, scriptSession);
         }
-
-        pageSessions.add(scriptSession);
-        scriptSession.setAttribute(ATTRIBUTE_PAGE, normalizedPage);
     }
 
     /**
@@ -234,12 +231,86 @@ public class DefaultScriptSessionManager implements ScriptSessionManager, Initia
      */
     protected void disassociateScriptSessionAndPage(DefaultScriptSession scriptSession)
     {
-        for (Set<DefaultScriptSession> pageSessions : pageSessionMap.values())
+        // A script session only ever visits one page, which we remembered
+        // when we associated them
+        Object normalizedPage = scriptSession.getAttribute(ATTRIBUTE_PAGE);
+        if (normalizedPage != null)
+        {
+            removeFromIndex(pageSessionMap, normalizedPage, scriptSession);
+        }
+    }
+
+    /**
+     * Add a value to the set stored against a key, creating the set if needed
+     * @param index The map of keys to sets of values
+     * @param key The key to add against
+     * @param value The new value
+     */
+    protected <K, V> void addToIndex(ConcurrentMap<K, Set<V>> index, K key, V value)
+    {
+        // Most calls are from browsers that we already know about, so we check
+        // without locking first
+        Set<V> existing = index.get(key);
+        if (existing != null && existing.contains(value))
+        {
+            return;
+        }
+
+        synchronized (getStripeLock(key))
+        {
+            Set<V> values = index.get(key);
+            if (values == null)
+            {
+                values = new ConcurrentHashSet<V>();
+                index.put(key, values);
+            }
+
+            values.add(value);
+        }
+    }
+
+    /**
+     * Remove a value from the set stored against a key, removing the set when
+     * it becomes empty
+     * @param index The map of keys to sets of values
+     * @param key The key to remove from
+     * @param value The value to remove
+     * @return false if there was no set stored against the key
+     */
+    protected <K, V> boolean removeFromIndex(ConcurrentMap<K, Set<V>> index, Object key, V value)
+    {
+        synchronized (getStripeLock(key))
         {
-            pageSessions.remove(scriptSession);
+            Set<V> values = index.get(key);
+            if (values == null)
+            {
+                return false;
+            }
+
+            values.remove(value);
+            if (values.isEmpty())
+            {
+                index.remove(key);
+            }
+
+            return true;
         }
     }
 
+    /**
+     * Changes to the sets in {@link #pageSessionMap} and {@link #sessionXRef}
+     * are guarded by one of a number of locks chosen by the key of the set, so
+     * different pages and http sessions don't contend with each other.
+     * @param key The key of the set that is to be altered
+     * @return The lock to hold while altering the set
+     */
+    protected Object getStripeLock(Object key)
+    {
+        int hash = key.hashCode();
+        hash ^= (hash >>> 16);
+        return stripeLocks[hash & (stripeLocks.length - 1)];
+    }
+
     /* (non-Javadoc)
      * @see org.directwebremoting.extend.ScriptSessionManager#getScriptSessionsByHttpSessionId(java.lang.String)
      */
@@ -247,18 +318,15 @@ public class DefaultScriptSessionManager implements ScriptSessionManager, Initia
     {
         Collection<RealScriptSession> reply = new ArrayList<RealScriptSession>();
 
-        synchronized (sessionLock)
+        Set<String> scriptSessionIds = sessionXRef.get(httpSessionId);
+        if (scriptSessionIds != null)
         {
-            Set<String> scriptSessionIds = sessionXRef.get(httpSessionId);
-            if (scriptSessionIds != null)
+            for (String scriptSessionId : scriptSessionIds)
             {
-                for (String scriptSessionId : scriptSessionIds)
+                DefaultScriptSession scriptSession = sessionMap.get(scriptSessionId);
+                if (scriptSession != null)
                 {
-                    DefaultScriptSession scriptSession = sessionMap.get(scriptSessionId);
-                    if (scriptSession != null)
-                    {
-                        reply.add(scriptSession);
-                    }
+                    reply.add(scriptSession);
                 }
             }
         }
@@ -267,16 +335,25 @@ public class DefaultScriptSessionManager implements ScriptSessionManager, Initia
     }
 
     /* (non-Javadoc)
-     * @see org.directwebremoting.ScriptSessionManager#getAllScriptSessions()
+     * @see org.directwebremoting.extend.PageIndexedScriptSessionManager#getScriptSessionsByPage(java.lang.String)
      */
-    public Collection<ScriptSession> getAllScriptSessions()
+    public Collection<ScriptSession> getScriptSessionsByPage(String normalizedPage)
     {
-        synchronized (sessionLock)
+        Set<DefaultScriptSession> pageSessions = pageSessionMap.get(normalizedPage);
+        if (pageSessions == null)
         {
-            Set<ScriptSession> reply = new HashSet<ScriptSession>();
-            reply.addAll(sessionMap.values());
-            return reply;
+            return new ArrayList<ScriptSession>();
         }
+
+        return new ArrayList<ScriptSession>(pageSessions);
+    }
+
+    /* (non-Javadoc)
+     * @see org.directwebremoting.ScriptSessionManager#getAllScriptSessions()
+     */
+    public Collection<ScriptSession> getAllScriptSessions()
+    {
+        return new HashSet<ScriptSession>(sessionMap.values());
     }
 
     /**
@@ -288,19 +365,16 @@ public class DefaultScriptSessionManager implements ScriptSessionManager, Initia
     {
         Loggers.SESSION.debug("Invalidating " + scriptSession + " from " + scriptSession.getPage());
 
-        synchronized (sessionLock)
-        {
-            // Due to the way systems get a number of script sessions for a page
-            // and the perform a number of actions on them, we may get a number
-            // of invalidation checks, and therefore calls to invalidate().
-            // We could protect ourselves from this by having a
-            // 'hasBeenInvalidated' flag, but we're taking the simple option
-            // here of just allowing multiple invalidations.
-            sessionMap.remove(scriptSession.getId());
-
-            disassociateScriptSessionAndPage(scriptSession);
-            disassociateScriptSessionAndHttpSession(scriptSession);
-        }
+        // Due to the way systems get a number of script sessions for a page
+        // and the perform a number of actions on them, we may get a number
+        // of invalidation checks, and therefore calls to invalidate().
+        // We could protect ourselves from this by having a
+        // 'hasBeenInvalidated' flag, but we're taking the simple option
+        // here of just allowing multiple invalidations.
+        sessionMap.remove(scriptSession.getId());
+
+        disassociateScriptSessionAndPage(scriptSession);
+        disassociateScriptSessionAndHttpSession(scriptSession);
 
         // Are there any risks from doing this outside the locks?
         // The initial analysis is that 'Destroyed' is past tense so you would
@@ -318,41 +392,75 @@ public class DefaultScriptSessionManager implements ScriptSessionManager, Initia
         long now = System.currentTimeMillis();
         if (now - scriptSessionCheckTime > lastSessionCheckAt)
         {
-            checkTimeouts();
+            // Set this first to make it less likely that many threads check
             lastSessionCheckAt = now;
+            checkTimeouts();
         }
     }
 
     /**
-     * Do a check on all the known sessions to see if and have timeout and need
-     * removing.
+     * Check the sessions that could have timed out, and remove the ones that
+     * have.
+     * <p>Rather than scan every session, sessions are filed by the time at
+     * which they will expire if they are not used again. We only look at the
+     * sessions whose time has come. Any that have been used since they were
+     * filed are filed again against their new expiry time, so each session is
+     * looked at about once per timeout period however busy it is.
      */
     protected void checkTimeouts()
     {
         long now = System.currentTimeMillis();
-        List<ScriptSession> timeouts = new ArrayList<ScriptSession>();
+        long nowTick = now / EXPIRY_TICK_MILLIS;
 
-        synchronized (sessionLock)
+        List<DefaultScriptSession> due = new ArrayList<DefaultScriptSession>();
+        synchronized (expiryQueue)
         {
-            for (DefaultScriptSession session : sessionMap.values())
+            while (!expiryQueue.isEmpty() && expiryQueue.firstKey() <= nowTick)
             {
-                if (session.isInvalidated())
-                {
-                    continue;
-                }
+                due.addAll(expiryQueue.remove(expiryQueue.firstKey()));
+            }
+        }
 
-                long age = now - session.getLastAccessedTime();
-                if (age > scriptSessionTimeout)
-                {
-                    timeouts.add(session);
-                }
+        for (DefaultScriptSession session : due)
+        {
+            if (session.isInvalidated())
+            {
+                continue;
             }
 
-            for (ScriptSession scriptSession : timeouts)
+            long expiresAt = session.getLastAccessedTime() + scriptSessionTimeout;
+            if (expiresAt < now)
             {
-                DefaultScriptSession session = (DefaultScriptSession) scriptSession;
                 session.invalidate();
             }
+            else
+            {
+                scheduleExpiry(session, expiresAt);
+            }
+        }
+    }
+
+    /**
+     * File a session against the time at which it will expire if it is not
+     * used again.
+     * @param session The session to check at expiry time
+     * @param expiresAt When should we check the session
+     */
+    protected void scheduleExpiry(DefaultScriptSession session, long expiresAt)
+    {
+        // Round up so we never check before the session could have expired
+        long tick = (expiresAt + EXPIRY_TICK_MILLIS - 1) / EXPIRY_TICK_MILLIS;
+
+        synchronized (expiryQueue)
+        {
+            List<DefaultScriptSession> sessions = expiryQueue.get(tick);
+            if (sessions == null)
+            {
+                sessions = new ArrayList<DefaultScriptSession>();
+                expiryQueue.put(tick, sessions);
+            }
+
+            sessions.add(session);
         }
     }
 
@@ -464,6 +572,18 @@ public class DefaultScriptSessionManager implements ScriptSessionManager, Initia
     public void setScriptSessionTimeout(long scriptSessionTimeout)
     {
         this.scriptSessionTimeout = scriptSessionTimeout;
+
+        // Sessions were filed using the old timeout, and if it has got shorter
+        // they would be checked too late
+        synchronized (expiryQueue)
+        {
+            expiryQueue.clear();
+        }
+
+        for (DefaultScriptSession session : sessionMap.values())
+        {
+            scheduleExpiry(session, session.getLastAccessedTime() + scriptSessionTimeout);
+        }
     }
 
     /**
@@ -511,6 +631,103 @@ public class DefaultScriptSessionManager implements ScriptSessionManager, Initia
      */
     protected ScheduledThreadPoolExecutor executor;
 
+    /**
+     * How many scripts may wait for a browser to collect them before the
+     * {@link #setWaitingScriptOverflowPolicy(String) overflow policy} is
+     * applied. 0 (the default) means there is no limit.
+     */
+    public void setMaxWaitingScripts(int maxWaitingScripts)
+    {
+        this.maxWaitingScripts = maxWaitingScripts;
+    }
+
+    /**
+     * @see #setMaxWaitingScripts(int)
+     */
+    public int getMaxWaitingScripts()
+    {
+        return maxWaitingScripts;
+    }
+
+    /**
+     * @see #setMaxWaitingScripts(int)
+     */
+    private volatile int maxWaitingScripts = 0;
+
+    /**
+     * How much converted script may wait for a browser to collect it before
+     * the {@link #setWaitingScriptOverflowPolicy(String) overflow policy} is
+     * applied. Scripts are measured in characters, which for the mostly ASCII
+     * output of DWR is close enough to bytes. 0 (the default) means there is
+     * no limit.
+     */
+    public void setMaxWaitingScriptBytes(long maxWaitingScriptBytes)
+    {
+        this.maxWaitingScriptBytes = maxWaitingScriptBytes;
+    }
+
+    /**
+     * @see #setMaxWaitingScriptBytes(long)
+     */
+    public long getMaxWaitingScriptBytes()
+    {
+        return maxWaitingScriptBytes;
+    }
+
+    /**
+     * @see #setMaxWaitingScriptBytes(long)
+     */
+    private volatile long maxWaitingScriptBytes = 0;
+
+    /**
+     * What script sessions do when they have more waiting scripts than
+     * allowed by {@link #setMaxWaitingScripts(int)} or
+     * {@link #setMaxWaitingScriptBytes(long)}.
+     * @param policy The name of a {@link ScriptQueueOverflowPolicy}, for
+     * example "dropOldest" (the default), "reject", "invalidate" or "replace"
+     */
+    public void setWaitingScriptOverflowPolicy(String policy)
+    {
+        this.waitingScriptOverflowPolicy = ScriptQueueOverflowPolicy.fromString(policy);
+    }
+
+    /**
+     * @see #setWaitingScriptOverflowPolicy(String)
+     */
+    public ScriptQueueOverflowPolicy getWaitingScriptOverflowPolicy()
+    {
+        return waitingScriptOverflowPolicy;
+    }
+
+    /**
+     * @see #setWaitingScriptOverflowPolicy(String)
+     */
+    private volatile ScriptQueueOverflowPolicy waitingScriptOverflowPolicy = ScriptQueueOverflowPolicy.DROP_OLDEST;
+
+    /**
+     * Waiting scripts are converted to find their size when there is a limit
+     * on {@link #setMaxWaitingScriptBytes(long) waiting script bytes}. The
+     * converted output is remembered by the script so the conversion is not
+     * wasted when it is sent.
+     */
+    public void setConverterManager(ConverterManager converterManager)
+    {
+        this.converterManager = converterManager;
+    }
+
+    /**
+     * @see #setConverterManager(ConverterManager)
+     */
+    public ConverterManager getConverterManager()
+    {
+        return converterManager;
+    }
+
+    /**
+     * @see #setConverterManager(ConverterManager)
+     */
+    private ConverterManager converterManager;
+
     /**
      * Use of this attribute is currently discouraged, we may make this public
      * in a later release. Until then, it may change or be removed without warning.
@@ -547,33 +764,59 @@ public class DefaultScriptSessionManager implements ScriptSessionManager, Initia
      * We check for sessions that need timing out every
      * {@link #scriptSessionCheckTime}; this is when we last checked.
      */
-    protected long lastSessionCheckAt = System.currentTimeMillis();
+    protected volatile long lastSessionCheckAt = System.currentTimeMillis();
+
+    /**
+     * The sessions that we need to check for expiry, ordered by the time
+     * (in units of {@link #EXPIRY_TICK_MILLIS}) at which they should be
+     * checked.
+     * <p>GuardedBy("expiryQueue")
+     */
+    protected final SortedMap<Long, List<DefaultScriptSession>> expiryQueue = new TreeMap<Long, List<DefaultScriptSession>>();
+
+    /**
+     * Sessions that expire within the same tick are filed together
+     */
+    protected static final long EXPIRY_TICK_MILLIS = 1000;
+
+    /**
+     * The locks that guard changes to the sets in {@link #pageSessionMap} and
+     * {@link #sessionXRef}.
+     * @see #getStripeLock(Object)
+     */
+    private final Object[] stripeLocks = new Object[STRIPE_COUNT];
+    {
+        for (int i = 0; i < stripeLocks.length; i++)
+        {
+            stripeLocks[i] = new Object();
+        }
+    }
 
     /**
-     * What we synchronize against when we want to access either sessionMap or
-     * pageSessionMap
+     * How many locks do we spread changes to page and http session sets over?
+     * Must be a power of 2.
      */
-    protected final Object sessionLock = new Object();
+    private static final int STRIPE_COUNT = 32;
 
     /**
      * Allows us to associate script sessions with http sessions.
-     * The key is an http session id, the
-     * <p>GuardedBy("sessionLock")
+     * The key is an http session id, the value is the set of script session
+     * ids that belong to the http session
+     * <p>Changes guarded by {@link #getStripeLock(Object)}
      */
-    protected final Map<String, Set<String>> sessionXRef = new HashMap<String, Set<String>>();
+    protected final ConcurrentMap<String, Set<String>> sessionXRef = new ConcurrentHashMap<String, Set<String>>();
 
     /**
      * The map of all the known sessions.
      * The key is the script session id, the value is the session data
-     * <p>GuardedBy("sessionLock")
      */
-    protected final Map<String, DefaultScriptSession> sessionMap = new HashMap<String, DefaultScriptSession>();
+    protected final ConcurrentMap<String, DefaultScriptSession> sessionMap = new ConcurrentHashMap<String, DefaultScriptSession>();
 
     /**
      * The map of pages that have sessions.
      * The key is a normalized page, the value the script sessions that are
      * known to be currently visiting the page
-     * <p>GuardedBy("sessionLock")
+     * <p>Changes guarded by {@link #getStripeLock(Object)}
      */
-    protected final Map<String, Set<DefaultScriptSession>> pageSessionMap = new HashMap<String, Set<DefaultScriptSession>>();
+    protected final ConcurrentMap<String, Set<DefaultScriptSession>> pageSessionMap = new ConcurrentHashMap<String, Set<DefaultScriptSession>>();
 }
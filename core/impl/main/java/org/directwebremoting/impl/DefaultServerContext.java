@@ -26,9 +26,9 @@ import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 import org.directwebremoting.Container;
 import org.directwebremoting.ScriptSession;
-import org.directwebremoting.ScriptSessionFilter;
 import org.directwebremoting.ServerContext;
 import org.directwebremoting.extend.ConverterManager;
+import org.directwebremoting.extend.PageIndexedScriptSessionManager;
 import org.directwebremoting.extend.PageScriptSessionFilter;
 import org.directwebremoting.extend.ScriptSessionManager;
 import org.directwebremoting.servlet.UrlProcessor;
@@ -53,11 +53,21 @@ public class DefaultServerContext implements ServerContext
      */
     public Collection<ScriptSession> getScriptSessionsByPage(String url)
     {
-        List<ScriptSession> matching = new ArrayList<ScriptSession>();
-        Collection<ScriptSession> allScriptSessions = getScriptSessionManager().getAllScriptSessions();
-        ScriptSessionFilter filter = new PageScriptSessionFilter(this, url);
+        PageScriptSessionFilter filter = new PageScriptSessionFilter(this, url);
+        ScriptSessionManager scriptSessionManager = getScriptSessionManager();
 
-        for (ScriptSession session : allScriptSessions)
+        Collection<ScriptSession> candidates;
+        if (scriptSessionManager instanceof PageIndexedScriptSessionManager)
+        {
+            candidates = ((PageIndexedScriptSessionManager) scriptSessionManager).getScriptSessionsByPage(filter.getPage());
+        }
+        else
+        {
+            candidates = scriptSessionManager.getAllScriptSessions();
+        }
+
+        List<ScriptSession> matching = new ArrayList<ScriptSession>();
+        for (ScriptSession session : candidates)
         {
             if (filter.match(session))
             {
@@ -15,10 +15,12 @@
  */
 package org.directwebremoting.impl;
 
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 import org.directwebremoting.extend.WaitController;
-import org.directwebremoting.util.HitMonitor;
 
 /**
  * A smart implementation of ServerLoadMonitor.
@@ -34,44 +36,37 @@ import org.directwebremoting.util.HitMonitor;
  * </pre>
  * <p>Where cT is the connectedTime and dT is the disconnectedTime.</p>
  *
- * <p>We impose some limits: a maximum number of simultaneously connected
- * browsers <code>maxWaitingThreads</code>, and the maximum number of
+ * <p>We impose some limits: a budget for the number of simultaneously
+ * connected browsers <code>maxWaitingThreads</code>, and the maximum number of
  * connections per second <code>maxHitsPerSecond</code>.</p>
  *
  * <p>We attempt to keep the actual waitingThreads and hitsPerSecond within
  * bounds by varying connectedTime and disconnectedTime.</p>
  *
- * <p>The system is in one of 3 modes: USAGE_LOW, USAGE_HIGH and USAGE_DIGG. The
- * boundary between USAGE_LOW and USAGE_HIGH is called threadOut. The boundary
- * between USAGE_HIGH and USAGE_DIGG is called hitOut.</p>
- *
- * <p>The system starts in USAGE_LOW mode. This mode uses constant values of
- * connectedTime=60 secs and disconnectedTime=0 secs. We could use much bigger
- * values for connectedTime (like infinite) however the servlet spec does not
- * enable servlet engines to inform us if the browser goes away so we check by
- * asking the browser to reconnect periodically.</p>
- *
- * <p>In USAGE_LOW mode we measure the number of clients using the number of
- * concurrently connected browsers (waitingThreads), when this goes above
- * maxWaitingThreads we move into USAGE_HIGH mode.</p>
+ * <p>We keep exponentially weighted moving averages of the hit rate and the
+ * number of connected browsers, sampled at most once a second. From these we
+ * estimate the number of browsers, N, as the number connected plus the number
+ * that are disconnected (the hit rate multiplied by the disconnectedTime).</p>
  *
- * <p>On entering USAGE_HIGH mode, the settings (initially) change to
- * connectedTime=49 secs and disconnectedTime=1 sec. As the load increases the
- * connectedTime decreases linearly from 49 secs down to prevent the hits per
- * second from going above maxHitsPerSecond. If the connectedTime goes below
- * 1sec then the mode switches to USAGE_DIGG. If the connectedTime goes above
- * 49 secs then mode switches to USAGE_LOW.</p>
- *
- * <p>Note: there is some danger of an overlap where the system toggles between
- * USAGE_HIGH and USAGE_LOW. We need some way to prevent this from happening.
- * </p>
+ * <p>If N is within the connection budget, C, then everyone can stay connected
+ * for maxConnectedTime and reconnect immediately. Otherwise we can only have a
+ * fraction C/N of browsers connected at once, so cT/(cT+dT) = C/N. We want the
+ * disconnectedTime to be as short as possible, but if it is so short that
+ * cT is less than maxConnectedTime then browsers connect more often than they
+ * need to, so:</p>
+ * <pre>
+ * dT = min(maxConnectedTime * (N - C) / C, maxDisconnectedTime)
+ * </pre>
+ * <p>The hit rate is N/(cT+dT), so to keep it under maxHitsPerSecond, H:</p>
+ * <pre>
+ * dT = max(dT, (N - C) / H)
+ * cT = dT * C / (N - C)
+ * </pre>
+ * <p>As N grows the connectedTime falls smoothly toward 0, which is simple
+ * polling with a disconnectedTime of N/H.</p>
  *
- * <p>On entering USAGE_DIGG mode, the connectedTime changes to 0 secs, and the
- * disconnectedTime changes to 2 secs (to keep the round trip time at 2 secs).
- * The disconnectedTime alters to prevent the hitsPerSecond from going above
- * maxHitsPerSecond (In USAGE_HIGH mode the connectedTime was altered).
- * When the disconnectedTime would go under 2 secs, we switch back to USAGE_HIGH
- * mode.</p>
+ * <p>The counters are atomic and the times are volatile so no locks are held
+ * when a poll starts or ends.</p>
  * @author Joe Walker [joe at getahead dot org]
  */
 public class DefaultServerLoadMonitor extends AbstractServerLoadMonitor
@@ -106,11 +101,11 @@ public class DefaultServerLoadMonitor extends AbstractServerLoadMonitor
     @Override
     public void threadWaitStarting(WaitController controller)
     {
-        hitMonitor.recordHit();
-        waitingThreads++;
+        hits.incrementAndGet();
+        waitingThreads.incrementAndGet();
         super.threadWaitStarting(controller);
 
-        checkLoading();
+        checkLoading(System.currentTimeMillis());
     }
 
     /* (non-Javadoc)
@@ -119,114 +114,109 @@ public class DefaultServerLoadMonitor extends AbstractServerLoadMonitor
     @Override
     public void threadWaitEnding(WaitController controller)
     {
-        waitingThreads--;
+        waitingThreads.decrementAndGet();
         super.threadWaitEnding(controller);
     }
 
     /**
-     * Check that we are setting the time to next poll correctly.
+     * If a sample is due, update the averages and recalculate the connected
+     * and disconnected times. Only one thread wins the right to take each
+     * sample, so the averages are only written by one thread at a time.
+     * @param now The current time in milliseconds
      */
-    private void checkLoading()
+    protected void checkLoading(long now)
     {
-        float hitsPerSecond = (float) hitMonitor.getHitsInLastPeriod() / SECONDS_MONITORED;
-
-        if (waitingThreads < maxWaitingThreads)
+        long last = lastSampleAt.get();
+        long elapsed = now - last;
+        if (elapsed < SAMPLE_INTERVAL || !lastSampleAt.compareAndSet(last, now))
         {
-            connectedTime = maxConnectedTime;
-            disconnectedTime = 0;
-
-            setMode(USAGE_LOW);
+            // A burst of browsers can exhaust the budget before the next
+            // sample is due, so we don't wait for it
+            if (waitingThreads.get() > maxWaitingThreads)
+            {
+                recalculate(estimateBrowsers());
+            }
             return;
         }
 
-        int roundTripAtThreadOutSeconds = threadOutRoundTripTime / 1000;
+        long hitCount = hits.getAndSet(0);
+        double hitRate = hitCount * 1000.0 / elapsed;
 
-        int hitsPerSecondAtThreadOut = maxWaitingThreads / roundTripAtThreadOutSeconds;
-        int hitsPerSecondAtHitOut = maxHitsPerSecond;
+        // The weight of the new sample depends on how long it covers
+        double alpha = 1 - Math.exp(-(double) elapsed / averagingPeriod);
+        averageHitsPerSecond += alpha * (hitRate - averageHitsPerSecond);
+        averageWaitingThreads += alpha * (waitingThreads.get() - averageWaitingThreads);
 
-        if (hitsPerSecond < hitsPerSecondAtThreadOut)
-        {
-            // We should probably be in USAGE_LOW mode, so we force the low
-            // end of the values in USAGE_HIGH mode
-            connectedTime = usageHighInitialConnectedTime;
-            disconnectedTime = usageHighDisconnectedTime;
+        recalculate(estimateBrowsers());
+    }
 
-            setMode(USAGE_HIGH);
-            return;
-        }
+    /**
+     * How many browsers are there, connected or not?
+     * The average number of waiting threads lags behind a sudden rise, so we
+     * use the live count when it is higher.
+     * @return The estimated number of browsers
+     */
+    protected double estimateBrowsers()
+    {
+        double connected = Math.max(waitingThreads.get(), averageWaitingThreads);
+        return connected + averageHitsPerSecond * disconnectedTime / 1000;
+    }
 
-        if (mode == USAGE_DIGG)
+    /**
+     * Set the connected and disconnected times to suit a number of browsers
+     * @param browsers The estimated number of browsers
+     */
+    protected void recalculate(double browsers)
+    {
+        int budget = maxWaitingThreads;
+        if (browsers <= budget)
         {
-            // If we're getting close to the upper bound then slow down
-            float load = hitsPerSecond / maxHitsPerSecond;
-            connectedTime = usageDiggConnectedTime;
-            disconnectedTime = (int) (disconnectedTime * load);
-
-            // Check that USAGE_DIGG is the correct mode and we shouldn't change
-            if (disconnectedTime > usageDiggMinDisconnectedTime)
-            {
-                setMode(USAGE_DIGG);
-                return;
-            }
-
-            // So we were in USAGE_DIGG, but disconnectedTime was so low that we
-            // think USAGE_HIGH is a better mode to try
+            connectedTime = maxConnectedTime;
+            disconnectedTime = 0;
         }
-
-        if (hitsPerSecond < hitsPerSecondAtHitOut)
+        else
         {
-            // if hitsPerSecondAtThreadOut=0 and hitsPerSecondAtHitOut=1
-            // where would we score?
-            float factor = (float) waitingThreads / maxWaitingThreads;
-            connectedTime = (int) (connectedTime / factor);
-
-            if (connectedTime > usageHighInitialConnectedTime)
-            {
-                connectedTime = usageHighInitialConnectedTime;
-            }
-
-            if (connectedTime < usageHighFinalConnectedTime)
-            {
-                connectedTime = usageHighFinalConnectedTime;
-            }
-
-            disconnectedTime = usageHighDisconnectedTime;
+            double excess = browsers - budget;
+            double newDisconnectedTime = Math.min((double) maxConnectedTime * excess / budget, maxDisconnectedTime);
+            newDisconnectedTime = Math.max(newDisconnectedTime, 1000 * excess / maxHitsPerSecond);
+            double newConnectedTime = Math.min(newDisconnectedTime * budget / excess, maxConnectedTime);
 
-            setMode(USAGE_HIGH);
-            return;
+            connectedTime = (int) newConnectedTime;
+            disconnectedTime = (int) Math.ceil(newDisconnectedTime);
         }
 
-        float load = hitsPerSecond / maxHitsPerSecond;
-        connectedTime = usageDiggConnectedTime;
-        disconnectedTime = (int) (disconnectedTime * load);
-
-        if (disconnectedTime < usageDiggMinDisconnectedTime)
+        if (log.isDebugEnabled())
         {
-            disconnectedTime = usageDiggMinDisconnectedTime;
+            log.debug("Browsers=" + (int) browsers + " hits/sec=" + (int) averageHitsPerSecond + " waiting=" + (int) averageWaitingThreads + " connectedTime=" + connectedTime + " disconnectedTime=" + disconnectedTime);
         }
-
-        setMode(USAGE_DIGG);
     }
 
     /**
-     * For debug purposes we keep a track of what mode we are in.
-     * @param mode The new usage mode
+     * @return How many browsers are connected right now
      */
-    protected void setMode(int mode)
+    public int getWaitingThreads()
     {
-        if (log.isDebugEnabled() && mode != this.mode)
-        {
-            log.debug("Changing modes, from " + USAGE_NAMES[this.mode] + " to " + USAGE_NAMES[mode]);
-        }
+        return waitingThreads.get();
+    }
 
-        this.mode = mode;
+    /**
+     * @return The moving average of the number of connects per second
+     */
+    public double getAverageHitsPerSecond()
+    {
+        return averageHitsPerSecond;
     }
 
     /**
-     * @param maxWaitingThreads the maxWaitingThreads to set
+     * @param maxWaitingThreads The budget for connected browsers
      */
     public void setMaxWaitingThreads(int maxWaitingThreads)
     {
+        if (maxWaitingThreads <= 0)
+        {
+            throw new IllegalArgumentException("maxWaitingThreads must be greater than 0");
+        }
+
         this.maxWaitingThreads = maxWaitingThreads;
     }
 
@@ -235,102 +225,119 @@ public class DefaultServerLoadMonitor extends AbstractServerLoadMonitor
      */
     public void setMaxHitsPerSecond(int maxHitsPerSecond)
     {
+        if (maxHitsPerSecond <= 0)
+        {
+            throw new IllegalArgumentException("maxHitsPerSecond must be greater than 0");
+        }
+
         this.maxHitsPerSecond = maxHitsPerSecond;
     }
 
     /**
-     * It might be good top expose this, however there are currently assumptions
-     * in the code that the value is set to 60000.
-     * See {@link #usageHighInitialConnectedTime}.
-     * @param maxConnectedTime the maxConnectedTime to set
+     * @param maxConnectedTime The longest we keep a browser connected before
+     * asking it to reconnect
      */
-    void setMaxConnectedTime(int maxConnectedTime)
+    public void setMaxConnectedTime(int maxConnectedTime)
     {
         this.maxConnectedTime = maxConnectedTime;
+        this.connectedTime = maxConnectedTime;
     }
 
     /**
-     *
+     * @param maxDisconnectedTime The longest we would like browsers to wait
+     * before reconnecting. This is exceeded if needed to keep within
+     * maxHitsPerSecond
      */
-    protected static final int usageHighDisconnectedTime = 1000;
-    protected static final int usageHighInitialConnectedTime = 49000;
-    protected static final int usageHighFinalConnectedTime = 1000;
-    protected static final int usageDiggConnectedTime = 0;
-    protected static final int usageDiggMinDisconnectedTime = usageHighDisconnectedTime + usageHighFinalConnectedTime;
-    protected static final int hitOutRoundTripTime = usageHighDisconnectedTime + usageHighFinalConnectedTime;
-    protected static final int threadOutRoundTripTime = usageHighInitialConnectedTime + usageHighDisconnectedTime;
+    public void setMaxDisconnectedTime(int maxDisconnectedTime)
+    {
+        this.maxDisconnectedTime = maxDisconnectedTime;
+    }
+
+    /**
+     * @param averagingPeriod The time constant in milliseconds of the moving
+     * averages. Longer periods react more slowly to changes in load.
+     */
+    public void setAveragingPeriod(int averagingPeriod)
+    {
+        if (averagingPeriod <= 0)
+        {
+            throw new IllegalArgumentException("averagingPeriod must be greater than 0");
+        }
+
+        this.averagingPeriod = averagingPeriod;
+    }
 
     /**
-     * Static configuration data: The max number of threads we keep waiting.
-     * We reduce the timeWithinPoll*Stream variables to reduce the load
+     * Static configuration data: The budget for browsers connected at once.
+     * We reduce the connectedTime to keep within this.
      */
-    protected int maxWaitingThreads = 100;
+    protected volatile int maxWaitingThreads = 100;
 
     /**
      * Static configuration data: The max number of hits per second.
-     * We increase the poll time to compensate and reduce the load. If this
-     * number is not at least half maxWaitingThreads then the USAGE_HIGH mode
-     * will not exist and the system will sublime from USAGE_LOW to USAGE_DIGG
+     * We increase the disconnectedTime to keep within this.
      */
-    protected int maxHitsPerSecond = 100;
+    protected volatile int maxHitsPerSecond = 100;
 
     /**
-     * Static configuration data: What is the longest we wait for extra input
-     * after detecting output.
+     * Static configuration data: What is the longest we keep a browser
+     * connected.
      */
-    protected int maxConnectedTime = 60000;
+    protected volatile int maxConnectedTime = 60000;
 
     /**
-     * The system is under-utilized. Everyone does comet.
+     * Static configuration data: What is the longest we would like browsers
+     * to stay disconnected.
      */
-    protected static final int USAGE_LOW = 0;
+    protected volatile int maxDisconnectedTime = 10000;
 
     /**
-     * This system can't cope with everyone on comet, we are in mixed mode.
+     * Static configuration data: The time constant of the moving averages.
      */
-    protected static final int USAGE_HIGH = 1;
+    protected volatile int averagingPeriod = 10000;
 
     /**
-     * The system is very heavily used, polling only.
+     * The time we are currently waiting before sending a browser away and
+     * asking it to reconnect.
      */
-    protected static final int USAGE_DIGG = 2;
+    protected volatile int connectedTime = 60000;
 
     /**
-     * Some Strings to help us give some debug output
+     * How long are we telling users to wait before they come back next
      */
-    protected static final String[] USAGE_NAMES = { "Low", "High", "Digg" };
+    protected volatile int disconnectedTime = 0;
 
     /**
-     * What is the current usage mode.
+     * How many sleepers are there?
      */
-    protected int mode = USAGE_LOW;
+    protected final AtomicInteger waitingThreads = new AtomicInteger();
 
     /**
-     * The time we are currently waiting before sending a browser away and
-     * asking it to reconnect.
+     * The hits since the last sample
      */
-    protected int connectedTime = 60000;
+    protected final AtomicLong hits = new AtomicLong();
 
     /**
-     * How long are we telling users to wait before they come back next
+     * When did we last take a sample?
      */
-    protected int disconnectedTime = 1000;
+    protected final AtomicLong lastSampleAt = new AtomicLong(System.currentTimeMillis());
 
     /**
-     * We are recording the number of hits in the last 5 seconds.
-     * Maybe we should think about making this configurable.
+     * The moving average of hits per second.
+     * Only written by the thread that wins {@link #lastSampleAt}
      */
-    protected static final int SECONDS_MONITORED = 10;
+    protected volatile double averageHitsPerSecond = 0;
 
     /**
-     * Our record of the server loading
+     * The moving average of connected browsers.
+     * Only written by the thread that wins {@link #lastSampleAt}
      */
-    protected HitMonitor hitMonitor = new HitMonitor(SECONDS_MONITORED);
+    protected volatile double averageWaitingThreads = 0;
 
     /**
-     * How many sleepers are there?
+     * How often do we sample the load?
      */
-    protected int waitingThreads = 0;
+    protected static final long SAMPLE_INTERVAL = 1000;
 
     /**
      * The log stream
@@ -22,6 +22,9 @@ import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 import org.directwebremoting.ScriptSession;
 import org.directwebremoting.ScriptSessionFilter;
+import org.directwebremoting.extend.AndScriptSessionFilter;
+import org.directwebremoting.extend.PageIndexedScriptSessionManager;
+import org.directwebremoting.extend.PageScriptSessionFilter;
 import org.directwebremoting.extend.ScriptSessionManager;
 import org.directwebremoting.extend.TaskDispatcher;
 
@@ -36,10 +39,36 @@ public class DefaultTaskDispatcher implements TaskDispatcher
      */
     public void dispatchTask(ScriptSessionFilter filter, Runnable task)
     {
-        Collection<ScriptSession> all = scriptSessionManager.getAllScriptSessions();
-        Collection<ScriptSession> use = new ArrayList<ScriptSession>();
+        // If the filter is for a page (as from Browser.withPage() and
+        // Browser.withPageFiltered()) then we can ask for the sessions on that
+        // page rather than checking all of them. The index can lag behind the
+        // sessions, so the whole filter is still checked against each one.
+        Collection<ScriptSession> candidates = null;
+        if (scriptSessionManager instanceof PageIndexedScriptSessionManager)
+        {
+            PageScriptSessionFilter pageFilter = null;
+            if (filter instanceof PageScriptSessionFilter)
+            {
+                pageFilter = (PageScriptSessionFilter) filter;
+            }
+            else if (filter instanceof AndScriptSessionFilter && ((AndScriptSessionFilter) filter).getLeft() instanceof PageScriptSessionFilter)
+            {
+                pageFilter = (PageScriptSessionFilter) ((AndScriptSessionFilter) filter).getLeft();
+            }
+
+            if (pageFilter != null)
+            {
+                candidates = ((PageIndexedScriptSessionManager) scriptSessionManager).getScriptSessionsByPage(pageFilter.getPage());
+            }
+        }
 
-        for (ScriptSession session : all)
+        if (candidates == null)
+        {
+            candidates = scriptSessionManager.getAllScriptSessions();
+        }
+
+        Collection<ScriptSession> use = new ArrayList<ScriptSession>();
+        for (ScriptSession session : candidates)
         {
             if (filter.match(session))
             {
@@ -67,6 +67,17 @@ public class DefaultWebContextBuilder implements WebContextBuilder
         user.set(null);
     }
 
+    /**
+     * Share an existing WebContext with the current thread.
+     * This is for the rare cases where DWR does part of the work for a request
+     * on threads other than the one that the request came in on.
+     * @param webContext The context to share, or null to release the thread
+     */
+    static void engageThread(WebContext webContext)
+    {
+        user.set(webContext);
+    }
+
     /**
      * The storage of thread based data
      */
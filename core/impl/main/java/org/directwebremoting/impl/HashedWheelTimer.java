@@ -0,0 +1,506 @@
+/*
+ * Copyright 2005 Joe Walker
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.directwebremoting.impl;
+
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.directwebremoting.extend.UninitializingBean;
+
+/**
+ * A timer for the large numbers of short-lived, usually cancelled, timeouts
+ * created by the {@link org.directwebremoting.extend.Alarm}s of each poll.
+ * <p>A ScheduledThreadPoolExecutor keeps its tasks in a heap, so scheduling and
+ * cancelling are O(log n) and all go through one lock. Here timeouts are
+ * hashed into the buckets of a wheel that a single ticker thread turns, so
+ * scheduling and cancelling are O(1) and lock-free: both just add the timeout
+ * to a queue which the ticker thread drains at the next tick. Expired tasks
+ * are run on a pool of worker threads so a slow task does not delay the wheel.
+ * <p>The price is accuracy: timeouts go off on the first tick after they are
+ * due, which is fine for alarms measured in seconds.
+ * @author Joe Walker [joe at getahead dot ltd dot uk]
+ */
+public class HashedWheelTimer implements UninitializingBean
+{
+    /**
+     * Schedule a task to run after a delay
+     * @param task The task to run
+     * @param delay How long to wait in milliseconds
+     * @return A Timeout that allows the task to be cancelled
+     */
+    public Timeout schedule(Runnable task, long delay)
+    {
+        if (task == null)
+        {
+            throw new NullPointerException("task");
+        }
+
+        start();
+
+        long deadline = System.nanoTime() - startTime + TimeUnit.MILLISECONDS.toNanos(Math.max(delay, 0));
+        Timeout timeout = new Timeout(task, deadline);
+        pending.add(timeout);
+        return timeout;
+    }
+
+    /**
+     * How long between each turn of the wheel. Timeouts can be up to this
+     * much late. Defaults to 100ms
+     * @param alarmTickDuration The length of a tick in milliseconds
+     */
+    public void setAlarmTickDuration(long alarmTickDuration)
+    {
+        if (alarmTickDuration <= 0)
+        {
+            throw new IllegalArgumentException("alarmTickDuration must be greater than 0");
+        }
+
+        checkNotStarted();
+        this.tickDuration = TimeUnit.MILLISECONDS.toNanos(alarmTickDuration);
+    }
+
+    /**
+     * How many buckets there are in the wheel. Timeouts further away than
+     * one turn of the wheel take more than one turn to expire, so this should
+     * be about the longest common timeout divided by the tick duration.
+     * Rounded up to a power of 2, defaults to 1024
+     * @param alarmWheelSize The number of buckets in the wheel
+     */
+    public void setAlarmWheelSize(int alarmWheelSize)
+    {
+        if (alarmWheelSize <= 0 || alarmWheelSize > MAX_WHEEL_SIZE)
+        {
+            throw new IllegalArgumentException("alarmWheelSize must be between 1 and " + MAX_WHEEL_SIZE);
+        }
+
+        checkNotStarted();
+
+        int size = 1;
+        while (size < alarmWheelSize)
+        {
+            size <<= 1;
+        }
+        this.wheelSize = size;
+    }
+
+    /**
+     * How many threads run expired tasks. Defaults to 1
+     * @param alarmWorkerThreads The size of the worker pool
+     */
+    public void setAlarmWorkerThreads(int alarmWorkerThreads)
+    {
+        if (alarmWorkerThreads <= 0)
+        {
+            throw new IllegalArgumentException("alarmWorkerThreads must be greater than 0");
+        }
+
+        checkNotStarted();
+        this.workerThreads = alarmWorkerThreads;
+    }
+
+    /**
+     * Configuration can only change before the wheel starts turning
+     */
+    private void checkNotStarted()
+    {
+        synchronized (lifecycleLock)
+        {
+            if (ticker != null)
+            {
+                throw new IllegalStateException("HashedWheelTimer has already started");
+            }
+        }
+    }
+
+    /**
+     * Start the ticker thread and workers if they are not already running.
+     * We start lazily so that the container can configure us first.
+     */
+    private void start()
+    {
+        if (ticker != null)
+        {
+            return;
+        }
+
+        synchronized (lifecycleLock)
+        {
+            if (stopped)
+            {
+                throw new RejectedExecutionException("HashedWheelTimer has been stopped");
+            }
+
+            if (ticker != null)
+            {
+                return;
+            }
+
+            workers = Executors.newFixedThreadPool(workerThreads, new ThreadFactory()
+            {
+                public Thread newThread(Runnable runnable)
+                {
+                    Thread thread = new Thread(runnable, "DWR-Alarm-" + threadCount.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                }
+
+                private final AtomicInteger threadCount = new AtomicInteger();
+            });
+
+            @SuppressWarnings({"unchecked", "rawtypes"})
+            Set<Timeout>[] temp = new Set[wheelSize];
+            for (int i = 0; i < temp.length; i++)
+            {
+                temp[i] = new HashSet<Timeout>();
+            }
+            wheel = temp;
+
+            startTime = System.nanoTime();
+
+            Thread thread = new Thread(new Worker(), "DWR-Alarm-Ticker");
+            thread.setDaemon(true);
+            thread.start();
+            ticker = thread;
+        }
+    }
+
+    /**
+     * Stop the ticker thread and the workers. Tasks that have not yet run will
+     * not be run.
+     */
+    public void stop()
+    {
+        synchronized (lifecycleLock)
+        {
+            stopped = true;
+
+            if (ticker != null)
+            {
+                ticker.interrupt();
+            }
+
+            if (workers != null)
+            {
+                workers.shutdownNow();
+            }
+        }
+    }
+
+    /* (non-Javadoc)
+     * @see org.directwebremoting.extend.UninitializingBean#contextDestroyed()
+     */
+    public void contextDestroyed()
+    {
+    }
+
+    /* (non-Javadoc)
+     * @see org.directwebremoting.extend.UninitializingBean#servletDestroyed()
+     */
+    public void servletDestroyed()
+    {
+        stop();
+    }
+
+    /**
+     * The ticker thread. Only this thread touches the wheel.
+     */
+    private final class Worker implements Runnable
+    {
+        /* (non-Javadoc)
+         * @see java.lang.Runnable#run()
+         */
+        public void run()
+        {
+            long tick = 0;
+            int mask = wheel.length - 1;
+
+            while (!stopped)
+            {
+                if (!waitForTick(tick))
+                {
+                    break;
+                }
+
+                removeCancelled();
+                transferPending(tick, mask);
+                expire(wheel[(int) (tick & mask)]);
+
+                tick++;
+            }
+        }
+
+        /**
+         * Sleep until the end of the given tick
+         * @param tick The tick to wait for
+         * @return false if we were interrupted because we are stopping
+         */
+        private boolean waitForTick(long tick)
+        {
+            long deadline = tickDuration * (tick + 1);
+
+            while (true)
+            {
+                long sleepNanos = deadline - (System.nanoTime() - startTime);
+                if (sleepNanos <= 0)
+                {
+                    return true;
+                }
+
+                try
+                {
+                    TimeUnit.NANOSECONDS.sleep(sleepNanos);
+                }
+                catch (InterruptedException ex)
+                {
+                    if (stopped)
+                    {
+                        return false;
+                    }
+                }
+            }
+        }
+
+        /**
+         * Move newly scheduled timeouts into their buckets
+         * @param tick The current tick
+         * @param mask Used to turn a tick into a bucket index
+         */
+        private void transferPending(long tick, int mask)
+        {
+            Timeout timeout;
+            while ((timeout = pending.poll()) != null)
+            {
+                if (timeout.state.get() != STATE_PENDING)
+                {
+                    continue;
+                }
+
+                long calculated = timeout.deadline / tickDuration;
+                timeout.remainingRounds = (calculated - tick) / wheel.length;
+
+                // Timeouts that are already due go in the current bucket
+                long ticks = Math.max(calculated, tick);
+                timeout.bucket = wheel[(int) (ticks & mask)];
+                timeout.bucket.add(timeout);
+            }
+        }
+
+        /**
+         * Take cancelled timeouts out of their buckets
+         */
+        private void removeCancelled()
+        {
+            Timeout timeout;
+            while ((timeout = cancelled.poll()) != null)
+            {
+                if (timeout.bucket != null)
+                {
+                    timeout.bucket.remove(timeout);
+                    timeout.bucket = null;
+                }
+            }
+        }
+
+        /**
+         * Run all the timeouts in a bucket that are due on this turn
+         * @param bucket The bucket for the current tick
+         */
+        private void expire(Set<Timeout> bucket)
+        {
+            for (Iterator<Timeout> it = bucket.iterator(); it.hasNext();)
+            {
+                Timeout timeout = it.next();
+                if (timeout.remainingRounds > 0)
+                {
+                    timeout.remainingRounds--;
+                    continue;
+                }
+
+                it.remove();
+                timeout.bucket = null;
+
+                if (timeout.state.compareAndSet(STATE_PENDING, STATE_EXPIRED))
+                {
+                    try
+                    {
+                        workers.execute(timeout.task);
+                    }
+                    catch (RejectedExecutionException ex)
+                    {
+                        log.debug("Alarm not run because the timer is stopping");
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * A handle on a scheduled task that allows it to be cancelled
+     */
+    public final class Timeout
+    {
+        /**
+         * @param task The task to run
+         * @param deadline When to run, in nanos since the timer started
+         */
+        private Timeout(Runnable task, long deadline)
+        {
+            this.task = task;
+            this.deadline = deadline;
+        }
+
+        /**
+         * Prevent the task from running if it has not already started.
+         * @return true if the task will not now run
+         */
+        public boolean cancel()
+        {
+            if (!state.compareAndSet(STATE_PENDING, STATE_CANCELLED))
+            {
+                return false;
+            }
+
+            cancelled.add(this);
+            return true;
+        }
+
+        /**
+         * @return true if {@link #cancel()} stopped the task from running
+         */
+        public boolean isCancelled()
+        {
+            return state.get() == STATE_CANCELLED;
+        }
+
+        /**
+         * @return true if the task has been handed to a worker to run
+         */
+        public boolean isExpired()
+        {
+            return state.get() == STATE_EXPIRED;
+        }
+
+        /**
+         * The task to run
+         */
+        private final Runnable task;
+
+        /**
+         * When to run, in nanos since the timer started
+         */
+        private final long deadline;
+
+        /**
+         * Pending, cancelled or expired
+         */
+        private final AtomicInteger state = new AtomicInteger(STATE_PENDING);
+
+        /**
+         * How many more turns of the wheel before we expire.
+         * Only touched by the ticker thread.
+         */
+        private long remainingRounds;
+
+        /**
+         * The bucket we are in, or null if we are not in one.
+         * Only touched by the ticker thread.
+         */
+        private Set<Timeout> bucket;
+    }
+
+    /**
+     * Timeouts waiting for the ticker thread to put them in a bucket
+     */
+    private final Queue<Timeout> pending = new ConcurrentLinkedQueue<Timeout>();
+
+    /**
+     * Timeouts waiting for the ticker thread to take them out of their bucket
+     */
+    private final Queue<Timeout> cancelled = new ConcurrentLinkedQueue<Timeout>();
+
+    /**
+     * The buckets. Only touched by the ticker thread once started.
+     */
+    private Set<Timeout>[] wheel;
+
+    /**
+     * The length of a tick in nanoseconds
+     */
+    private volatile long tickDuration = TimeUnit.MILLISECONDS.toNanos(100);
+
+    /**
+     * @see #setAlarmWheelSize(int)
+     */
+    private int wheelSize = 1024;
+
+    /**
+     * @see #setAlarmWorkerThreads(int)
+     */
+    private int workerThreads = 1;
+
+    /**
+     * The time (from System.nanoTime()) at which we started
+     */
+    private volatile long startTime;
+
+    /**
+     * The thread that turns the wheel, or null if we have not started
+     */
+    private volatile Thread ticker;
+
+    /**
+     * The threads that run expired tasks
+     */
+    private ExecutorService workers;
+
+    /**
+     * Have we been told to stop?
+     */
+    private volatile boolean stopped = false;
+
+    /**
+     * Guards starting and stopping
+     */
+    private final Object lifecycleLock = new Object();
+
+    /**
+     * The states of a Timeout
+     */
+    private static final int STATE_PENDING = 0;
+    private static final int STATE_CANCELLED = 1;
+    private static final int STATE_EXPIRED = 2;
+
+    /**
+     * We don't need more buckets than this
+     */
+    private static final int MAX_WHEEL_SIZE = 1 << 20;
+
+    /**
+     * The log stream
+     */
+    private static final Log log = LogFactory.getLog(HashedWheelTimer.class);
+}
@@ -16,9 +16,6 @@
 package org.directwebremoting.impl;
 
 import java.io.IOException;
-import java.util.concurrent.ScheduledFuture;
-import java.util.concurrent.ScheduledThreadPoolExecutor;
-import java.util.concurrent.TimeUnit;
 
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
@@ -38,13 +35,14 @@ public class OutputAlarm implements Alarm
     /**
      * @param scriptSession The script session to monitor
      * @param maxWaitAfterWrite How long do we wait after output
+     * @param timer How we schedule the wake up after output
      */
-    public OutputAlarm(Sleeper sleeper, RealScriptSession scriptSession, int maxWaitAfterWrite, ScheduledThreadPoolExecutor executor)
+    public OutputAlarm(Sleeper sleeper, RealScriptSession scriptSession, int maxWaitAfterWrite, HashedWheelTimer timer)
     {
         this.sleeper = sleeper;
         this.maxWaitAfterWrite = maxWaitAfterWrite;
         this.scriptSession = scriptSession;
-        this.executor = executor;
+        this.timer = timer;
 
         conduit = new AlarmScriptConduit();
         try
@@ -63,9 +61,10 @@ public class OutputAlarm implements Alarm
     public void cancel()
     {
         scriptSession.removeScriptConduit(conduit);
-        if (future != null)
+        HashedWheelTimer.Timeout temp = timeout;
+        if (temp != null)
         {
-            future.cancel(false);
+            temp.cancel();
         }
     }
 
@@ -104,7 +103,7 @@ public class OutputAlarm implements Alarm
                     }
                 };
 
-                future = executor.schedule(runnable, maxWaitAfterWrite, TimeUnit.MILLISECONDS);
+                timeout = timer.schedule(runnable, maxWaitAfterWrite);
             }
 
             return false;
@@ -132,15 +131,15 @@ public class OutputAlarm implements Alarm
     protected final RealScriptSession scriptSession;
 
     /**
-     * The future result that allows us to cancel the timer
+     * The handle that allows us to cancel the timer
      */
-    protected ScheduledFuture<?> future;
+    protected volatile HashedWheelTimer.Timeout timeout;
 
     /**
      * How we schedule the ScriptConduit to call {@link Sleeper#wakeUp()}
      * after {@link #maxWaitAfterWrite} millis has passed.
      */
-    protected final ScheduledThreadPoolExecutor executor;
+    protected final HashedWheelTimer timer;
 
     /**
      * The log stream
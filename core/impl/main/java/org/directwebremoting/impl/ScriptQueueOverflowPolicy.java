@@ -0,0 +1,62 @@
+/*
+ * Copyright 2005 Joe Walker
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.directwebremoting.impl;
+
+/**
+ * What a {@link DefaultScriptSession} does when the scripts waiting for its
+ * browser to connect grow past the limits set on the
+ * {@link DefaultScriptSessionManager}.
+ * @author Joe Walker [joe at getahead dot ltd dot uk]
+ */
+public enum ScriptQueueOverflowPolicy
+{
+    /**
+     * Discard the oldest waiting scripts to make room for the new one
+     */
+    DROP_OLDEST,
+
+    /**
+     * Discard the new script, leaving the waiting scripts untouched
+     */
+    REJECT,
+
+    /**
+     * Invalidate the script session. A browser that can't keep up is assumed
+     * to have gone away, and will need to reload to get a new script session
+     */
+    INVALIDATE,
+
+    /**
+     * A script with a {@link org.directwebremoting.ScriptBuffer#getReplaceKey()}
+     * replaces any waiting scripts with the same key, so only the latest
+     * update for each key is sent. If we are still over the limits, the oldest
+     * waiting scripts are discarded as for {@link #DROP_OLDEST}
+     */
+    REPLACE;
+
+    /**
+     * Lookup a policy by name, ignoring case and allowing camel case, so
+     * "dropOldest", "drop_oldest" and "DROP_OLDEST" are all the same.
+     * @param name The name of the policy
+     * @return The matching policy
+     * @throws IllegalArgumentException If there is no policy with the given name
+     */
+    public static ScriptQueueOverflowPolicy fromString(String name)
+    {
+        String normalized = name.trim().replaceAll("([a-z])([A-Z])", "$1_$2").toUpperCase();
+        return valueOf(normalized);
+    }
+}
@@ -17,6 +17,7 @@ package org.directwebremoting.impl;
 
 import java.io.IOException;
 import java.io.InputStream;
+import java.lang.reflect.Method;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
@@ -26,6 +27,9 @@ import java.util.List;
 import java.util.Map;
 import java.util.Properties;
 import java.util.StringTokenizer;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
 import javax.servlet.ServletConfig;
 import javax.servlet.ServletContext;
@@ -51,11 +55,13 @@ import org.directwebremoting.extend.Creator;
 import org.directwebremoting.extend.CreatorManager;
 import org.directwebremoting.extend.DwrConstants;
 import org.directwebremoting.extend.Handler;
+import org.directwebremoting.extend.Remoter;
 import org.directwebremoting.extend.ScriptSessionManager;
 import org.directwebremoting.extend.ServerLoadMonitor;
 import org.directwebremoting.extend.TaskDispatcherFactory;
 import org.directwebremoting.json.parse.JsonParserFactory;
 import org.directwebremoting.json.serialize.JsonSerializerFactory;
+import org.directwebremoting.servlet.InterfaceHandler;
 import org.directwebremoting.servlet.PathConstants;
 import org.directwebremoting.servlet.UrlProcessor;
 import org.directwebremoting.util.FakeServletConfig;
@@ -93,6 +99,12 @@ public class StartupUtil
      */
     public static final String INIT_CUSTOM_CONFIGURATOR = "customConfigurator";
 
+    /**
+     * Init parameter: Generate all the interface scripts at startup rather
+     * than when they are first requested
+     */
+    public static final String INIT_PRE_GENERATE_INTERFACES = "preGenerateInterfaceScripts";
+
     /**
      * The name under which we publish all {@link Container}s.
      */
@@ -711,6 +723,151 @@ public class StartupUtil
                 throw delayedIOException;
             }
         }
+
+        if (Boolean.valueOf(servletConfig.getInitParameter(INIT_PRE_GENERATE_INTERFACES)))
+        {
+            preGenerateInterfaceScripts(container, servletConfig);
+        }
+    }
+
+    /**
+     * Generate, compress and cache the interface scripts for all the
+     * non-hidden creators, in parallel, so the first users after a restart
+     * don't have to wait for them.
+     * <p>Interface scripts contain the path to DWR, so we need to know the
+     * context path and the servlet mapping, which are only available from the
+     * Servlet 2.5 and 3.0 APIs. Where they are not available, or where the
+     * path is absolute and so depends on the request, we leave generation
+     * until the scripts are first requested.
+     * @param container The container to find the creators and handler in
+     * @param servletConfig The source of the servlet mapping
+     */
+    public static void preGenerateInterfaceScripts(Container container, ServletConfig servletConfig)
+    {
+        String interfaceHandlerUrl = (String) container.getBean("interfaceHandlerUrl");
+        Object bean = container.getBean(PathConstants.PATH_PREFIX + interfaceHandlerUrl);
+        if (!(bean instanceof InterfaceHandler))
+        {
+            Loggers.STARTUP.warn("Not pre-generating interface scripts: No InterfaceHandler at " + interfaceHandlerUrl);
+            return;
+        }
+        final InterfaceHandler handler = (InterfaceHandler) bean;
+
+        // An absolute path is made from the host and port of the request, and
+        // we won't know those until a request comes in
+        Remoter remoter = container.getBean(Remoter.class);
+        if (remoter instanceof DefaultRemoter && ((DefaultRemoter) remoter).isUseAbsolutePath())
+        {
+            Loggers.STARTUP.warn("Not pre-generating interface scripts: useAbsolutePath needs the host name from a request.");
+            return;
+        }
+
+        ServletContext servletContext = servletConfig.getServletContext();
+        final String contextPath = LocalUtil.getProperty(servletContext, "contextPath", String.class);
+        final String servletPath = getServletPath(servletContext, servletConfig.getServletName());
+        if (contextPath == null || servletPath == null)
+        {
+            Loggers.STARTUP.warn("Not pre-generating interface scripts: The context path and servlet mapping are only available with Servlet 3.0.");
+            return;
+        }
+
+        CreatorManager creatorManager = container.getBean(CreatorManager.class);
+        Collection<String> scriptNames;
+        if (creatorManager instanceof DefaultCreatorManager)
+        {
+            scriptNames = ((DefaultCreatorManager) creatorManager).getVisibleCreatorNames();
+        }
+        else if (creatorManager.isDebug())
+        {
+            scriptNames = creatorManager.getCreatorNames(false);
+        }
+        else
+        {
+            Loggers.STARTUP.warn("Not pre-generating interface scripts: " + creatorManager.getClass().getName() + " only lists creators in debug mode.");
+            return;
+        }
+
+        if (scriptNames.isEmpty())
+        {
+            return;
+        }
+
+        List<Callable<Object>> tasks = new ArrayList<Callable<Object>>();
+        for (final String scriptName : scriptNames)
+        {
+            tasks.add(new Callable<Object>()
+            {
+                public Object call()
+                {
+                    try
+                    {
+                        handler.preGenerate(scriptName, contextPath, servletPath);
+                    }
+                    catch (Exception ex)
+                    {
+                        // It will be generated again when it is requested
+                        Loggers.STARTUP.warn("Failed to pre-generate interface script for " + scriptName, ex);
+                    }
+                    return null;
+                }
+            });
+        }
+
+        long start = System.currentTimeMillis();
+        int threads = Math.min(tasks.size(), Runtime.getRuntime().availableProcessors());
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        try
+        {
+            executor.invokeAll(tasks);
+        }
+        catch (InterruptedException ex)
+        {
+            Thread.currentThread().interrupt();
+        }
+        finally
+        {
+            executor.shutdownNow();
+        }
+
+        Loggers.STARTUP.info("Pre-generated " + tasks.size() + " interface scripts in " + (System.currentTimeMillis() - start) + "ms using " + threads + " threads");
+    }
+
+    /**
+     * Find the servlet path for a servlet with a path mapping (e.g. /dwr/*)
+     * using the Servlet 3.0 ServletRegistration API.
+     * @param servletContext The context to look for the servlet in
+     * @param servletName The name of the servlet
+     * @return The servlet path (e.g. /dwr) or null if it can not be found
+     */
+    private static String getServletPath(ServletContext servletContext, String servletName)
+    {
+        try
+        {
+            // We want this to compile on Servlet 2.4
+            Method getServletRegistration = ServletContext.class.getMethod("getServletRegistration", String.class);
+            Object registration = getServletRegistration.invoke(servletContext, servletName);
+            if (registration == null)
+            {
+                return null;
+            }
+
+            Method getMappings = Class.forName("javax.servlet.ServletRegistration").getMethod("getMappings");
+            Collection<?> mappings = (Collection<?>) getMappings.invoke(registration);
+            for (Object mapping : mappings)
+            {
+                String pattern = String.valueOf(mapping);
+                if (pattern.startsWith("/") && pattern.endsWith("/*"))
+                {
+                    return pattern.substring(0, pattern.length() - 2);
+                }
+            }
+        }
+        catch (Exception ex)
+        {
+            Loggers.STARTUP.debug("Servlet 3.0 ServletRegistration API is not available: " + ex);
+        }
+
+        return null;
     }
 
     /**
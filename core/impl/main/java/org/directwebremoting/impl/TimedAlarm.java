@@ -15,10 +15,6 @@
  */
 package org.directwebremoting.impl;
 
-import java.util.concurrent.ScheduledFuture;
-import java.util.concurrent.ScheduledThreadPoolExecutor;
-import java.util.concurrent.TimeUnit;
-
 import org.directwebremoting.extend.Alarm;
 import org.directwebremoting.extend.Sleeper;
 
@@ -30,8 +26,9 @@ public class TimedAlarm implements Alarm
 {
     /**
      * @param waitTime How long we wait before the Alarm goes off
+     * @param timer How we schedule the wake up
      */
-    public TimedAlarm(final Sleeper sleeper, long waitTime, ScheduledThreadPoolExecutor executor)
+    public TimedAlarm(final Sleeper sleeper, long waitTime, HashedWheelTimer timer)
     {
         if (waitTime == 0)
         {
@@ -47,7 +44,7 @@ public class TimedAlarm implements Alarm
                 }
             };
 
-            future = executor.schedule(runnable, waitTime, TimeUnit.MILLISECONDS);
+            timeout = timer.schedule(runnable, waitTime);
         }
     }
 
@@ -56,14 +53,14 @@ public class TimedAlarm implements Alarm
      */
     public void cancel()
     {
-        if (future != null)
+        if (timeout != null)
         {
-            future.cancel(true);
+            timeout.cancel();
         }
     }
 
     /**
-     * The future result that allows us to cancel the timer
+     * The handle that allows us to cancel the timer
      */
-    private ScheduledFuture<?> future;
+    private HashedWheelTimer.Timeout timeout;
 }
@@ -0,0 +1,229 @@
+/*
+ * Copyright 2005 Joe Walker
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.directwebremoting.server.servlet3;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+
+import javax.servlet.ServletRequest;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+/**
+ * The parts of the Servlet 3.0 async API that we use.
+ * <p>DWR needs to compile against Servlet 2.4 so the API is called through
+ * reflection. The types are passed in so tests can use their own.
+ * @author Joe Walker [joe at getahead dot ltd dot uk]
+ */
+class Servlet3Api
+{
+    /**
+     * @param requestType Has startAsync() and isAsyncSupported()
+     * @param asyncContextType Has setTimeout(), addListener(), start() and complete()
+     * @param asyncListenerType What addListener() expects
+     * @throws NoSuchMethodException If any of the methods are missing
+     */
+    Servlet3Api(Class<?> requestType, Class<?> asyncContextType, Class<?> asyncListenerType) throws NoSuchMethodException
+    {
+        startAsyncMethod = requestType.getMethod("startAsync");
+        isAsyncSupportedMethod = requestType.getMethod("isAsyncSupported");
+        setTimeoutMethod = asyncContextType.getMethod("setTimeout", Long.TYPE);
+        addListenerMethod = asyncContextType.getMethod("addListener", asyncListenerType);
+        startMethod = asyncContextType.getMethod("start", Runnable.class);
+        completeMethod = asyncContextType.getMethod("complete");
+        this.asyncListenerType = asyncListenerType;
+    }
+
+    /**
+     * @return The API from the servlet container, or null if it is older than
+     * Servlet 3.0
+     */
+    static Servlet3Api getContainerApi()
+    {
+        return containerApi;
+    }
+
+    /**
+     * ServletRequest.isAsyncSupported()
+     * @param request The request to check
+     * @return true if the request can be put into asynchronous mode
+     */
+    boolean isAsyncSupported(ServletRequest request)
+    {
+        try
+        {
+            return (Boolean) isAsyncSupportedMethod.invoke(request);
+        }
+        catch (Exception ex)
+        {
+            log.debug("isAsyncSupported() failed", ex);
+            return false;
+        }
+    }
+
+    /**
+     * ServletRequest.startAsync() with no container timeout, and a listener
+     * for container timeouts and errors.
+     * @param request The request to put into asynchronous mode
+     * @param listener Called when the container gives up on the request, or
+     * when the request completes
+     * @return The AsyncContext
+     * @throws Exception If the request can't go async
+     */
+    Object startAsync(ServletRequest request, final Servlet3Listener listener) throws Exception
+    {
+        Object context = startAsyncMethod.invoke(request);
+        setTimeoutMethod.invoke(context, 0L);
+
+        Object proxy = Proxy.newProxyInstance(asyncListenerType.getClassLoader(), new Class<?>[] { asyncListenerType }, new InvocationHandler()
+        {
+            public Object invoke(Object self, Method method, Object[] args)
+            {
+                String name = method.getName();
+                if (method.getDeclaringClass() == Object.class)
+                {
+                    if ("equals".equals(name))
+                    {
+                        return self == args[0];
+                    }
+                    if ("hashCode".equals(name))
+                    {
+                        return System.identityHashCode(self);
+                    }
+                    return "Servlet3Api.listener";
+                }
+
+                if ("onTimeout".equals(name) || "onError".equals(name))
+                {
+                    log.debug("Container called " + name + " for comet request. Waking up.");
+                    listener.containerWakeUp();
+                }
+                else if ("onComplete".equals(name))
+                {
+                    listener.completed();
+                }
+
+                return null;
+            }
+        });
+        addListenerMethod.invoke(context, proxy);
+
+        return context;
+    }
+
+    /**
+     * AsyncContext.start(Runnable)
+     * @param context The AsyncContext from startAsync()
+     * @param task What to run on a container thread
+     * @throws Exception If the container won't run the task
+     */
+    void start(Object context, Runnable task) throws Exception
+    {
+        startMethod.invoke(context, task);
+    }
+
+    /**
+     * AsyncContext.complete()
+     * @param context The AsyncContext from startAsync()
+     * @throws Exception If the container fails to complete the request
+     */
+    void complete(Object context) throws Exception
+    {
+        completeMethod.invoke(context);
+    }
+
+    /**
+     * What an AsyncListener tells us about
+     */
+    interface Servlet3Listener
+    {
+        /**
+         * The container has timed out or had an error with the request
+         */
+        void containerWakeUp();
+
+        /**
+         * The request has been completed
+         */
+        void completed();
+    }
+
+    /**
+     * ServletRequest.startAsync()
+     */
+    private final Method startAsyncMethod;
+
+    /**
+     * ServletRequest.isAsyncSupported()
+     */
+    private final Method isAsyncSupportedMethod;
+
+    /**
+     * AsyncContext.setTimeout(long)
+     */
+    private final Method setTimeoutMethod;
+
+    /**
+     * AsyncContext.addListener(AsyncListener)
+     */
+    private final Method addListenerMethod;
+
+    /**
+     * AsyncContext.start(Runnable)
+     */
+    private final Method startMethod;
+
+    /**
+     * AsyncContext.complete()
+     */
+    private final Method completeMethod;
+
+    /**
+     * javax.servlet.AsyncListener
+     */
+    private final Class<?> asyncListenerType;
+
+    /**
+     * The log stream
+     */
+    private static final Log log = LogFactory.getLog(Servlet3Api.class);
+
+    /**
+     * @see #getContainerApi()
+     */
+    private static final Servlet3Api containerApi;
+
+    /**
+     * We want this to compile on Servlet 2.4
+     */
+    static
+    {
+        Servlet3Api api = null;
+        try
+        {
+            Class<?> asyncContextType = Class.forName("javax.servlet.AsyncContext");
+            Class<?> asyncListenerType = Class.forName("javax.servlet.AsyncListener");
+            api = new Servlet3Api(ServletRequest.class, asyncContextType, asyncListenerType);
+        }
+        catch (Exception ex)
+        {
+            log.debug("Servlet 3.0 async API is not available.");
+        }
+        containerApi = api;
+    }
+}
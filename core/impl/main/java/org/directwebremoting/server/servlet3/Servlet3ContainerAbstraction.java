@@ -18,23 +18,48 @@ package org.directwebremoting.server.servlet3;
 import javax.servlet.ServletConfig;
 import javax.servlet.http.HttpServletRequest;
 
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
 import org.directwebremoting.extend.ContainerAbstraction;
 import org.directwebremoting.extend.ServerLoadMonitor;
 import org.directwebremoting.extend.Sleeper;
-import org.directwebremoting.impl.ThreadDroppingServerLoadMonitor;
+import org.directwebremoting.impl.DefaultServerLoadMonitor;
+import org.directwebremoting.impl.ThreadWaitSleeper;
 
 /**
- * An abstraction of the servlet container that just follows the standards
+ * An abstraction of the servlet container that just follows the standards.
+ * We are selected when the container supports Servlet 3.0 async requests, and
+ * fall back to {@link ThreadWaitSleeper} for requests that can't go async.
+ * <p>Servlet 3.0 gives us no way to ask whether the DWR servlet and its
+ * filters are async-supported until a request arrives, so we keep the
+ * {@link DefaultServerLoadMonitor} budget on waiting threads. If async is
+ * set up you can raise <code>maxWaitingThreads</code>.
  * @author Joe Walker [joe at getahead dot ltd dot uk]
  */
 public class Servlet3ContainerAbstraction implements ContainerAbstraction
 {
+    /**
+     * Use the Servlet 3.0 API from the container
+     */
+    public Servlet3ContainerAbstraction()
+    {
+        this(Servlet3Api.getContainerApi());
+    }
+
+    /**
+     * @param api How we call the Servlet 3.0 async API
+     */
+    Servlet3ContainerAbstraction(Servlet3Api api)
+    {
+        this.api = api;
+    }
+
     /* (non-Javadoc)
      * @see org.directwebremoting.dwrp.ContainerAbstraction#isNativeEnvironment(javax.servlet.ServletConfig)
      */
     public boolean isNativeEnvironment(ServletConfig servletConfig)
     {
-        return false; // servletConfig.getServletContext().getMajorVersion() >= 3;
+        return servletConfig.getServletContext().getMajorVersion() >= 3 && api != null;
     }
 
     /* (non-Javadoc)
@@ -42,7 +67,7 @@ public class Servlet3ContainerAbstraction implements ContainerAbstraction
      */
     public Class<? extends ServerLoadMonitor> getServerLoadMonitorImplementation()
     {
-        return ThreadDroppingServerLoadMonitor.class;
+        return DefaultServerLoadMonitor.class;
     }
 
     /* (non-Javadoc)
@@ -58,6 +83,32 @@ public class Servlet3ContainerAbstraction implements ContainerAbstraction
      */
     public Sleeper createSleeper(HttpServletRequest request)
     {
-        return new Servlet3Sleeper(request);
+        if (api != null && api.isAsyncSupported(request))
+        {
+            return new Servlet3Sleeper(request, api);
+        }
+
+        if (!warnedAsyncUnsupported)
+        {
+            warnedAsyncUnsupported = true;
+            log.warn("Servlet 3.0 async is not supported for DWR requests, so each comet connection will hold a thread. Set <async-supported>true</async-supported> on the DWR servlet and any filters in web.xml to fix this.");
+        }
+
+        return new ThreadWaitSleeper();
     }
+
+    /**
+     * How we call the Servlet 3.0 async API, or null if we don't have it
+     */
+    private final Servlet3Api api;
+
+    /**
+     * We only want to warn about a lack of async support once
+     */
+    private volatile boolean warnedAsyncUnsupported = false;
+
+    /**
+     * The log stream
+     */
+    private static final Log log = LogFactory.getLog(Servlet3ContainerAbstraction.class);
 }
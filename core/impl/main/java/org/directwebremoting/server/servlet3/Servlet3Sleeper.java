@@ -15,8 +15,6 @@
  */
 package org.directwebremoting.server.servlet3;
 
-import java.lang.reflect.Method;
-
 import javax.servlet.http.HttpServletRequest;
 
 import org.apache.commons.logging.Log;
@@ -24,44 +22,64 @@ import org.apache.commons.logging.LogFactory;
 import org.directwebremoting.extend.Sleeper;
 
 /**
- * A Sleeper that works with Jetty Continuations
+ * A Sleeper that works with Servlet 3.0 asynchronous requests.
+ * <p>Going to sleep calls <code>request.startAsync()</code> and returns, so the
+ * container can reuse the thread while we wait. Waking up runs the awakening
+ * action on a container thread (using <code>AsyncContext.start()</code>) and
+ * then completes the <code>AsyncContext</code>.
+ * <p>We disable the container's async timeout because DWR's alarms decide when
+ * to wake up, however we still listen for timeouts and errors from the
+ * container so a request that the container gives up on is tidied up.
+ * <p>DWR needs to compile against Servlet 2.4 so the Servlet 3.0 API is called
+ * through reflection, see {@link Servlet3Api}.
  * @author Joe Walker [joe at getahead dot ltd dot uk]
  */
 public class Servlet3Sleeper implements Sleeper
 {
     /**
-     * @param request The request into which we store this as an attribute
+     * @param request The request that we put into asynchronous mode
      */
     public Servlet3Sleeper(HttpServletRequest request)
+    {
+        this(request, Servlet3Api.getContainerApi());
+    }
+
+    /**
+     * @param request The request that we put into asynchronous mode
+     * @param api How we call the Servlet 3.0 async API
+     */
+    Servlet3Sleeper(HttpServletRequest request, Servlet3Api api)
     {
         this.request = request;
+        this.api = api;
     }
 
     /* (non-Javadoc)
      * @see org.directwebremoting.dwrp.Sleeper#goToSleep(java.lang.Runnable)
      */
-    public void goToSleep(Runnable onAwakening)
+    public void goToSleep(Runnable awakening)
     {
         synchronized (wakeUpCalledLock)
         {
-            if (wakeUpCalled)
-            {
-                onAwakening.run();
-            }
-            else
-            {
-                // request.suspend();
+            this.onAwakening = awakening;
 
+            if (!wakeUpCalled)
+            {
                 try
                 {
-                    suspendMethod.invoke(request);
+                    asyncContext = api.startAsync(request, createListener());
+                    return;
                 }
                 catch (Exception ex)
                 {
-                    throw new RuntimeException(ex);
+                    // So we don't have async, we just complete synchronously
+                    log.warn("Failed to start async request. Is <async-supported> set in web.xml?", ex);
                 }
             }
         }
+
+        // Either we have already been woken or async failed
+        awaken();
     }
 
     /* (non-Javadoc)
@@ -69,6 +87,7 @@ public class Servlet3Sleeper implements Sleeper
      */
     public void wakeUp()
     {
+        final Object context;
         synchronized (wakeUpCalledLock)
         {
             if (wakeUpCalled)
@@ -78,45 +97,161 @@ public class Servlet3Sleeper implements Sleeper
 
             wakeUpCalled = true;
 
-            try
+            // If we've not gone to sleep yet then goToSleep() will notice
+            context = asyncContext;
+            if (context == null)
             {
-                // request.complete();
-
-                completeMethod.invoke(request);
+                return;
             }
-            catch (Exception ex)
+        }
+
+        // We are often called by a thread writing to a script session, which
+        // is in the middle of looping over that session's conduits, so we must
+        // not remove our conduit (which onAwakening does) on this thread.
+        try
+        {
+            api.start(context, new Runnable()
+            {
+                public void run()
+                {
+                    awakenAndComplete(context);
+                }
+            });
+        }
+        catch (Exception ex)
+        {
+            log.warn("Failed to start awakening. Completing comet request.", ex);
+            complete(context);
+        }
+    }
+
+    /**
+     * Called from the container when it times out or has an error with our
+     * request. The container expects us to have completed by the time we
+     * return, so we do everything on this thread.
+     */
+    protected void containerWakeUp()
+    {
+        Object context;
+        synchronized (wakeUpCalledLock)
+        {
+            if (wakeUpCalled)
             {
-                log.warn("Error completing comet request", ex);
+                return;
             }
+
+            wakeUpCalled = true;
+            context = asyncContext;
+        }
+
+        awakenAndComplete(context);
+    }
+
+    /**
+     * Run the awakening action and complete the AsyncContext
+     * @param context The AsyncContext from startAsync()
+     */
+    protected void awakenAndComplete(Object context)
+    {
+        try
+        {
+            awaken();
+        }
+        finally
+        {
+            complete(context);
         }
     }
 
     /**
-     * We want this to compile on Servlet 2.4
+     * Run the awakening action once only
      */
-    static
+    private void awaken()
     {
+        Runnable temp;
+        synchronized (wakeUpCalledLock)
+        {
+            temp = onAwakening;
+            onAwakening = null;
+        }
+
+        if (temp != null)
+        {
+            temp.run();
+        }
+    }
+
+    /**
+     * Complete the asynchronous request so the response is sent.
+     * @param context The AsyncContext from startAsync()
+     */
+    private void complete(Object context)
+    {
+        synchronized (wakeUpCalledLock)
+        {
+            if (completed)
+            {
+                return;
+            }
+            completed = true;
+        }
+
         try
         {
-            suspendMethod = HttpServletRequest.class.getMethod("suspend");
-            completeMethod = HttpServletRequest.class.getMethod("complete");
+            api.complete(context);
         }
         catch (Exception ex)
         {
-            throw new RuntimeException(ex);
+            log.warn("Error completing comet request", ex);
         }
     }
 
     /**
-     * When the server supports servlet 3 ...
+     * Create a listener that wakes us if the container gives up on the
+     * request, and notices if the request was completed elsewhere.
+     * @return A listener to pass to {@link Servlet3Api#startAsync}
+     */
+    private Servlet3Api.Servlet3Listener createListener()
+    {
+        return new Servlet3Api.Servlet3Listener()
+        {
+            public void containerWakeUp()
+            {
+                Servlet3Sleeper.this.containerWakeUp();
+            }
+
+            public void completed()
+            {
+                synchronized (wakeUpCalledLock)
+                {
+                    completed = true;
+                }
+            }
+        };
+    }
+
+    /**
+     * The request object that we call startAsync() on
+     */
+    private final HttpServletRequest request;
+
+    /**
+     * How we call the Servlet 3.0 async API
+     */
+    private final Servlet3Api api;
+
+    /**
+     * The javax.servlet.AsyncContext returned by startAsync(), or null if we
+     * have not yet gone to sleep.
+     * <p>GuardedBy("wakeUpCalledLock")
      */
-    private static final Method suspendMethod;
-    private static final Method completeMethod;
+    private Object asyncContext = null;
 
     /**
-     * The request object that we call suspend/resume on
+     * What we do when we are woken up. Set to null once it has been run
+     * <p>GuardedBy("wakeUpCalledLock")
      */
-    private HttpServletRequest request;
+    private Runnable onAwakening;
 
     /**
      * All operations that involve going to sleep of waking up must hold this
@@ -126,13 +261,15 @@ public class Servlet3Sleeper implements Sleeper
 
     /**
      * Has wakeUp been called?
+     * <p>GuardedBy("wakeUpCalledLock")
      */
     private boolean wakeUpCalled = false;
 
     /**
-     * Has the continuation been restarted already?
+     * Has the AsyncContext been completed?
+     * <p>GuardedBy("wakeUpCalledLock")
      */
-    protected boolean resumed = false;
+    private boolean completed = false;
 
     /**
      * The log stream
@@ -15,10 +15,19 @@
  */
 package org.directwebremoting.servlet;
 
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
-import java.io.PrintWriter;
-import java.util.HashMap;
-import java.util.Map;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.zip.GZIPOutputStream;
 
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
@@ -30,6 +39,9 @@ import org.directwebremoting.extend.Handler;
 /**
  * A handler that deals with ETags and other nonsense to do with keeping a
  * browsers cache in-sync with a web server.
+ * <p>Generated content is cached as UTF-8 bytes, along with a gzipped copy for
+ * browsers that accept it, so a request costs no more than a copy. The ETag is
+ * a hash of the content so it only changes when the content does.
  * @author Joe Walker [joe at getahead dot ltd dot uk]
  */
 public abstract class CachingHandler implements Handler
@@ -41,47 +53,143 @@ public abstract class CachingHandler implements Handler
     {
         long lastModified = getLastModifiedTime();
 
+        CachedResource resource = getCachedResource(request, response, lastModified);
+
+        // The content depends on Accept-Encoding, so caches must know that
+        boolean gzip = resource.gzipped != null && isGzipAccepted(request);
+        response.setHeader(HttpConstants.HEADER_VARY, HttpConstants.HEADER_ACCEPT_ENCODING);
+        response.setDateHeader(HttpConstants.HEADER_LAST_MODIFIED, resource.lastModifiedTime);
+        response.setHeader(HttpConstants.HEADER_ETAG, gzip ? resource.gzippedEtag : resource.etag);
+
         // Is the browser in sync with our latest?
-        if (isUpToDate(request, lastModified))
+        if (isUpToDate(request, resource.lastModifiedTime, resource.etag))
         {
             response.setStatus(HttpServletResponse.SC_NOT_MODIFIED);
             return;
         }
 
-        // Is our cache up to date WRT the real resource?
-        CachedResource resource;
-        synchronized (scriptCache)
+        byte[] contents = gzip ? resource.gzipped : resource.contents;
+
+        response.setContentType(getContentType());
+        if (gzip)
         {
-            String url = request.getPathInfo();
-            resource = scriptCache.get(url);
+            response.setHeader(HttpConstants.HEADER_CONTENT_ENCODING, HttpConstants.ENCODING_GZIP);
+        }
+        response.setContentLength(contents.length);
+
+        OutputStream out = response.getOutputStream();
+        out.write(contents);
+        out.flush();
+    }
 
-            if (resource == null || lastModified > resource.lastModifiedTime)
+    /**
+     * Find the cached content for a request, generating it if our cache is
+     * missing or out of date WRT the real resource.
+     * <p>Each URL has its own entry, so requests for different resources
+     * generate in parallel, while concurrent requests for the same resource
+     * wait for a single generation to finish.
+     * @param request The HTTP request data
+     * @param response Where we write the HTTP response data
+     * @param lastModified The last modification time of the real resource
+     * @return The content to send
+     * @throws IOException If generation fails
+     */
+    CachedResource getCachedResource(final HttpServletRequest request, final HttpServletResponse response, final long lastModified) throws IOException
+    {
+        String pathInfo = request.getPathInfo();
+        final String url = pathInfo == null ? "" : pathInfo;
+
+        while (true)
+        {
+            Future<CachedResource> future = scriptCache.get(url);
+
+            FutureTask<CachedResource> task = null;
+            if (future == null)
             {
-                if (log.isDebugEnabled())
+                task = createGenerationTask(request, response, url, lastModified);
+                future = scriptCache.putIfAbsent(url, task);
+                if (future == null)
                 {
-                    if (resource == null)
-                    {
-                        log.debug("Generating contents for " + url + ". It is not currently cached." );
-                    }
-                    else
-                    {
-                        log.debug("Generating contents for " + url + ". Resource modtime=" + lastModified + ". Cached modtime");
-                    }
+                    future = task;
+                }
+                else
+                {
+                    task = null;
                 }
+            }
+
+            if (task != null)
+            {
+                task.run();
+            }
 
-                resource = new CachedResource();
-                resource.contents = generateCachableContent(request, response);
-                resource.lastModifiedTime = lastModified;
-                scriptCache.put(url, resource);
+            CachedResource resource;
+            try
+            {
+                resource = future.get();
+            }
+            catch (InterruptedException ex)
+            {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Interrupted waiting for " + url + " to be generated");
+            }
+            catch (ExecutionException ex)
+            {
+                // Let the next request try again
+                scriptCache.remove(url, future);
+
+                Throwable cause = ex.getCause();
+                if (cause instanceof IOException)
+                {
+                    throw (IOException) cause;
+                }
+                if (cause instanceof RuntimeException)
+                {
+                    throw (RuntimeException) cause;
+                }
+                if (cause instanceof Error)
+                {
+                    throw (Error) cause;
+                }
+                throw new IllegalStateException("Failed to generate " + url, cause);
+            }
+
+            if (lastModified <= resource.lastModifiedTime)
+            {
+                return resource;
+            }
+
+            // Out of date. Replace it unless someone else has beaten us to it
+            FutureTask<CachedResource> regenerate = createGenerationTask(request, response, url, lastModified);
+            if (scriptCache.replace(url, future, regenerate))
+            {
+                regenerate.run();
             }
         }
+    }
 
-        response.setContentType(mimeType);
-        response.setDateHeader(HttpConstants.HEADER_LAST_MODIFIED, lastModified);
-        response.setHeader(HttpConstants.HEADER_ETAG, "\"" + lastModified + '\"');
+    /**
+     * Create a task that generates the content for a URL
+     * @param request The HTTP request data
+     * @param response Where we write the HTTP response data
+     * @param url The URL whose content we generate
+     * @param lastModified The last modification time of the real resource
+     * @return A task to add to the cache and then run
+     */
+    private FutureTask<CachedResource> createGenerationTask(final HttpServletRequest request, final HttpServletResponse response, final String url, final long lastModified)
+    {
+        return new FutureTask<CachedResource>(new Callable<CachedResource>()
+        {
+            public CachedResource call() throws IOException
+            {
+                if (log.isDebugEnabled())
+                {
+                    log.debug("Generating contents for " + url + ". Resource modtime=" + lastModified);
+                }
 
-        PrintWriter out = response.getWriter();
-        out.println(resource.contents);
+                return new CachedResource(generateCachableContent(request, response), lastModified);
+            }
+        });
     }
 
     /**
@@ -103,17 +211,31 @@ public abstract class CachingHandler implements Handler
     /**
      * Do we need to send the content for this file
      * @param req The HTTP request
+     * @param lastModified When the resource was last changed
+     * @param etag The ETag of the resource without any content encoding
      * @return true iff the ETags and If-Modified-Since headers say we have not changed
      */
-    protected boolean isUpToDate(HttpServletRequest req, long lastModified)
+    protected boolean isUpToDate(HttpServletRequest req, long lastModified, String etag)
     {
-        String etag = "\"" + lastModified + '\"';
-
         if (ignoreLastModified)
         {
             return false;
         }
 
+        String pathInfo = req.getPathInfo();
+
+        // If-None-Match takes precedence over If-Modified-Since (RFC 2616 14.26)
+        String givenEtags = req.getHeader(HttpConstants.HEADER_IF_NONE);
+        if (givenEtags != null)
+        {
+            boolean match = isEtagMatch(givenEtags, etag);
+            if (log.isDebugEnabled())
+            {
+                log.debug("Sending " + (match ? "304" : "content") + " for " + pathInfo + ", If-None-Match=" + givenEtags + ", ETag=" + etag);
+            }
+            return match;
+        }
+
         long modifiedSince = -1;
         try
         {
@@ -134,60 +256,128 @@ public abstract class CachingHandler implements Handler
             // And: http://www-1.ibm.com/support/docview.wss?uid=swg1PK20062
         }
 
-        if (modifiedSince != -1)
+        if (modifiedSince == -1)
         {
-            // Browsers are only accurate to the second
-            modifiedSince -= modifiedSince % 1000;
+            // There are no modified settings, carry on
+            return false;
         }
-        String givenEtag = req.getHeader(HttpConstants.HEADER_IF_NONE);
-        String pathInfo = req.getPathInfo();
 
-        // Deal with missing etags
-        if (givenEtag == null)
+        // Browsers are only accurate to the second
+        modifiedSince -= modifiedSince % 1000;
+        long modified = lastModified - lastModified % 1000;
+        if (modifiedSince >= modified)
         {
-            // There is no ETag, just go with If-Modified-Since
-            if (modifiedSince >= lastModified)
+            if (log.isDebugEnabled())
+            {
+                log.debug("Sending 304 for " + pathInfo + " If-Modified-Since=" + modifiedSince + ", Last-Modified=" + lastModified);
+            }
+            return true;
+        }
+
+        return false;
+    }
+
+    /**
+     * Does an If-None-Match header match our ETag? The gzipped variant of a
+     * resource has the same content so a browser that has either has the
+     * current version.
+     * @param givenEtags The If-None-Match header, possibly a list
+     * @param etag The ETag of the resource without any content encoding
+     * @return true if the browser has the current content
+     */
+    protected static boolean isEtagMatch(String givenEtags, String etag)
+    {
+        for (String given : givenEtags.split(","))
+        {
+            given = given.trim();
+            if ("*".equals(given))
             {
-                if (log.isDebugEnabled())
-                {
-                    log.debug("Sending 304 for " + pathInfo + " If-Modified-Since=" + modifiedSince + ", Last-Modified=" + lastModified);
-                }
                 return true;
             }
 
-            // There are no modified settings, carry on
+            // A weak comparison is enough to decide on a 304
+            if (given.startsWith("W/"))
+            {
+                given = given.substring(2);
+            }
+
+            if (given.endsWith(GZIP_ETAG_SUFFIX + '"'))
+            {
+                given = given.substring(0, given.length() - GZIP_ETAG_SUFFIX.length() - 1) + '"';
+            }
+
+            if (given.equals(etag))
+            {
+                return true;
+            }
+        }
+
+        return false;
+    }
+
+    /**
+     * Does the browser accept gzip content encoding?
+     * @param req The HTTP request
+     * @return true if Accept-Encoding lists gzip without q=0
+     */
+    protected static boolean isGzipAccepted(HttpServletRequest req)
+    {
+        String acceptEncoding = req.getHeader(HttpConstants.HEADER_ACCEPT_ENCODING);
+        if (acceptEncoding == null)
+        {
             return false;
         }
 
-        // Deal with missing If-Modified-Since
-        if (modifiedSince == -1)
+        boolean accepted = false;
+        for (String encoding : acceptEncoding.split(","))
         {
-            if (!etag.equals(givenEtag))
+            String[] parts = encoding.split(";");
+            String name = parts[0].trim().toLowerCase();
+
+            float quality = 1.0F;
+            for (int i = 1; i < parts.length; i++)
             {
-                // There is an ETag, but no If-Modified-Since
-                if (log.isDebugEnabled())
+                String param = parts[i].trim();
+                if (param.startsWith("q="))
                 {
-                    log.debug("Sending 304 for " + pathInfo + ", If-Modified-Since=-1, Old ETag=" + givenEtag + ", New ETag=" + etag);
+                    try
+                    {
+                        quality = Float.parseFloat(param.substring(2));
+                    }
+                    catch (NumberFormatException ex)
+                    {
+                        quality = 0.0F;
+                    }
                 }
-                return true;
             }
 
-            // There are no modified settings, carry on
-            return false;
-        }
+            if (HttpConstants.ENCODING_GZIP.equals(name) || "x-gzip".equals(name))
+            {
+                // An explicit mention of gzip beats any wildcard
+                return quality > 0;
+            }
 
-        // Do both values indicate that we are in-date?
-        if (etag.equals(givenEtag) && modifiedSince >= lastModified)
-        {
-            if (log.isDebugEnabled())
+            if ("*".equals(name))
             {
-                log.debug("Sending 304 for " + pathInfo + ", If-Modified-Since=" + modifiedSince + ", Last Modified=" + lastModified + ", Old ETag=" + givenEtag + ", New ETag=" + etag);
+                accepted = quality > 0;
             }
-            return true;
         }
 
-        log.debug("Sending content for " + pathInfo + ", If-Modified-Since=" + modifiedSince + ", Last Modified=" + lastModified + ", Old ETag=" + givenEtag + ", New ETag=" + etag);
-        return false;
+        return accepted;
+    }
+
+    /**
+     * The content type that we send. We always encode as UTF-8
+     * @return The mime type with a charset
+     */
+    protected String getContentType()
+    {
+        if (mimeType == null || mimeType.contains("charset"))
+        {
+            return mimeType;
+        }
+
+        return mimeType + "; charset=" + ENCODING_UTF8;
     }
 
     /**
@@ -223,17 +413,117 @@ public abstract class CachingHandler implements Handler
     /**
      * We cache the script output for speed
      */
-    private final Map<String, CachedResource> scriptCache = new HashMap<String, CachedResource>();
+    private final ConcurrentMap<String, Future<CachedResource>> scriptCache = new ConcurrentHashMap<String, Future<CachedResource>>();
 
     /**
-     * I wish Java had tuples
+     * A generated resource, encoded ready to send
      */
-    class CachedResource
+    static class CachedResource
     {
-        protected String contents;
-        protected long lastModifiedTime;
+        /**
+         * Encode the generated content and work out its ETags
+         * @param generated The content from generateCachableContent()
+         * @param lastModifiedTime When the resource was last changed
+         * @throws IOException If the content can't be encoded or compressed
+         */
+        CachedResource(String generated, long lastModifiedTime) throws IOException
+        {
+            this.contents = generated.getBytes(ENCODING_UTF8);
+            this.lastModifiedTime = lastModifiedTime;
+
+            String hash = digest(contents);
+            this.etag = '"' + hash + '"';
+
+            // No point in sending gzip if it is not smaller
+            byte[] compressed = gzip(contents);
+            if (compressed.length < contents.length)
+            {
+                this.gzipped = compressed;
+                this.gzippedEtag = '"' + hash + GZIP_ETAG_SUFFIX + '"';
+            }
+            else
+            {
+                this.gzipped = null;
+                this.gzippedEtag = null;
+            }
+        }
+
+        /**
+         * The content, in UTF-8
+         */
+        final byte[] contents;
+
+        /**
+         * The gzipped content, or null if gzip does not make it smaller
+         */
+        final byte[] gzipped;
+
+        /**
+         * A strong ETag, based on a hash of the content
+         */
+        final String etag;
+
+        /**
+         * The ETag of the gzipped content, which is a different entity
+         */
+        final String gzippedEtag;
+
+        /**
+         * When the resource was last changed
+         */
+        final long lastModifiedTime;
     }
 
+    /**
+     * Create a hex hash of some data
+     * @param data The bytes to hash
+     * @return A hex string of the hash
+     */
+    static String digest(byte[] data)
+    {
+        try
+        {
+            byte[] hash = MessageDigest.getInstance("MD5").digest(data);
+            StringBuilder buffer = new StringBuilder(hash.length * 2);
+            for (byte b : hash)
+            {
+                buffer.append(Character.forDigit((b >> 4) & 0xF, 16));
+                buffer.append(Character.forDigit(b & 0xF, 16));
+            }
+            return buffer.toString();
+        }
+        catch (NoSuchAlgorithmException ex)
+        {
+            // Every Java platform is required to have MD5
+            throw new IllegalStateException("MD5 is not available", ex);
+        }
+    }
+
+    /**
+     * Gzip some data
+     * @param data The bytes to compress
+     * @return The compressed bytes
+     * @throws IOException If compression fails
+     */
+    static byte[] gzip(byte[] data) throws IOException
+    {
+        ByteArrayOutputStream buffer = new ByteArrayOutputStream(data.length / 3 + 32);
+        GZIPOutputStream out = new GZIPOutputStream(buffer);
+        out.write(data);
+        out.close();
+        return buffer.toByteArray();
+    }
+
+    /**
+     * We always send our content as UTF-8
+     */
+    private static final String ENCODING_UTF8 = "UTF-8";
+
+    /**
+     * How we distinguish the ETag of gzipped content
+     */
+    private static final String GZIP_ETAG_SUFFIX = "-gz";
+
     /**
      * Do we ignore all the Last-Modified/ETags blathering?
      */
@@ -86,6 +86,9 @@ public class EngineHandler extends FileJavaScriptHandler
         // Does engine.js do GETs for Safari
         replace.put("${allowGetForSafariButMakeForgeryEasier}", String.valueOf(allowGetForSafariButMakeForgeryEasier));
 
+        // Can engine.js poll using an EventSource
+        replace.put("${eventStreamEnabled}", String.valueOf(eventStreamEnabled));
+
         // What is the replacement field we use to tell engine.js what we are
         // using for script tag hack protection
         replace.put("${scriptTagProtection}", scriptTagProtection);
@@ -123,6 +126,7 @@ public class EngineHandler extends FileJavaScriptHandler
             "pathToDwrServlet",
             "sessionCookieName",
             "allowGetForSafariButMakeForgeryEasier",
+            "eventStreamEnabled",
             "scriptTagProtection",
             "plainCallHandlerUrl",
             "plainPollHandlerUrl",
@@ -156,6 +160,14 @@ public class EngineHandler extends FileJavaScriptHandler
         this.allowGetForSafariButMakeForgeryEasier = allowGetForSafariButMakeForgeryEasier;
     }
 
+    /**
+     * @param eventStreamEnabled Do we allow browsers to poll using an EventSource
+     */
+    public void setEventStreamEnabled(boolean eventStreamEnabled)
+    {
+        this.eventStreamEnabled = eventStreamEnabled;
+    }
+
     /**
      * What is the string we use for script tag hack protection
      * @param scriptTagProtection the scriptTagProtection to set
@@ -276,6 +288,11 @@ public class EngineHandler extends FileJavaScriptHandler
      */
     private boolean allowGetForSafariButMakeForgeryEasier = false;
 
+    /**
+     * By default browsers don't poll using an EventSource, because it uses GET
+     */
+    private boolean eventStreamEnabled = false;
+
     /**
      * What is the string we use for script tag hack protection
      */
@@ -30,4 +30,24 @@ public interface HttpConstants
      * The name of the user agent HTTP header
      */
     public static final String HEADER_USER_AGENT = "User-Agent";
+
+    /**
+     * HTTP header listing the content encodings that the browser understands
+     */
+    public static final String HEADER_ACCEPT_ENCODING = "Accept-Encoding";
+
+    /**
+     * HTTP header for the encoding applied to the content we send
+     */
+    public static final String HEADER_CONTENT_ENCODING = "Content-Encoding";
+
+    /**
+     * HTTP header listing the request headers that altered the response
+     */
+    public static final String HEADER_VARY = "Vary";
+
+    /**
+     * The gzip content encoding
+     */
+    public static final String ENCODING_GZIP = "gzip";
 }
@@ -22,6 +22,8 @@ import javax.servlet.http.HttpServletResponse;
 
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
+import org.directwebremoting.util.FakeHttpServletRequest;
+import org.directwebremoting.util.FakeHttpServletResponse;
 import org.directwebremoting.util.LocalUtil;
 
 /**
@@ -54,7 +56,36 @@ public class InterfaceHandler extends GeneratedJavaScriptHandler
         }
 
         String contextServletPath = request.getContextPath() + request.getServletPath();
-        return remoter.generateInterfaceScript(scriptName, generateDtoClasses.matches(".*\\binterface\\b.*"), contextServletPath);
+        return remoter.generateInterfaceScript(scriptName, includeDtoClasses, contextServletPath);
+    }
+
+    /**
+     * Generate, compress and cache the interface script for a creator, so
+     * that the first request for it does not have to wait.
+     * @param scriptName The name of the creator
+     * @param contextPath The context path that requests will come in on
+     * @param servletPath The servlet path that requests will come in on
+     * @throws IOException If generation fails
+     */
+    public void preGenerate(String scriptName, final String contextPath, final String servletPath) throws IOException
+    {
+        FakeHttpServletRequest request = new FakeHttpServletRequest()
+        {
+            @Override
+            public String getContextPath()
+            {
+                return contextPath;
+            }
+
+            @Override
+            public String getServletPath()
+            {
+                return servletPath;
+            }
+        };
+        request.setPathInfo(interfaceHandlerUrl + scriptName + PathConstants.EXTENSION_JS);
+
+        getCachedResource(request, new FakeHttpServletResponse(), getLastModifiedTime());
     }
 
     /**
@@ -73,6 +104,7 @@ public class InterfaceHandler extends GeneratedJavaScriptHandler
     public void setGenerateDtoClasses(String generateDtoClasses)
     {
         this.generateDtoClasses = generateDtoClasses;
+        this.includeDtoClasses = generateDtoClasses != null && generateDtoClasses.matches(".*\\binterface\\b.*");
     }
     
     /* (non-Javadoc)
@@ -94,6 +126,11 @@ public class InterfaceHandler extends GeneratedJavaScriptHandler
      */
     protected String generateDtoClasses;
 
+    /**
+     * Does {@link #generateDtoClasses} include interface scripts?
+     */
+    protected boolean includeDtoClasses = false;
+
     /**
      * The log stream
      */
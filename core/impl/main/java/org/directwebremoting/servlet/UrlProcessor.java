@@ -16,6 +16,7 @@
 package org.directwebremoting.servlet;
 
 import java.io.IOException;
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.HashMap;
 import java.util.Map;
@@ -79,6 +80,8 @@ public class UrlProcessor implements Handler, InitializingBean
             }
         }
 
+        compileMappings();
+
         ServletContext servletContext = container.getBean(ServletContext.class);
 
         // This will fail (i.e. return null with servlet 2.4, but we patch up
@@ -108,18 +111,11 @@ public class UrlProcessor implements Handler, InitializingBean
             }
             else
             {
-                // Loop through all the known URLs
-                for (Entry<String, Handler> entry : urlMapping.entrySet())
+                Handler handler = findHandler(pathInfo);
+                if (handler != null)
                 {
-                    String url = entry.getKey();
-
-                    // If this URL matches, call the handler
-                    if (pathInfo.startsWith(url))
-                    {
-                        Handler handler = entry.getValue();
-                        handler.handle(request, response);
-                        return;
-                    }
+                    handler.handle(request, response);
+                    return;
                 }
 
                 notFoundHandler.handle(request, response);
@@ -132,6 +128,145 @@ public class UrlProcessor implements Handler, InitializingBean
         }
     }
 
+    /**
+     * Compile {@link #urlMapping} into the structures that we use to find a
+     * handler. Calls and polls are by far the most common requests so they
+     * are checked first, everything else goes through a prefix trie.
+     */
+    protected void compileMappings()
+    {
+        PrefixTrie trie = new PrefixTrie();
+        for (Entry<String, Handler> entry : urlMapping.entrySet())
+        {
+            trie.put(entry.getKey(), entry.getValue());
+        }
+
+        urlTrie = trie;
+        plainCallHandler = plainCallHandlerUrl == null ? null : urlMapping.get(plainCallHandlerUrl);
+        plainPollHandler = plainPollHandlerUrl == null ? null : urlMapping.get(plainPollHandlerUrl);
+    }
+
+    /**
+     * Find the handler with the longest URL that is a prefix of the path
+     * @param pathInfo The path of the request within DWR
+     * @return The handler to use or null if no URLs match
+     */
+    protected Handler findHandler(String pathInfo)
+    {
+        if (plainCallHandler != null && pathInfo.startsWith(plainCallHandlerUrl))
+        {
+            return plainCallHandler;
+        }
+
+        if (plainPollHandler != null && pathInfo.startsWith(plainPollHandlerUrl))
+        {
+            return plainPollHandler;
+        }
+
+        return urlTrie.findLongestPrefix(pathInfo);
+    }
+
+    /**
+     * A character trie of URLs, so finding the handler for a path depends on
+     * the length of the path rather than the number of URLs.
+     */
+    static class PrefixTrie
+    {
+        /**
+         * Add a URL to the trie
+         * @param url The URL prefix
+         * @param value The handler for paths that start with the URL
+         */
+        void put(String url, Handler value)
+        {
+            PrefixTrie node = this;
+            for (int i = 0; i < url.length(); i++)
+            {
+                node = node.child(url.charAt(i), true);
+            }
+
+            node.value = value;
+        }
+
+        /**
+         * Find the handler for the longest URL that is a prefix of a path
+         * @param path The path to match
+         * @return The matching handler or null if there is none
+         */
+        Handler findLongestPrefix(String path)
+        {
+            Handler found = value;
+            PrefixTrie node = this;
+            for (int i = 0; i < path.length(); i++)
+            {
+                node = node.child(path.charAt(i), false);
+                if (node == null)
+                {
+                    break;
+                }
+
+                if (node.value != null)
+                {
+                    found = node.value;
+                }
+            }
+
+            return found;
+        }
+
+        /**
+         * Find the child for a character
+         * @param c The next character
+         * @param create Do we create the child if it does not exist?
+         * @return The child node or null if create is false and there is none
+         */
+        private PrefixTrie child(char c, boolean create)
+        {
+            int index = Arrays.binarySearch(keys, c);
+            if (index >= 0)
+            {
+                return children[index];
+            }
+
+            if (!create)
+            {
+                return null;
+            }
+
+            // Keep the keys sorted so we can binary search them
+            int insert = -(index + 1);
+            char[] newKeys = new char[keys.length + 1];
+            PrefixTrie[] newChildren = new PrefixTrie[children.length + 1];
+            System.arraycopy(keys, 0, newKeys, 0, insert);
+            System.arraycopy(children, 0, newChildren, 0, insert);
+            System.arraycopy(keys, insert, newKeys, insert + 1, keys.length - insert);
+            System.arraycopy(children, insert, newChildren, insert + 1, children.length - insert);
+
+            PrefixTrie created = new PrefixTrie();
+            newKeys[insert] = c;
+            newChildren[insert] = created;
+            keys = newKeys;
+            children = newChildren;
+
+            return created;
+        }
+
+        /**
+         * The characters that lead to our children, sorted
+         */
+        private char[] keys = new char[0];
+
+        /**
+         * The children, in the same order as {@link #keys}
+         */
+        private PrefixTrie[] children = new PrefixTrie[0];
+
+        /**
+         * The handler for the URL that ends at this node, if any
+         */
+        private Handler value;
+    }
+
     /**
      * The contextPath cached from the last HTTP servlet request
      * @return the contextPath
@@ -155,11 +290,55 @@ public class UrlProcessor implements Handler, InitializingBean
      */
     protected String indexHandlerUrl;
 
+    /**
+     * The URL for the plain call handler, which we check before any other
+     * @param plainCallHandlerUrl the plainCallHandlerUrl to set
+     */
+    public void setPlainCallHandlerUrl(String plainCallHandlerUrl)
+    {
+        this.plainCallHandlerUrl = plainCallHandlerUrl;
+    }
+
+    /**
+     * The URL for the plain call handler
+     */
+    protected String plainCallHandlerUrl;
+
+    /**
+     * The URL for the plain poll handler, which we check before any other
+     * except calls
+     * @param plainPollHandlerUrl the plainPollHandlerUrl to set
+     */
+    public void setPlainPollHandlerUrl(String plainPollHandlerUrl)
+    {
+        this.plainPollHandlerUrl = plainPollHandlerUrl;
+    }
+
+    /**
+     * The URL for the plain poll handler
+     */
+    protected String plainPollHandlerUrl;
+
     /**
      * The mapping of URLs to {@link Handler}s
      */
     protected Map<String, Handler> urlMapping = new HashMap<String, Handler>();
 
+    /**
+     * {@link #urlMapping} compiled for fast lookup
+     */
+    private PrefixTrie urlTrie = new PrefixTrie();
+
+    /**
+     * The handler for {@link #plainCallHandlerUrl}
+     */
+    private Handler plainCallHandler;
+
+    /**
+     * The handler for {@link #plainPollHandlerUrl}
+     */
+    private Handler plainPollHandler;
+
     /**
      * The default if we have no other action (HTTP-404)
      */
@@ -15,6 +15,8 @@
  */
 package org.directwebremoting.convert;
 
+import java.util.Map;
+
 import org.directwebremoting.convert.test.MyBeanImpl;
 import org.directwebremoting.extend.ConverterManager;
 import org.directwebremoting.extend.InboundVariable;
@@ -186,6 +188,19 @@ public class BeanConverterTest
         EasyMock.verify(manager);
     }
 
+    @Test
+    public void propertyMapCached() throws Exception
+    {
+        MyBeanImpl bean = new MyBeanImpl();
+        Map<String, Property> properties = converter.getPropertyMapFromObject(bean, true, false);
+        assertTrue(properties.containsKey("property"));
+        assertSame(properties, converter.getPropertyMapFromObject(new MyBeanImpl(), true, false));
+
+        // Changing the rules must not leave stale properties behind
+        converter.setExclude("property");
+        assertFalse(converter.getPropertyMapFromObject(bean, true, false).containsKey("property"));
+    }
+
     @Test(expected = Exception.class)
     public void convertOutboundWithInclusionsAndExclusions() throws Exception
     {
@@ -0,0 +1,186 @@
+/*
+ * Copyright 2005 Joe Walker
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.directwebremoting.extend;
+
+import java.util.HashMap;
+
+import org.directwebremoting.create.NewCreator;
+import org.directwebremoting.impl.DefaultConverterManager;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.easymock.EasyMock.*;
+import static org.junit.Assert.*;
+
+/**
+ * @author Joe Walker [joe at getahead dot ltd dot uk]
+ */
+public class CallTest
+{
+    private CreatorManager creatorManager;
+
+    private CountingConverterManager converterManager;
+
+    @Before
+    public void setUp() throws Exception
+    {
+        NewCreator creator = new NewCreator();
+        creator.setClass(Target.class.getName());
+
+        creatorManager = createMock(CreatorManager.class);
+        expect(creatorManager.getCreator("Target", true)).andReturn(creator).anyTimes();
+        replay(creatorManager);
+
+        converterManager = new CountingConverterManager();
+    }
+
+    @Test
+    public void hit() throws Exception
+    {
+        Call first = findMethod("echo", 1);
+        assertEquals(Target.class.getMethod("echo", String.class), first.getMethod());
+        assertTrue(converterManager.checks > 0);
+
+        converterManager.checks = 0;
+        Call second = findMethod("echo", 1);
+        assertEquals(first.getMethod(), second.getMethod());
+        assertEquals(0, converterManager.checks);
+    }
+
+    @Test
+    public void miss() throws Exception
+    {
+        findMethod("echo", 1);
+
+        // A different parameter count is a different lookup
+        converterManager.checks = 0;
+        Call call = findMethod("echo", 2);
+        assertEquals(Target.class.getMethod("echo", String.class, String.class), call.getMethod());
+        assertTrue(converterManager.checks > 0);
+
+        // Changing the converters forgets what we matched
+        converterManager.setConverters(new HashMap<String, Converter>());
+        converterManager.checks = 0;
+        findMethod("echo", 1);
+        assertTrue(converterManager.checks > 0);
+    }
+
+    @Test
+    public void cachesArePerConverterManager() throws Exception
+    {
+        CountingConverterManager first = converterManager;
+        CountingConverterManager second = new CountingConverterManager();
+
+        findMethod("echo", 1);
+
+        // Switching converters must not find the other converters' cache
+        converterManager = second;
+        findMethod("echo", 1);
+        assertTrue(second.checks > 0);
+
+        converterManager = first;
+        first.checks = 0;
+        findMethod("echo", 1);
+        assertEquals(0, first.checks);
+
+        converterManager = second;
+        second.checks = 0;
+        findMethod("echo", 1);
+        assertEquals(0, second.checks);
+
+        // Clearing one cache leaves the other alone
+        second.setConverters(new HashMap<String, Converter>());
+        second.checks = 0;
+        findMethod("echo", 1);
+        assertTrue(second.checks > 0);
+
+        converterManager = first;
+        first.checks = 0;
+        findMethod("echo", 1);
+        assertEquals(0, first.checks);
+    }
+
+    @Test
+    public void ambiguousOverloadsAreNotCached() throws Exception
+    {
+        for (int i = 0; i < 2; i++)
+        {
+            converterManager.checks = 0;
+            try
+            {
+                findMethod("ambiguous", 1);
+                fail("Expected the call to be ambiguous");
+            }
+            catch (IllegalArgumentException ex)
+            {
+                assertTrue(converterManager.checks > 0);
+            }
+        }
+    }
+
+    private Call findMethod(String methodName, int paramCount)
+    {
+        InboundContext inctx = new InboundContext();
+        for (int i = 0; i < paramCount; i++)
+        {
+            inctx.createInboundVariable(0, "c0-param" + i, "string", "value" + i);
+        }
+        inctx.dereference();
+
+        Call call = new Call("0", "Target", methodName);
+        call.findMethod(creatorManager, converterManager, inctx, 0);
+        return call;
+    }
+
+    /**
+     * Counts the work done to match a method
+     */
+    private static class CountingConverterManager extends DefaultConverterManager
+    {
+        /* (non-Javadoc)
+         * @see org.directwebremoting.impl.DefaultConverterManager#isConvertable(java.lang.Class)
+         */
+        @Override
+        public boolean isConvertable(Class<?> paramType)
+        {
+            checks++;
+            return true;
+        }
+
+        private int checks = 0;
+    }
+
+    public static class Target
+    {
+        public String echo(String value)
+        {
+            return value;
+        }
+
+        public String echo(String value, String other)
+        {
+            return value + other;
+        }
+
+        public void ambiguous(String value)
+        {
+        }
+
+        public void ambiguous(Integer value)
+        {
+        }
+    }
+}
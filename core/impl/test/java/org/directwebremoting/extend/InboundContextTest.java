@@ -0,0 +1,94 @@
+/*
+ * Copyright 2005 Joe Walker
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.directwebremoting.extend;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * @author Joe Walker [joe at getahead dot ltd dot uk]
+ */
+public class InboundContextTest
+{
+    @Test
+    public void parameters() throws Exception
+    {
+        InboundContext context = new InboundContext();
+        context.createInboundVariable(12, "c12-param1", "number", "42");
+        context.createInboundVariable(12, "c12-param0", "string", "hello");
+        context.createInboundVariable(12, "c12-e1", "string", "nested");
+        context.createInboundVariable(12, "c1-param0", "string", "other call");
+        context.dereference();
+
+        assertEquals(2, context.getParameterCount(12));
+        assertEquals(0, context.getParameterCount(1));
+        assertEquals(0, context.getParameterCount(0));
+        assertEquals(2, context.getParameterCount());
+
+        assertEquals("hello", context.getParameter(12, 0).getValue());
+        assertEquals("42", context.getParameter(12, 1).getValue());
+        assertTrue(context.getParameter(12, 2).isNull());
+        assertTrue(context.getParameter(3, 0).isNull());
+
+        assertEquals("nested", context.getInboundVariable("c12-e1").getValue());
+    }
+
+    @Test
+    public void manyVarargs() throws Exception
+    {
+        InboundContext context = new InboundContext();
+        for (int i = 0; i < 300; i++)
+        {
+            context.createInboundVariable(0, "c0-param" + i, "number", String.valueOf(i));
+        }
+        context.dereference();
+
+        assertEquals(300, context.getParameterCount(0));
+        assertEquals("299", context.getParameter(0, 299).getValue());
+
+        // A method with one normal parameter followed by varargs
+        InboundVariable wrapper = context.createArrayWrapper(0, 2);
+        assertEquals(299, wrapper.getMembers().length);
+    }
+
+    @Test(expected = SecurityException.class)
+    public void unreasonableParameterIndex() throws Exception
+    {
+        InboundContext context = new InboundContext();
+        context.createInboundVariable(0, "c0-param99999999999", "number", "42");
+    }
+
+    @Test
+    public void converted() throws Exception
+    {
+        InboundContext context = new InboundContext();
+        context.createInboundVariable(0, "c0-param0", "number", "42");
+        context.dereference();
+
+        InboundVariable iv = context.getParameter(0, 0);
+        assertNull(context.getConverted(iv, Integer.class));
+
+        context.addConverted(iv, Integer.class, 42);
+        context.addConverted(iv, String.class, "42");
+        assertEquals(42, context.getConverted(iv, Integer.class));
+        assertEquals("42", context.getConverted(iv, String.class));
+        assertNull(context.getConverted(iv, Long.class));
+
+        context.clearConverted();
+        assertNull(context.getConverted(iv, Integer.class));
+    }
+}
@@ -0,0 +1,160 @@
+/*
+ * Copyright 2005 Joe Walker
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.directwebremoting.extend;
+
+import java.io.StringWriter;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.directwebremoting.ScriptBuffer;
+import org.easymock.EasyMock;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * @author Joe Walker [joe at getahead dot ltd dot uk]
+ */
+public class ScriptBufferUtilTest
+{
+    @Test
+    public void writeOutputMatchesCreateOutput() throws Exception
+    {
+        OutboundContext context = new OutboundContext(false);
+
+        // An object containing an array that refers back to the object
+        ObjectOutboundVariable object = new ObjectOutboundVariable(context);
+        ArrayOutboundVariable array = new ArrayOutboundVariable(context);
+
+        List<OutboundVariable> elements = new ArrayList<OutboundVariable>();
+        elements.add(new NonNestedOutboundVariable("1"));
+        elements.add(object.getReferenceVariable());
+        array.setChildren(elements);
+
+        Map<String, OutboundVariable> properties = new LinkedHashMap<String, OutboundVariable>();
+        properties.put("name", new NonNestedOutboundVariable("\"fred\""));
+        properties.put("not-simple", array);
+        object.setChildren(properties);
+
+        Object data = new Object();
+        ConverterManager converterManager = EasyMock.createMock(ConverterManager.class);
+        EasyMock.expect(converterManager.convertOutbound(EasyMock.same(data), EasyMock.isA(OutboundContext.class))).andReturn(object).times(2);
+        EasyMock.replay(converterManager);
+
+        ScriptBuffer script = new ScriptBuffer();
+        script.appendData(data);
+
+        String expected = ScriptBufferUtil.createOutput(script, converterManager, false);
+        StringWriter actual = new StringWriter();
+        ScriptBufferUtil.writeOutput(script, converterManager, false, actual);
+
+        assertEquals(expected, actual.toString());
+        assertTrue(expected.contains("var s0={};"));
+        assertTrue(expected.contains("s0['not-simple']=[1,s0];"));
+
+        EasyMock.verify(converterManager);
+    }
+
+    @Test
+    public void plainScriptsAreConvertedEachTime() throws Exception
+    {
+        Object data = new Object();
+        ConverterManager converterManager = EasyMock.createMock(ConverterManager.class);
+        EasyMock.expect(converterManager.convertOutbound(EasyMock.same(data), EasyMock.isA(OutboundContext.class))).andReturn(new NonNestedOutboundVariable("1")).times(2);
+        EasyMock.expect(converterManager.convertOutbound(EasyMock.eq(2), EasyMock.isA(OutboundContext.class))).andReturn(new NonNestedOutboundVariable("2"));
+        EasyMock.replay(converterManager);
+
+        ScriptBuffer script = new ScriptBuffer();
+        script.appendData(data);
+        assertEquals("1", ScriptBufferUtil.createOutput(script, converterManager, false));
+
+        // Nothing is remembered, so changes are always seen
+        script.appendData(2);
+        assertEquals("12", ScriptBufferUtil.createOutput(script, converterManager, false));
+
+        EasyMock.verify(converterManager);
+    }
+
+    @Test
+    public void convertedScriptsAreConvertedOnce() throws Exception
+    {
+        Object data = new Object();
+        ConverterManager converterManager = EasyMock.createMock(ConverterManager.class);
+        EasyMock.expect(converterManager.convertOutbound(EasyMock.same(data), EasyMock.isA(OutboundContext.class))).andReturn(new NonNestedOutboundVariable("1"));
+        EasyMock.replay(converterManager);
+
+        ScriptBuffer script = new ScriptBuffer();
+        script.appendData(data);
+        script.setReplaceKey("key");
+        ScriptBuffer converted = new ConvertedScriptBuffer(script, converterManager);
+
+        assertEquals("key", converted.getReplaceKey());
+        assertEquals("1", ScriptBufferUtil.createOutput(converted, converterManager, false));
+        assertEquals("1", ScriptBufferUtil.createOutput(converted, converterManager, false));
+
+        StringWriter out = new StringWriter();
+        ScriptBufferUtil.writeOutput(converted, converterManager, false, out);
+        assertEquals("1", out.toString());
+
+        EasyMock.verify(converterManager);
+    }
+
+    @Test
+    public void convertedScriptsAreCopies() throws Exception
+    {
+        Object data = new Object();
+        ConverterManager converterManager = EasyMock.createMock(ConverterManager.class);
+        EasyMock.expect(converterManager.convertOutbound(EasyMock.same(data), EasyMock.isA(OutboundContext.class))).andReturn(new NonNestedOutboundVariable("1")).times(2);
+        EasyMock.expect(converterManager.convertOutbound(EasyMock.eq(2), EasyMock.isA(OutboundContext.class))).andReturn(new NonNestedOutboundVariable("2"));
+        EasyMock.replay(converterManager);
+
+        ScriptBuffer script = new ScriptBuffer();
+        script.appendData(data);
+        ScriptBuffer converted = new ConvertedScriptBuffer(script, converterManager);
+
+        // Changing the original after it has been sent doesn't change the copy
+        script.appendData(2);
+        assertEquals("1", ScriptBufferUtil.createOutput(converted, converterManager, false));
+        assertEquals("12", ScriptBufferUtil.createOutput(script, converterManager, false));
+
+        EasyMock.verify(converterManager);
+    }
+
+    @Test
+    public void convertedScriptsInOtherFormats() throws Exception
+    {
+        Object data = new Object();
+        ConverterManager converterManager = EasyMock.createMock(ConverterManager.class);
+        EasyMock.expect(converterManager.convertOutbound(EasyMock.same(data), EasyMock.isA(OutboundContext.class))).andReturn(new NonNestedOutboundVariable("1")).times(2);
+        EasyMock.replay(converterManager);
+
+        ConverterManager other = EasyMock.createMock(ConverterManager.class);
+        EasyMock.expect(other.convertOutbound(EasyMock.same(data), EasyMock.isA(OutboundContext.class))).andReturn(new NonNestedOutboundVariable("2"));
+        EasyMock.replay(other);
+
+        ScriptBuffer script = new ScriptBuffer();
+        script.appendData(data);
+        ScriptBuffer converted = new ConvertedScriptBuffer(script, converterManager);
+
+        assertEquals("{ \"reply\":1}", ScriptBufferUtil.createOutput(converted, converterManager, true));
+        assertEquals("2", ScriptBufferUtil.createOutput(converted, other, false));
+
+        EasyMock.verify(converterManager);
+        EasyMock.verify(other);
+    }
+}
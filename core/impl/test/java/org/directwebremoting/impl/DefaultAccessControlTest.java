@@ -16,6 +16,12 @@
 package org.directwebremoting.impl;
 
 import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
 
 import org.directwebremoting.create.NewCreator;
 import org.directwebremoting.extend.Creator;
@@ -42,6 +48,107 @@ public class DefaultAccessControlTest
         request = new FakeHttpServletRequest();
     }
 
+    @Test
+    public void overridesAreUsedForExecution() throws Exception
+    {
+        final List<String> checked = new ArrayList<String>();
+        DefaultAccessControl strict = new DefaultAccessControl()
+        {
+            @Override
+            public void assertIsDisplayable(Creator creator, String className, Method method) throws SecurityException
+            {
+                checked.add("displayable");
+                throw new SecurityException("Tightened");
+            }
+
+            @Override
+            protected void assertIsRestrictedByRole(Set<String> roles)
+            {
+                checked.add("role");
+            }
+        };
+
+        NewCreator creator = new NewCreator();
+        creator.setClass("java.lang.Object");
+        try
+        {
+            strict.assertExecutionIsPossible(creator, "", getMethod());
+            fail("Expected the tightened check to be used");
+        }
+        catch (SecurityException ex)
+        {
+            assertEquals("Tightened", ex.getMessage());
+        }
+        assertEquals(Arrays.asList("role", "displayable"), checked);
+    }
+
+    @Test
+    public void rolesAreFoundOnce() throws Exception
+    {
+        final List<String> lookups = new ArrayList<String>();
+        final List<Set<String>> checked = new ArrayList<Set<String>>();
+        DefaultAccessControl counting = new DefaultAccessControl()
+        {
+            @Override
+            protected Set<String> getRoleRestrictions(String scriptName, String methodName)
+            {
+                lookups.add(scriptName + '.' + methodName);
+                return super.getRoleRestrictions(scriptName, methodName);
+            }
+
+            @Override
+            protected void assertIsRestrictedByRole(Set<String> roles)
+            {
+                checked.add(roles);
+            }
+        };
+
+        NewCreator creator = new NewCreator();
+        creator.setClass("java.lang.Object");
+        counting.addRoleRestriction("className", "someMethod", "someRole");
+
+        counting.assertExecutionIsPossible(creator, "className", getMethod());
+        counting.assertExecutionIsPossible(creator, "className", getMethod());
+        assertEquals(Arrays.asList("className.someMethod"), lookups);
+        assertEquals(Collections.singleton("someRole"), checked.get(1));
+
+        // New restrictions must be seen
+        counting.addRoleRestriction("className", "someMethod", "someOtherRole");
+        counting.assertExecutionIsPossible(creator, "className", getMethod());
+        assertEquals(2, lookups.size());
+        assertEquals(new HashSet<String>(Arrays.asList("someRole", "someOtherRole")), checked.get(2));
+    }
+
+    @Test
+    public void cachedDecisionsThrowNewExceptions() throws Exception
+    {
+        accessControl.addExcludeRule("className", "someMethod");
+        NewCreator creator = new NewCreator();
+        creator.setClass("java.lang.Object");
+
+        SecurityException first = null;
+        try
+        {
+            accessControl.assertIsDisplayable(creator, "className", getMethod());
+            fail("Expected someMethod to be excluded");
+        }
+        catch (SecurityException ex)
+        {
+            first = ex;
+        }
+
+        try
+        {
+            accessControl.assertIsDisplayable(creator, "className", getMethod());
+            fail("Expected someMethod to be excluded");
+        }
+        catch (SecurityException ex)
+        {
+            assertNotSame(first, ex);
+            assertEquals(first.getMessage(), ex.getMessage());
+        }
+    }
+
     @Test(expected = SecurityException.class)
     public void testReasonToNotDisplayDwrObject() throws Exception
     {
@@ -90,6 +197,28 @@ public class DefaultAccessControlTest
         accessControl.assertIsDisplayable(creator, "className", getHashCodeMethod());
     }
 
+    @Test
+    public void testReasonToNotDisplayAfterRuleChange() throws Exception
+    {
+        NewCreator creator = new NewCreator();
+        creator.setClass("java.lang.Object");
+
+        // The first answer is remembered, but must be forgotten when the rules change
+        accessControl.assertIsDisplayable(creator, "className", getMethod());
+        accessControl.assertIsDisplayable(creator, "className", getMethod());
+
+        accessControl.addExcludeRule("className", "someMethod");
+        try
+        {
+            accessControl.assertIsDisplayable(creator, "className", getMethod());
+            fail();
+        }
+        catch (SecurityException ex)
+        {
+            assertNotNull(ex.getMessage());
+        }
+    }
+
     @Ignore
     @Test
     public void testReasonToNotExecute() throws Exception
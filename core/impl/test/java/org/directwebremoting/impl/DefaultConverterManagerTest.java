@@ -54,6 +54,21 @@ public class DefaultConverterManagerTest
         manager.convertInbound(String.class, iv, null);
     }
 
+    @Test
+    public void isConvertableCached() throws Exception
+    {
+        Assert.assertFalse(manager.isConvertable(StringBuilder.class));
+
+        // A converter for an interface serves classes that implement it
+        manager.addConverter("java.lang.CharSequence", new StringConverter());
+        Assert.assertTrue(manager.isConvertable(StringBuilder.class));
+        Assert.assertTrue(manager.isConvertable(StringBuilder.class));
+        Assert.assertFalse(manager.isConvertable(Integer.class));
+
+        // Resolving through the hierarchy should not add converters
+        Assert.assertEquals(1, manager.getConverterMatchStrings().size());
+    }
+
     @Test
     public void convertOutbound() throws Exception
     {
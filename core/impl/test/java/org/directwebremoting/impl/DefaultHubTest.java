@@ -0,0 +1,199 @@
+/*
+ * Copyright 2005 Joe Walker
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.directwebremoting.impl;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import org.directwebremoting.Hub;
+import org.directwebremoting.event.MessageEvent;
+import org.directwebremoting.event.MessageListener;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * @author Joe Walker [joe at getahead dot ltd dot uk]
+ */
+public class DefaultHubTest
+{
+    private final DefaultHub hub = new DefaultHub();
+
+    @Test
+    public void synchronousDelivery()
+    {
+        final List<Object> received = new ArrayList<Object>();
+        hub.subscribe("topic", new MessageListener()
+        {
+            public void onMessage(MessageEvent message)
+            {
+                received.add(message.getRawData());
+            }
+        });
+
+        hub.publish("topic", "a");
+        hub.publish("other", "b");
+        assertEquals(Collections.singletonList("a"), received);
+    }
+
+    @Test
+    public void asynchronousDeliveryIsOrdered() throws Exception
+    {
+        hub.setAsynchronous(true);
+        hub.setPublishThreads(4);
+
+        final int count = 500;
+        final List<Object> received = Collections.synchronizedList(new ArrayList<Object>());
+        final CountDownLatch latch = new CountDownLatch(count);
+        hub.subscribe("topic", new MessageListener()
+        {
+            public void onMessage(MessageEvent message)
+            {
+                received.add(message.getRawData());
+                latch.countDown();
+            }
+        });
+
+        for (int i = 0; i < count; i++)
+        {
+            hub.publish("topic", i);
+        }
+
+        assertTrue(latch.await(5, TimeUnit.SECONDS));
+        for (int i = 0; i < count; i++)
+        {
+            assertEquals(i, received.get(i));
+        }
+    }
+
+    @Test
+    public void fullQueueRejects() throws Exception
+    {
+        hub.setAsynchronous(true);
+        hub.setMaxQueuedMessages(1);
+        hub.setMaxPublishWait(0);
+
+        final CountDownLatch started = new CountDownLatch(1);
+        final CountDownLatch release = new CountDownLatch(1);
+        hub.subscribe("topic", new MessageListener()
+        {
+            public void onMessage(MessageEvent message)
+            {
+                started.countDown();
+                try
+                {
+                    release.await();
+                }
+                catch (InterruptedException ex)
+                {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        });
+
+        // The first is being delivered, the second waits in the queue
+        hub.publish("topic", 1);
+        assertTrue(started.await(5, TimeUnit.SECONDS));
+        hub.publish("topic", 2);
+
+        try
+        {
+            hub.publish("topic", 3);
+            fail("Expected the publish to be rejected");
+        }
+        catch (RejectedExecutionException ex)
+        {
+            // expected
+        }
+        finally
+        {
+            release.countDown();
+        }
+    }
+
+    @Test
+    public void shutdownStopsDeliveryThreads() throws Exception
+    {
+        hub.setAsynchronous(true);
+
+        final CountDownLatch delivered = new CountDownLatch(1);
+        hub.subscribe("topic", new MessageListener()
+        {
+            public void onMessage(MessageEvent message)
+            {
+                delivered.countDown();
+            }
+        });
+
+        hub.publish("topic", "a");
+        assertTrue(delivered.await(5, TimeUnit.SECONDS));
+
+        hub.servletDestroyed();
+        assertTrue(hub.getExecutor().awaitTermination(5, TimeUnit.SECONDS));
+
+        try
+        {
+            hub.publish("topic", "b");
+            fail("Expected the publish to be rejected");
+        }
+        catch (RejectedExecutionException ex)
+        {
+            // expected
+        }
+    }
+
+    @Test
+    public void shutdownBeforePublish()
+    {
+        hub.setAsynchronous(true);
+        hub.subscribe("topic", new MessageListener()
+        {
+            public void onMessage(MessageEvent message)
+            {
+            }
+        });
+
+        // No pool is created after we have been shut down
+        hub.contextDestroyed();
+        try
+        {
+            hub.publish("topic", "a");
+            fail("Expected the publish to be rejected");
+        }
+        catch (RejectedExecutionException ex)
+        {
+            // expected
+        }
+    }
+
+    @Test
+    public void builderRegistersForShutdown()
+    {
+        DefaultContainer container = new DefaultContainer();
+        DefaultHub attached = (DefaultHub) new DefaultHubBuilder().attach(container);
+        assertSame(attached, container.getBean(Hub.class));
+
+        attached.setAsynchronous(true);
+        ExecutorService executor = attached.getExecutor();
+        container.servletDestroyed();
+        assertTrue(executor.isShutdown());
+    }
+}
@@ -0,0 +1,107 @@
+/*
+ * Copyright 2005 Joe Walker
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.directwebremoting.impl;
+
+import java.lang.reflect.Method;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.directwebremoting.AjaxFilter;
+import org.directwebremoting.AjaxFilterChain;
+import org.directwebremoting.create.NewCreator;
+import org.directwebremoting.extend.Call;
+import org.directwebremoting.extend.InboundContext;
+import org.directwebremoting.extend.Reply;
+
+/**
+ * Compares the cost of {@link DefaultRemoter#execute(Call)} with a bare
+ * reflective call to the same method. Run it against two builds to compare
+ * them; JUnit is no place for timings.
+ * @author Joe Walker [joe at getahead dot ltd dot uk]
+ */
+public class DefaultRemoterHarness
+{
+    public static void main(String[] args) throws Exception
+    {
+        DefaultRemoterHarness test = new DefaultRemoterHarness();
+        test.exec();
+    }
+
+    public void exec() throws Exception
+    {
+        NewCreator creator = new NewCreator();
+        creator.setClass(System.class.getName());
+        DefaultCreatorManager creatorManager = new DefaultCreatorManager();
+        creatorManager.addCreator("Test", creator);
+
+        DefaultAjaxFilterManager ajaxFilterManager = new DefaultAjaxFilterManager();
+        for (int i = 0; i < 3; i++)
+        {
+            ajaxFilterManager.addAjaxFilter(new AjaxFilter()
+            {
+                public Object doFilter(Object obj, Method method, Object[] params, AjaxFilterChain chain) throws Exception
+                {
+                    return chain.doFilter(obj, method, params);
+                }
+            });
+        }
+
+        DefaultRemoter remoter = new DefaultRemoter();
+        remoter.setCreatorManager(creatorManager);
+        remoter.setAccessControl(new DefaultAccessControl());
+        remoter.setAjaxFilterManager(ajaxFilterManager);
+
+        // Classes in DWR's own packages can't be remoted, and a static method
+        // means we don't need a WebContext to find an object to call
+        DefaultConverterManager converterManager = new DefaultConverterManager();
+        InboundContext inctx = new InboundContext();
+        Method method = System.class.getMethod("nanoTime");
+
+        for (int round = 0; round < 5; round++)
+        {
+            long start = System.nanoTime();
+            for (int i = 0; i < ITERATIONS; i++)
+            {
+                method.invoke(null);
+            }
+            long bare = System.nanoTime() - start;
+
+            start = System.nanoTime();
+            for (int i = 0; i < ITERATIONS; i++)
+            {
+                Call call = new Call("0", "Test", "nanoTime");
+                call.findMethod(creatorManager, converterManager, inctx, 0);
+                call.setParameters(new Object[0]);
+
+                Reply reply = remoter.execute(call);
+                if (reply.getThrowable() != null)
+                {
+                    throw new IllegalStateException(reply.getThrowable());
+                }
+            }
+            long remoted = System.nanoTime() - start;
+
+            log.info("Round " + round + ": Method.invoke " + (bare / ITERATIONS) + "ns/call, DefaultRemoter.execute " + (remoted / ITERATIONS) + "ns/call");
+        }
+    }
+
+    private static final int ITERATIONS = 200000;
+
+    /**
+     * The log stream
+     */
+    private static final Log log = LogFactory.getLog(DefaultRemoterHarness.class);
+}
@@ -17,16 +17,28 @@ package org.directwebremoting.impl;
 
 import java.lang.reflect.Method;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
 
 import org.directwebremoting.AjaxFilter;
 import org.directwebremoting.AjaxFilterChain;
 import org.directwebremoting.create.NewCreator;
 import org.directwebremoting.extend.AccessControl;
 import org.directwebremoting.extend.AjaxFilterManager;
+import org.directwebremoting.extend.Call;
+import org.directwebremoting.extend.Calls;
 import org.directwebremoting.extend.ConverterManager;
 import org.directwebremoting.extend.CreatorManager;
+import org.directwebremoting.extend.NamedConverter;
 import org.directwebremoting.extend.NonNestedOutboundVariable;
 import org.directwebremoting.extend.OutboundContext;
+import org.directwebremoting.extend.Replies;
+import org.directwebremoting.extend.Reply;
 import org.directwebremoting.impl.test.TestCreatedObject;
 import org.directwebremoting.util.FakeHttpServletRequest;
 import org.directwebremoting.util.FakeHttpServletResponse;
@@ -136,6 +148,269 @@ public class DefaultRemoterTest
         assertNotSame(result.indexOf("</script>"), -1);
     }
 
+    @Test
+    public void executeFilterChain() throws Exception
+    {
+        NewCreator creator = new NewCreator();
+        creator.setClass(TestCreatedObject.class.getName());
+        expect(creatorManager.getCreator("creatorName", true)).andReturn(creator).anyTimes();
+
+        accessControl.assertExecutionIsPossible(eq(creator), eq("creatorName"), isA(Method.class));
+        expectLastCall().anyTimes();
+
+        final List<String> order = new ArrayList<String>();
+        List<AjaxFilter> filters = new ArrayList<AjaxFilter>();
+        filters.add(new AjaxFilter()
+        {
+            public Object doFilter(Object obj, Method method, Object[] params, AjaxFilterChain chain) throws Exception
+            {
+                order.add("first");
+                return chain.doFilter(obj, method, params);
+            }
+        });
+        filters.add(new AjaxFilter()
+        {
+            public Object doFilter(Object obj, Method method, Object[] params, AjaxFilterChain chain) throws Exception
+            {
+                order.add("second");
+                return chain.doFilter(obj, method, params);
+            }
+        });
+        expect(ajaxFilterManager.getAjaxFilters("creatorName")).andReturn(filters).anyTimes();
+
+        replay(creatorManager);
+        replay(accessControl);
+        replay(ajaxFilterManager);
+
+        Set<Integer> param = new HashSet<Integer>();
+        param.add(42);
+
+        Call call = new Call("1", "creatorName", "testBeanSetParam");
+        call.setMethod(TestCreatedObject.class.getMethod("testBeanSetParam", Set.class));
+        call.setParameters(new Object[] { param });
+
+        for (int i = 0; i < 2; i++)
+        {
+            Reply reply = defaultRemoter.execute(call);
+            assertNull(reply.getThrowable());
+            assertSame(param, reply.getReply());
+        }
+
+        assertEquals(Arrays.asList("first", "second", "first", "second"), order);
+
+        verify(creatorManager);
+        verify(accessControl);
+        verify(ajaxFilterManager);
+    }
+
+    @Test
+    public void executeInParallel() throws Exception
+    {
+        NewCreator creator = new NewCreator();
+        creator.setClass(TestCreatedObject.class.getName());
+        expect(creatorManager.getCreator("creatorName", true)).andReturn(creator).anyTimes();
+
+        accessControl.assertExecutionIsPossible(eq(creator), eq("creatorName"), isA(Method.class));
+        expectLastCall().anyTimes();
+
+        // Make the early calls finish last
+        List<AjaxFilter> filters = new ArrayList<AjaxFilter>();
+        filters.add(new AjaxFilter()
+        {
+            public Object doFilter(Object obj, Method method, Object[] params, AjaxFilterChain chain) throws Exception
+            {
+                Set<?> param = (Set<?>) params[0];
+                Thread.sleep(50 * (5 - param.size()));
+                return chain.doFilter(obj, method, params);
+            }
+        });
+        expect(ajaxFilterManager.getAjaxFilters("creatorName")).andReturn(filters).anyTimes();
+
+        replay(creatorManager);
+        replay(accessControl);
+        replay(ajaxFilterManager);
+
+        Method method = TestCreatedObject.class.getMethod("testBeanSetParam", Set.class);
+        Calls calls = new Calls();
+        for (int i = 0; i < 5; i++)
+        {
+            Set<Integer> param = new HashSet<Integer>();
+            for (int j = 0; j < i; j++)
+            {
+                param.add(j);
+            }
+
+            Call call = new Call(String.valueOf(i), "creatorName", "testBeanSetParam");
+            call.setMethod(method);
+            call.setParameters(new Object[] { param });
+            calls.addCall(call);
+        }
+
+        defaultRemoter.setParallelCallThreads(4);
+        try
+        {
+            Replies replies = defaultRemoter.execute(calls);
+            assertEquals(5, replies.getReplyCount());
+            for (int i = 0; i < 5; i++)
+            {
+                Reply reply = replies.getReply(i);
+                assertEquals(String.valueOf(i), reply.getCallId());
+                assertNull(reply.getThrowable());
+                assertSame(calls.getCall(i).getParameters()[0], reply.getReply());
+            }
+        }
+        finally
+        {
+            defaultRemoter.servletDestroyed();
+        }
+    }
+
+    @Test
+    public void executeConcurrently() throws Exception
+    {
+        NewCreator creator = new NewCreator();
+        creator.setClass(TestCreatedObject.class.getName());
+        expect(creatorManager.getCreator("creatorName", true)).andReturn(creator).anyTimes();
+
+        accessControl.assertExecutionIsPossible(eq(creator), eq("creatorName"), isA(Method.class));
+        expectLastCall().anyTimes();
+
+        // No call can finish until all of them have started, so run one after
+        // another they would time out
+        final int callCount = 3;
+        final CountDownLatch started = new CountDownLatch(callCount);
+        List<AjaxFilter> filters = new ArrayList<AjaxFilter>();
+        filters.add(new AjaxFilter()
+        {
+            public Object doFilter(Object obj, Method method, Object[] params, AjaxFilterChain chain) throws Exception
+            {
+                started.countDown();
+                if (!started.await(5, TimeUnit.SECONDS))
+                {
+                    throw new IllegalStateException("Calls were not executed concurrently");
+                }
+                return chain.doFilter(obj, method, params);
+            }
+        });
+        expect(ajaxFilterManager.getAjaxFilters("creatorName")).andReturn(filters).anyTimes();
+
+        replay(creatorManager);
+        replay(accessControl);
+        replay(ajaxFilterManager);
+
+        Method method = TestCreatedObject.class.getMethod("testBeanSetParam", Set.class);
+        Calls calls = new Calls();
+        for (int i = 0; i < callCount; i++)
+        {
+            Call call = new Call(String.valueOf(i), "creatorName", "testBeanSetParam");
+            call.setMethod(method);
+            call.setParameters(new Object[] { new HashSet<Integer>() });
+            calls.addCall(call);
+        }
+
+        defaultRemoter.setParallelCallThreads(callCount - 1);
+        try
+        {
+            Replies replies = defaultRemoter.execute(calls);
+            assertEquals(callCount, replies.getReplyCount());
+            for (int i = 0; i < callCount; i++)
+            {
+                assertNull(replies.getReply(i).getThrowable());
+            }
+        }
+        finally
+        {
+            defaultRemoter.servletDestroyed();
+        }
+    }
+
+    @Test
+    public void parameterDefinitionsArePruned() throws Exception
+    {
+        DefaultRemoter remoter = new DefaultRemoter()
+        {
+            @Override
+            protected String createDtoClassDefinition(NamedConverter namedConv)
+            {
+                return namedConv.getJavascript() + ";";
+            }
+
+            @Override
+            protected String createDtoSuperClassDefinition(NamedConverter namedConv)
+            {
+                return "";
+            }
+        };
+        remoter.setCreatorManager(creatorManager);
+        remoter.setAccessControl(accessControl);
+
+        converterManager = createMock(ConverterManager.class);
+        remoter.setConverterManager(converterManager);
+
+        NewCreator creator = new NewCreator();
+        creator.setClass(DtoService.class.getName());
+        expect(creatorManager.getCreator("service", false)).andReturn(creator);
+        accessControl.assertIsDisplayable(eq(creator), eq("service"), isA(Method.class));
+        expectLastCall().anyTimes();
+
+        List<String> matches = Arrays.asList("Unused", "Deep", "Result", "Parameter", "SubParameter");
+        expect(converterManager.getConverterMatchStrings()).andReturn(matches);
+        expect(converterManager.getConverterByMatchString("Unused")).andReturn(mappedConverter("Unused", Unused.class));
+        expect(converterManager.getConverterByMatchString("Deep")).andReturn(mappedConverter("Deep", Deep.class));
+        expect(converterManager.getConverterByMatchString("Result")).andReturn(mappedConverter("Result", Result.class));
+        expect(converterManager.getConverterByMatchString("Parameter")).andReturn(mappedConverter("Parameter", Parameter.class));
+        expect(converterManager.getConverterByMatchString("SubParameter")).andReturn(mappedConverter("SubParameter", SubParameter.class));
+
+        replay(creatorManager, accessControl, converterManager);
+
+        // Unused is not reachable, the others keep their configured order
+        assertEquals("Deep;Result;Parameter;SubParameter;", remoter.createParameterDefinitions("service"));
+
+        verify(creatorManager, accessControl, converterManager);
+    }
+
+    private static NamedConverter mappedConverter(String javascript, Class<?> instanceType)
+    {
+        NamedConverter converter = createNiceMock(NamedConverter.class);
+        expect(converter.getJavascript()).andReturn(javascript).anyTimes();
+        converter.getInstanceType();
+        expectLastCall().andReturn(instanceType).anyTimes();
+        replay(converter);
+        return converter;
+    }
+
+    public static class DtoService
+    {
+        public Result find(List<? extends Parameter> parameters)
+        {
+            return null;
+        }
+    }
+
+    public static class Parameter
+    {
+    }
+
+    public static class SubParameter extends Parameter
+    {
+    }
+
+    public static class Result
+    {
+        public Map<String, Deep[]> getDeep()
+        {
+            return null;
+        }
+    }
+
+    public static class Deep
+    {
+    }
+
+    public static class Unused
+    {
+    }
+
     @Ignore
     @Test
     public void handle2() throws Exception
@@ -0,0 +1,222 @@
+/*
+ * Copyright 2005 Joe Walker
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.directwebremoting.impl;
+
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.directwebremoting.extend.PageNormalizer;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * @author Joe Walker [joe at getahead dot ltd dot uk]
+ */
+public class DefaultScriptSessionManagerTest
+{
+    private final DefaultScriptSessionManager manager = new DefaultScriptSessionManager();
+
+    @Before
+    public void setUp()
+    {
+        manager.setPageNormalizer(new PageNormalizer()
+        {
+            public String normalizePage(String unnormalized)
+            {
+                return unnormalized;
+            }
+        });
+    }
+
+    @Test
+    public void indexesAreCleanedUp()
+    {
+        DefaultScriptSession first = createSession("first");
+        DefaultScriptSession second = createSession("second");
+
+        assertEquals(2, manager.getScriptSessionsByHttpSessionId("hs").size());
+        assertEquals(2, manager.getScriptSessionsByPage("/page").size());
+
+        first.invalidate();
+        assertEquals(1, manager.getScriptSessionsByHttpSessionId("hs").size());
+        assertEquals(1, manager.getScriptSessionsByPage("/page").size());
+        assertNull(first.getAttribute(DefaultScriptSessionManager.ATTRIBUTE_HTTPSESSIONID));
+
+        second.invalidate();
+        assertFalse(manager.sessionXRef.containsKey("hs"));
+        assertFalse(manager.pageSessionMap.containsKey("/page"));
+        assertTrue(manager.getAllScriptSessions().isEmpty());
+    }
+
+    @Test
+    public void associateAfterInvalidate()
+    {
+        DefaultScriptSession session = createSession("session");
+        session.invalidate();
+
+        manager.associateScriptSessionAndHttpSession(session, "hs");
+        manager.associateScriptSessionAndPage(session, "/page");
+
+        assertFalse(manager.sessionXRef.containsKey("hs"));
+        assertFalse(manager.pageSessionMap.containsKey("/page"));
+    }
+
+    @Test
+    public void concurrentAssociateAndInvalidate() throws Exception
+    {
+        for (int i = 0; i < 500; i++)
+        {
+            final DefaultScriptSession session = new DefaultScriptSession("session" + i, manager, "/page");
+            manager.sessionMap.put(session.getId(), session);
+
+            final CountDownLatch start = new CountDownLatch(1);
+            Thread associator = new Thread()
+            {
+                @Override
+                public void run()
+                {
+                    await(start);
+                    manager.associateScriptSessionAndPage(session, "/page");
+                    manager.associateScriptSessionAndHttpSession(session, "hs");
+                }
+            };
+            Thread invalidator = new Thread()
+            {
+                @Override
+                public void run()
+                {
+                    await(start);
+                    session.invalidate();
+                }
+            };
+
+            associator.start();
+            invalidator.start();
+            start.countDown();
+            associator.join();
+            invalidator.join();
+
+            assertTrue(session.isInvalidated());
+            assertFalse("Leaked http session index after " + i, manager.sessionXRef.containsKey("hs"));
+            assertFalse("Leaked page index after " + i, manager.pageSessionMap.containsKey("/page"));
+        }
+    }
+
+    @Test
+    public void expiryIsOrderedByDeadline()
+    {
+        DefaultScriptSession first = createSession("first");
+        DefaultScriptSession second = createSession("second");
+        DefaultScriptSession third = createSession("third");
+
+        long now = System.currentTimeMillis();
+        manager.scheduleExpiry(third, now + 3000);
+        manager.scheduleExpiry(first, now + 1000);
+        manager.scheduleExpiry(second, now + 2000);
+
+        assertEquals(3, manager.expiryQueue.size());
+        Iterator<List<DefaultScriptSession>> filed = manager.expiryQueue.values().iterator();
+        assertEquals(Arrays.asList(first), filed.next());
+        assertEquals(Arrays.asList(second), filed.next());
+        assertEquals(Arrays.asList(third), filed.next());
+
+        // Deadlines are rounded up so a session is never checked early
+        long tick = DefaultScriptSessionManager.EXPIRY_TICK_MILLIS;
+        assertEquals((now + 1000 + tick - 1) / tick, manager.expiryQueue.firstKey().longValue());
+    }
+
+    @Test
+    public void expiredSessionsAreInvalidated() throws Exception
+    {
+        DefaultScriptSession session = createSession("session");
+        manager.setScriptSessionTimeout(1);
+        Thread.sleep(10);
+
+        manager.scheduleExpiry(session, 0);
+        manager.checkTimeouts();
+
+        assertTrue(session.isInvalidated());
+        assertTrue(manager.getAllScriptSessions().isEmpty());
+        assertFalse(manager.pageSessionMap.containsKey("/page"));
+    }
+
+    @Test
+    public void accessedSessionsAreRefiled()
+    {
+        DefaultScriptSession session = createSession("session");
+        manager.setScriptSessionTimeout(60000);
+
+        // Filed against a deadline that has passed, but it has been used since
+        manager.expiryQueue.clear();
+        manager.scheduleExpiry(session, 0);
+        session.updateLastAccessedTime();
+        manager.checkTimeouts();
+
+        assertFalse(session.isInvalidated());
+        assertEquals(1, manager.expiryQueue.size());
+
+        long tick = DefaultScriptSessionManager.EXPIRY_TICK_MILLIS;
+        long expected = (session.getLastAccessedTime() + 60000 + tick - 1) / tick;
+        assertEquals(expected, manager.expiryQueue.firstKey().longValue());
+        assertEquals(Arrays.asList(session), manager.expiryQueue.get(expected));
+    }
+
+    @Test
+    public void timeoutChangesRefileSessions()
+    {
+        DefaultScriptSession session = createSession("session");
+        long lastAccessed = session.getLastAccessedTime();
+        long tick = DefaultScriptSessionManager.EXPIRY_TICK_MILLIS;
+
+        manager.setScriptSessionTimeout(60000);
+        assertEquals(1, manager.expiryQueue.size());
+        assertEquals((lastAccessed + 60000 + tick - 1) / tick, manager.expiryQueue.firstKey().longValue());
+
+        // A shorter timeout must not leave the session filed at the old time
+        manager.setScriptSessionTimeout(5000);
+        assertEquals(1, manager.expiryQueue.size());
+        assertEquals((lastAccessed + 5000 + tick - 1) / tick, manager.expiryQueue.firstKey().longValue());
+    }
+
+    private DefaultScriptSession createSession(String id)
+    {
+        DefaultScriptSession session = new DefaultScriptSession(id, manager, "/page");
+        manager.sessionMap.put(id, session);
+        manager.associateScriptSessionAndPage(session, "/page");
+        manager.associateScriptSessionAndHttpSession(session, "hs");
+        return session;
+    }
+
+    private static void await(CountDownLatch latch)
+    {
+        try
+        {
+            if (!latch.await(5, TimeUnit.SECONDS))
+            {
+                throw new IllegalStateException("Timed out waiting to start");
+            }
+        }
+        catch (InterruptedException ex)
+        {
+            throw new IllegalStateException(ex);
+        }
+    }
+}
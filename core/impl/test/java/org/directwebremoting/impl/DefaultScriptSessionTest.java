@@ -0,0 +1,181 @@
+/*
+ * Copyright 2005 Joe Walker
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.directwebremoting.impl;
+
+import org.directwebremoting.ScriptBuffer;
+import org.directwebremoting.extend.ConvertedScriptBuffer;
+import org.directwebremoting.extend.ConverterManager;
+import org.directwebremoting.extend.NonNestedOutboundVariable;
+import org.directwebremoting.extend.OutboundContext;
+import org.directwebremoting.extend.ScriptBufferUtil;
+import org.junit.Test;
+
+import static org.easymock.EasyMock.*;
+import static org.junit.Assert.*;
+
+/**
+ * @author Joe Walker [joe at getahead dot ltd dot uk]
+ */
+public class DefaultScriptSessionTest
+{
+    private final DefaultScriptSessionManager manager = new DefaultScriptSessionManager();
+
+    private final DefaultScriptSession session = new DefaultScriptSession("0123456789", manager, "/index.html");
+
+    @Test
+    public void unboundedByDefault()
+    {
+        for (int i = 0; i < 100; i++)
+        {
+            session.addScript(new ScriptBuffer("a();"));
+        }
+
+        assertEquals(100, session.scripts.size());
+    }
+
+    @Test
+    public void dropOldest()
+    {
+        manager.setMaxWaitingScripts(2);
+
+        ScriptBuffer first = new ScriptBuffer("a();");
+        ScriptBuffer second = new ScriptBuffer("b();");
+        ScriptBuffer third = new ScriptBuffer("c();");
+        session.addScript(first);
+        session.addScript(second);
+        session.addScript(third);
+
+        assertEquals(2, session.scripts.size());
+        assertSame(second, session.scripts.get(0));
+        assertSame(third, session.scripts.get(1));
+    }
+
+    @Test
+    public void reject()
+    {
+        manager.setMaxWaitingScripts(2);
+        manager.setWaitingScriptOverflowPolicy("reject");
+
+        ScriptBuffer first = new ScriptBuffer("a();");
+        ScriptBuffer second = new ScriptBuffer("b();");
+        session.addScript(first);
+        session.addScript(second);
+        session.addScript(new ScriptBuffer("c();"));
+
+        assertEquals(2, session.scripts.size());
+        assertSame(first, session.scripts.get(0));
+        assertSame(second, session.scripts.get(1));
+    }
+
+    @Test
+    public void invalidate()
+    {
+        manager.setMaxWaitingScripts(2);
+        manager.setWaitingScriptOverflowPolicy("INVALIDATE");
+
+        session.addScript(new ScriptBuffer("a();"));
+        session.addScript(new ScriptBuffer("b();"));
+        assertFalse(session.isInvalidated());
+
+        session.addScript(new ScriptBuffer("c();"));
+        assertTrue(session.isInvalidated());
+        assertTrue(session.scripts.isEmpty());
+    }
+
+    @Test
+    public void replace()
+    {
+        manager.setMaxWaitingScripts(3);
+        manager.setWaitingScriptOverflowPolicy("replace");
+
+        ScriptBuffer price1 = new ScriptBuffer("price(1);");
+        price1.setReplaceKey("price");
+        ScriptBuffer other = new ScriptBuffer("other();");
+        ScriptBuffer price2 = new ScriptBuffer("price(2);");
+        price2.setReplaceKey("price");
+
+        session.addScript(price1);
+        session.addScript(other);
+        session.addScript(price2);
+
+        assertEquals(2, session.scripts.size());
+        assertSame(other, session.scripts.get(0));
+        assertSame(price2, session.scripts.get(1));
+
+        // Unkeyed scripts still overflow by dropping the oldest
+        session.addScript(new ScriptBuffer("x();"));
+        session.addScript(new ScriptBuffer("y();"));
+        assertEquals(3, session.scripts.size());
+        assertSame(price2, session.scripts.get(0));
+    }
+
+    @Test
+    public void byteLimitConvertsOnce() throws Exception
+    {
+        Object data = new Object();
+        ConverterManager converterManager = createMock(ConverterManager.class);
+        expect(converterManager.convertOutbound(same(data), isA(OutboundContext.class))).andReturn(new NonNestedOutboundVariable("1234")).times(3);
+        replay(converterManager);
+
+        manager.setConverterManager(converterManager);
+        manager.setMaxWaitingScriptBytes(6);
+
+        // Each script is 4 bytes, so only one fits
+        for (int i = 0; i < 3; i++)
+        {
+            ScriptBuffer script = new ScriptBuffer();
+            script.appendData(data);
+            session.addScript(script);
+        }
+
+        assertEquals(1, session.scripts.size());
+
+        // Sending the waiting script uses the output we measured
+        assertEquals("1234", ScriptBufferUtil.createOutput(session.scripts.getFirst(), converterManager));
+        verify(converterManager);
+    }
+
+    @Test
+    public void convertedScriptsAreMeasuredWithoutConverting() throws Exception
+    {
+        Object data = new Object();
+        ConverterManager converterManager = createMock(ConverterManager.class);
+        expect(converterManager.convertOutbound(same(data), isA(OutboundContext.class))).andReturn(new NonNestedOutboundVariable("1234"));
+        replay(converterManager);
+
+        manager.setConverterManager(converterManager);
+        manager.setMaxWaitingScriptBytes(10);
+
+        ScriptBuffer script = new ScriptBuffer();
+        script.appendData(data);
+        ScriptBuffer converted = new ConvertedScriptBuffer(script, converterManager);
+
+        // As when ScriptSessions sends one script to many sessions
+        session.addScript(converted);
+        new DefaultScriptSession("9876543210", manager, "/index.html").addScript(converted);
+
+        assertSame(converted, session.scripts.getFirst());
+        verify(converterManager);
+    }
+
+    @Test
+    public void policyNames()
+    {
+        assertEquals(ScriptQueueOverflowPolicy.DROP_OLDEST, ScriptQueueOverflowPolicy.fromString("dropOldest"));
+        assertEquals(ScriptQueueOverflowPolicy.DROP_OLDEST, ScriptQueueOverflowPolicy.fromString("drop_oldest"));
+        assertEquals(ScriptQueueOverflowPolicy.REPLACE, ScriptQueueOverflowPolicy.fromString(" Replace "));
+    }
+}
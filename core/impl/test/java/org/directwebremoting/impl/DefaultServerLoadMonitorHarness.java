@@ -58,12 +58,10 @@ public class DefaultServerLoadMonitorHarness
                 client.start();
                 clients.add(client);
 
-                float hitsPerSecond = (float) dslm.hitMonitor.getHitsInLastPeriod() / DefaultServerLoadMonitor.SECONDS_MONITORED;
-
                 log.debug("------------------------------------");
                 log.debug("Num. of clients: " + clients.size());
-                log.debug("Hits per second: " + hitsPerSecond);
-                log.debug("Waiting threads: " + dslm.waitingThreads);
+                log.debug("Hits per second: " + dslm.getAverageHitsPerSecond());
+                log.debug("Waiting threads: " + dslm.getWaitingThreads());
                 log.debug("Disconnect time: " + dslm.disconnectedTime);
                 log.debug("Connected time:  " + dslm.connectedTime);
             }
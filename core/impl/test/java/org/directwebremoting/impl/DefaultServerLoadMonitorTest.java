@@ -0,0 +1,143 @@
+/*
+ * Copyright 2005 Joe Walker
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.directwebremoting.impl;
+
+import org.directwebremoting.extend.WaitController;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * @author Joe Walker [joe at getahead dot ltd dot uk]
+ */
+public class DefaultServerLoadMonitorTest
+{
+    private final DefaultServerLoadMonitor monitor = new DefaultServerLoadMonitor();
+
+    @Test
+    public void withinBudget()
+    {
+        monitor.recalculate(100);
+        assertEquals(60000, monitor.getConnectedTime());
+        assertEquals(0, monitor.getDisconnectedTime());
+    }
+
+    @Test
+    public void overBudget()
+    {
+        // Half can be connected, and the disconnected time is capped
+        monitor.recalculate(200);
+        assertEquals(10000, monitor.getConnectedTime());
+        assertEquals(10000, monitor.getDisconnectedTime());
+
+        // Hits per second stay within the limit
+        monitor.recalculate(5000);
+        assertEquals(1000, monitor.getConnectedTime());
+        assertEquals(49000, monitor.getDisconnectedTime());
+        double hitsPerSecond = 5000 * 1000.0 / (monitor.getConnectedTime() + monitor.getDisconnectedTime());
+        assertTrue(hitsPerSecond <= 100);
+    }
+
+    @Test
+    public void smoothAsLoadGrows()
+    {
+        long previous = Long.MAX_VALUE;
+        for (int browsers = 100; browsers < 2000; browsers += 10)
+        {
+            monitor.recalculate(browsers);
+            long connectedTime = monitor.getConnectedTime();
+            assertTrue(connectedTime <= previous);
+            previous = connectedTime;
+
+            // Never more connected than the budget
+            double connected = browsers * (double) connectedTime / (connectedTime + monitor.getDisconnectedTime());
+            assertTrue(connected <= 100.5);
+        }
+    }
+
+    @Test
+    public void burstBetweenSamples()
+    {
+        monitor.setMaxWaitingThreads(10);
+        for (int i = 0; i < 20; i++)
+        {
+            monitor.threadWaitStarting(new NullWaitController());
+        }
+
+        // The next sample isn't due, but we are already over budget
+        assertTrue(monitor.getConnectedTime() < 60000);
+        assertTrue(monitor.getDisconnectedTime() > 0);
+    }
+
+    @Test
+    public void liveCountBeatsAverage()
+    {
+        monitor.setMaxWaitingThreads(10);
+        monitor.setAveragingPeriod(1000000);
+
+        // Start the waits inside the sample interval without recalculating
+        for (int i = 0; i < 20; i++)
+        {
+            monitor.waitingThreads.incrementAndGet();
+        }
+
+        // The average hardly moves over a long averaging period
+        monitor.checkLoading(monitor.lastSampleAt.get() + DefaultServerLoadMonitor.SAMPLE_INTERVAL);
+        assertTrue(monitor.averageWaitingThreads < 1);
+        assertTrue(monitor.getConnectedTime() < 60000);
+        assertTrue(monitor.getDisconnectedTime() > 0);
+    }
+
+    @Test
+    public void countsWaitingThreads()
+    {
+        WaitController controller = new WaitController()
+        {
+            public void shutdown()
+            {
+                shutdown = true;
+            }
+
+            public boolean isShutdown()
+            {
+                return shutdown;
+            }
+
+            private boolean shutdown = false;
+        };
+
+        monitor.threadWaitStarting(controller);
+        assertEquals(1, monitor.getWaitingThreads());
+
+        monitor.contextDestroyed();
+        assertTrue(controller.isShutdown());
+
+        monitor.threadWaitEnding(controller);
+        assertEquals(0, monitor.getWaitingThreads());
+    }
+
+    private static class NullWaitController implements WaitController
+    {
+        public void shutdown()
+        {
+        }
+
+        public boolean isShutdown()
+        {
+            return false;
+        }
+    }
+}
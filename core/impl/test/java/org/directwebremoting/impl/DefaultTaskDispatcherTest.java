@@ -0,0 +1,179 @@
+/*
+ * Copyright 2005 Joe Walker
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.directwebremoting.impl;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.List;
+
+import org.directwebremoting.ScriptSession;
+import org.directwebremoting.ScriptSessionFilter;
+import org.directwebremoting.extend.AndScriptSessionFilter;
+import org.directwebremoting.extend.PageNormalizer;
+import org.directwebremoting.extend.PageScriptSessionFilter;
+import org.directwebremoting.extend.ScriptSessionManager;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.easymock.EasyMock.*;
+import static org.junit.Assert.*;
+
+/**
+ * @author Joe Walker [joe at getahead dot ltd dot uk]
+ */
+public class DefaultTaskDispatcherTest
+{
+    private final DefaultScriptSessionManager manager = new DefaultScriptSessionManager();
+
+    private final DefaultServerContext serverContext = new DefaultServerContext();
+
+    private final DefaultTaskDispatcher dispatcher = new DefaultTaskDispatcher();
+
+    private DefaultScriptSession first;
+
+    private DefaultScriptSession second;
+
+    private DefaultScriptSession other;
+
+    @Before
+    public void setUp()
+    {
+        PageNormalizer pageNormalizer = new PageNormalizer()
+        {
+            public String normalizePage(String unnormalized)
+            {
+                return unnormalized;
+            }
+        };
+        manager.setPageNormalizer(pageNormalizer);
+
+        DefaultContainer container = new DefaultContainer();
+        container.addBean(PageNormalizer.class, pageNormalizer);
+        container.addBean(ScriptSessionManager.class, manager);
+        serverContext.setContainer(container);
+
+        dispatcher.setScriptSessionManager(manager);
+
+        first = createSession("first", "/a");
+        second = createSession("second", "/a");
+        other = createSession("other", "/b");
+    }
+
+    @Test
+    public void pageFilterOnlyChecksPageSessions()
+    {
+        CountingFilter counter = new CountingFilter();
+        ScriptSessionFilter filter = new AndScriptSessionFilter(new PageScriptSessionFilter(serverContext, "/a"), counter);
+
+        assertEquals(sessions(first, second), dispatch(filter));
+        assertEquals(2, counter.count);
+    }
+
+    @Test
+    public void remainingFilterIsApplied()
+    {
+        ScriptSessionFilter filter = new AndScriptSessionFilter(new PageScriptSessionFilter(serverContext, "/a"), new ScriptSessionFilter()
+        {
+            public boolean match(ScriptSession session)
+            {
+                return session.getId().equals("second");
+            }
+        });
+
+        assertEquals(sessions(second), dispatch(filter));
+    }
+
+    @Test
+    public void staleIndexEntriesAreFiltered()
+    {
+        // A session can be in the index for a page it is not viewing
+        manager.addToIndex(manager.pageSessionMap, "/a", other);
+
+        ScriptSessionFilter filter = new PageScriptSessionFilter(serverContext, "/a");
+        assertEquals(sessions(first, second), dispatch(filter));
+    }
+
+    @Test
+    public void otherFiltersCheckAllSessions()
+    {
+        CountingFilter counter = new CountingFilter();
+
+        assertEquals(sessions(first, second, other), dispatch(counter));
+        assertEquals(3, counter.count);
+    }
+
+    @Test
+    public void unindexedManager()
+    {
+        ScriptSessionManager unindexed = createMock(ScriptSessionManager.class);
+        expect(unindexed.getAllScriptSessions()).andReturn(manager.getAllScriptSessions());
+        replay(unindexed);
+
+        dispatcher.setScriptSessionManager(unindexed);
+        ScriptSessionFilter filter = new PageScriptSessionFilter(serverContext, "/a");
+        assertEquals(sessions(first, second), dispatch(filter));
+
+        verify(unindexed);
+    }
+
+    @Test
+    public void serverContextByPage()
+    {
+        manager.addToIndex(manager.pageSessionMap, "/a", other);
+
+        Collection<ScriptSession> found = serverContext.getScriptSessionsByPage("/a");
+        assertEquals(sessions(first, second), new HashSet<ScriptSession>(found));
+    }
+
+    private HashSet<ScriptSession> dispatch(ScriptSessionFilter filter)
+    {
+        final List<ScriptSession> targets = new ArrayList<ScriptSession>();
+        dispatcher.dispatchTask(filter, new Runnable()
+        {
+            public void run()
+            {
+                targets.addAll(dispatcher.getTargetSessions());
+            }
+        });
+        return new HashSet<ScriptSession>(targets);
+    }
+
+    private static HashSet<ScriptSession> sessions(ScriptSession... sessions)
+    {
+        return new HashSet<ScriptSession>(Arrays.asList(sessions));
+    }
+
+    private DefaultScriptSession createSession(String id, String page)
+    {
+        DefaultScriptSession session = new DefaultScriptSession(id, manager, page);
+        manager.sessionMap.put(id, session);
+        manager.associateScriptSessionAndPage(session, page);
+        return session;
+    }
+
+    private static class CountingFilter implements ScriptSessionFilter
+    {
+        public boolean match(ScriptSession session)
+        {
+            count++;
+            return true;
+        }
+
+        private int count = 0;
+    }
+}
@@ -0,0 +1,112 @@
+/*
+ * Copyright 2005 Joe Walker
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.directwebremoting.impl;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * @author Joe Walker [joe at getahead dot ltd dot uk]
+ */
+public class HashedWheelTimerTest
+{
+    private HashedWheelTimer timer;
+
+    @Before
+    public void setUp()
+    {
+        timer = new HashedWheelTimer();
+        timer.setAlarmTickDuration(10);
+        timer.setAlarmWheelSize(8);
+        timer.setAlarmWorkerThreads(2);
+    }
+
+    @After
+    public void tearDown()
+    {
+        timer.stop();
+    }
+
+    @Test
+    public void runsAfterDelay() throws Exception
+    {
+        final CountDownLatch latch = new CountDownLatch(1);
+        long start = System.currentTimeMillis();
+
+        // More than one turn of the wheel
+        HashedWheelTimer.Timeout timeout = timer.schedule(new Runnable()
+        {
+            public void run()
+            {
+                latch.countDown();
+            }
+        }, 150);
+
+        assertTrue(latch.await(5, TimeUnit.SECONDS));
+        assertTrue(System.currentTimeMillis() - start >= 150);
+        assertTrue(timeout.isExpired());
+        assertFalse(timeout.cancel());
+    }
+
+    @Test
+    public void cancelledDoesNotRun() throws Exception
+    {
+        final AtomicInteger count = new AtomicInteger();
+        Runnable task = new Runnable()
+        {
+            public void run()
+            {
+                count.incrementAndGet();
+            }
+        };
+
+        HashedWheelTimer.Timeout cancelled = timer.schedule(task, 30);
+        final CountDownLatch latch = new CountDownLatch(1);
+        timer.schedule(new Runnable()
+        {
+            public void run()
+            {
+                latch.countDown();
+            }
+        }, 60);
+
+        assertTrue(cancelled.cancel());
+        assertTrue(cancelled.isCancelled());
+
+        assertTrue(latch.await(5, TimeUnit.SECONDS));
+        assertEquals(0, count.get());
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void configureAfterStart()
+    {
+        timer.schedule(new Runnable()
+        {
+            public void run()
+            {
+            }
+        }, 1000);
+
+        timer.setAlarmWorkerThreads(4);
+    }
+}
@@ -0,0 +1,261 @@
+/*
+ * Copyright 2005 Joe Walker
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.directwebremoting.server.servlet3;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.List;
+
+import javax.servlet.ServletConfig;
+import javax.servlet.ServletContext;
+import javax.servlet.http.HttpServletRequest;
+
+import org.directwebremoting.extend.Sleeper;
+import org.directwebremoting.impl.DefaultServerLoadMonitor;
+import org.directwebremoting.impl.ThreadWaitSleeper;
+import org.junit.Test;
+
+import static org.easymock.EasyMock.*;
+import static org.junit.Assert.*;
+
+/**
+ * The Servlet 3.0 API isn't on our classpath, so these tests use stand-ins
+ * with the same methods.
+ * @author Joe Walker [joe at getahead dot ltd dot uk]
+ */
+public class Servlet3ContainerAbstractionTest
+{
+    private final FakeAsyncContext context = new FakeAsyncContext();
+
+    private final Counter awakening = new Counter();
+
+    private final Servlet3ContainerAbstraction abstraction;
+
+    public Servlet3ContainerAbstractionTest() throws Exception
+    {
+        abstraction = new Servlet3ContainerAbstraction(new Servlet3Api(AsyncRequest.class, AsyncContext.class, AsyncListener.class));
+    }
+
+    @Test
+    public void asyncSleeper()
+    {
+        Sleeper sleeper = abstraction.createSleeper(createRequest(true));
+        assertTrue(sleeper instanceof Servlet3Sleeper);
+
+        sleeper.goToSleep(awakening);
+        assertEquals(1, context.started);
+        assertEquals(0L, context.timeout);
+        assertNotNull(context.listener);
+        assertEquals(0, awakening.count);
+
+        // Waking happens on a container thread
+        sleeper.wakeUp();
+        assertEquals(0, awakening.count);
+        assertEquals(1, context.tasks.size());
+
+        context.runTasks();
+        assertEquals(1, awakening.count);
+        assertEquals(1, context.completed);
+
+        sleeper.wakeUp();
+        assertTrue(context.tasks.isEmpty());
+        assertEquals(1, awakening.count);
+    }
+
+    @Test
+    public void containerTimeout()
+    {
+        Sleeper sleeper = abstraction.createSleeper(createRequest(true));
+        sleeper.goToSleep(awakening);
+
+        context.listener.onTimeout(null);
+        assertEquals(1, awakening.count);
+        assertEquals(1, context.completed);
+
+        sleeper.wakeUp();
+        assertTrue(context.tasks.isEmpty());
+        assertEquals(1, awakening.count);
+        assertEquals(1, context.completed);
+    }
+
+    @Test
+    public void wakeUpBeforeSleep()
+    {
+        Sleeper sleeper = abstraction.createSleeper(createRequest(true));
+        sleeper.wakeUp();
+        sleeper.goToSleep(awakening);
+
+        assertEquals(0, context.started);
+        assertEquals(1, awakening.count);
+    }
+
+    @Test
+    public void fallbackSleeper()
+    {
+        Sleeper sleeper = abstraction.createSleeper(createRequest(false));
+        assertTrue(sleeper instanceof ThreadWaitSleeper);
+        assertEquals(0, context.started);
+
+        // Without async each waiting browser holds a thread, so we need a
+        // server load monitor that keeps to a budget
+        assertEquals(DefaultServerLoadMonitor.class, abstraction.getServerLoadMonitorImplementation());
+    }
+
+    @Test
+    public void nativeEnvironment()
+    {
+        assertFalse(abstraction.isNativeEnvironment(createConfig(2)));
+        assertTrue(abstraction.isNativeEnvironment(createConfig(3)));
+        assertFalse(new Servlet3ContainerAbstraction(null).isNativeEnvironment(createConfig(3)));
+    }
+
+    private ServletConfig createConfig(int majorVersion)
+    {
+        ServletContext servletContext = createMock(ServletContext.class);
+        expect(servletContext.getMajorVersion()).andReturn(majorVersion).anyTimes();
+        replay(servletContext);
+
+        ServletConfig servletConfig = createMock(ServletConfig.class);
+        expect(servletConfig.getServletContext()).andReturn(servletContext).anyTimes();
+        replay(servletConfig);
+
+        return servletConfig;
+    }
+
+    private HttpServletRequest createRequest(final boolean asyncSupported)
+    {
+        return (HttpServletRequest) Proxy.newProxyInstance(getClass().getClassLoader(), new Class<?>[] { HttpServletRequest.class, AsyncRequest.class }, new InvocationHandler()
+        {
+            public Object invoke(Object proxy, Method method, Object[] args)
+            {
+                if ("isAsyncSupported".equals(method.getName()))
+                {
+                    return asyncSupported;
+                }
+
+                if ("startAsync".equals(method.getName()))
+                {
+                    if (!asyncSupported)
+                    {
+                        throw new IllegalStateException("Not async-supported");
+                    }
+
+                    context.started++;
+                    return context;
+                }
+
+                throw new UnsupportedOperationException(method.getName());
+            }
+        });
+    }
+
+    /**
+     * The parts of javax.servlet.ServletRequest from Servlet 3.0 that we use
+     */
+    public interface AsyncRequest
+    {
+        Object startAsync();
+
+        boolean isAsyncSupported();
+    }
+
+    /**
+     * The parts of javax.servlet.AsyncContext that we use
+     */
+    public interface AsyncContext
+    {
+        void setTimeout(long timeout);
+
+        void addListener(AsyncListener listener);
+
+        void start(Runnable run);
+
+        void complete();
+    }
+
+    /**
+     * javax.servlet.AsyncListener, using Object in place of AsyncEvent
+     */
+    public interface AsyncListener
+    {
+        void onComplete(Object event);
+
+        void onTimeout(Object event);
+
+        void onError(Object event);
+
+        void onStartAsync(Object event);
+    }
+
+    private static class FakeAsyncContext implements AsyncContext
+    {
+        public void setTimeout(long timeout)
+        {
+            this.timeout = timeout;
+        }
+
+        public void addListener(AsyncListener listener)
+        {
+            this.listener = listener;
+        }
+
+        public void start(Runnable run)
+        {
+            tasks.add(run);
+        }
+
+        public void complete()
+        {
+            completed++;
+            if (listener != null)
+            {
+                listener.onComplete(null);
+            }
+        }
+
+        void runTasks()
+        {
+            List<Runnable> toRun = new ArrayList<Runnable>(tasks);
+            tasks.clear();
+            for (Runnable task : toRun)
+            {
+                task.run();
+            }
+        }
+
+        private int started = 0;
+
+        private long timeout = -1;
+
+        private AsyncListener listener;
+
+        private final List<Runnable> tasks = new ArrayList<Runnable>();
+
+        private int completed = 0;
+    }
+
+    private static class Counter implements Runnable
+    {
+        public void run()
+        {
+            count++;
+        }
+
+        private int count = 0;
+    }
+}
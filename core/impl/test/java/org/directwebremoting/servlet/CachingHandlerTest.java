@@ -0,0 +1,239 @@
+/*
+ * Copyright 2005 Joe Walker
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.directwebremoting.servlet;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.zip.GZIPInputStream;
+
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import org.directwebremoting.util.FakeHttpServletRequest;
+import org.directwebremoting.util.FakeHttpServletResponse;
+import org.directwebremoting.util.MimeConstants;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * @author Joe Walker [joe at getahead dot ltd dot uk]
+ */
+public class CachingHandlerTest
+{
+    private static final String CONTENT;
+    static
+    {
+        StringBuilder buffer = new StringBuilder();
+        for (int i = 0; i < 100; i++)
+        {
+            buffer.append("var x").append(i).append(" = '\u00e9';\n");
+        }
+        CONTENT = buffer.toString();
+    }
+
+    private int generated = 0;
+
+    private final CachingHandler handler = new CachingHandler()
+    {
+        @Override
+        protected long getLastModifiedTime()
+        {
+            return 1000000;
+        }
+
+        @Override
+        protected String generateCachableContent(HttpServletRequest request, HttpServletResponse response)
+        {
+            generated++;
+            return CONTENT;
+        }
+    };
+
+    {
+        handler.setMimeType(MimeConstants.MIME_JS);
+    }
+
+    @Test
+    public void plainThenNotModified() throws Exception
+    {
+        FakeHttpServletResponse response = new FakeHttpServletResponse();
+        handler.handle(new HeaderRequest(), response);
+
+        byte[] expected = CONTENT.getBytes("UTF-8");
+        assertArrayEquals(expected, response.getContentAsByteArray());
+        assertEquals(expected.length, response.getContentLength());
+        assertFalse(response.containsHeader(HttpConstants.HEADER_CONTENT_ENCODING));
+
+        String etag = header(response, HttpConstants.HEADER_ETAG);
+        assertTrue(etag.startsWith("\""));
+
+        HeaderRequest request = new HeaderRequest();
+        request.headers.put(HttpConstants.HEADER_IF_NONE, "\"other\", " + etag);
+        response = new FakeHttpServletResponse();
+        handler.handle(request, response);
+
+        assertEquals(HttpServletResponse.SC_NOT_MODIFIED, response.getStatus());
+        assertEquals(0, response.getContentAsByteArray().length);
+        assertEquals(1, generated);
+    }
+
+    @Test
+    public void gzip() throws Exception
+    {
+        HeaderRequest request = new HeaderRequest();
+        request.headers.put(HttpConstants.HEADER_ACCEPT_ENCODING, "deflate, gzip;q=0.8");
+        FakeHttpServletResponse response = new FakeHttpServletResponse();
+        handler.handle(request, response);
+
+        assertEquals(HttpConstants.ENCODING_GZIP, header(response, HttpConstants.HEADER_CONTENT_ENCODING));
+        byte[] body = response.getContentAsByteArray();
+        assertEquals(body.length, response.getContentLength());
+        assertEquals(CONTENT, new String(gunzip(body), "UTF-8"));
+
+        // The gzipped ETag still matches the same content
+        String etag = header(response, HttpConstants.HEADER_ETAG);
+        request = new HeaderRequest();
+        request.headers.put(HttpConstants.HEADER_IF_NONE, etag);
+        response = new FakeHttpServletResponse();
+        handler.handle(request, response);
+        assertEquals(HttpServletResponse.SC_NOT_MODIFIED, response.getStatus());
+    }
+
+    @Test
+    public void acceptEncoding()
+    {
+        assertTrue(CachingHandler.isGzipAccepted(requestAccepting("gzip, deflate")));
+        assertTrue(CachingHandler.isGzipAccepted(requestAccepting("*")));
+        assertFalse(CachingHandler.isGzipAccepted(requestAccepting("gzip;q=0, *")));
+        assertFalse(CachingHandler.isGzipAccepted(requestAccepting("deflate")));
+        assertFalse(CachingHandler.isGzipAccepted(new HeaderRequest()));
+    }
+
+    @Test
+    public void missesOnDifferentKeysDoNotBlock() throws Exception
+    {
+        final CountDownLatch slowStarted = new CountDownLatch(1);
+        final CountDownLatch releaseSlow = new CountDownLatch(1);
+        final AtomicInteger slowGenerated = new AtomicInteger();
+
+        final CachingHandler blocking = new CachingHandler()
+        {
+            @Override
+            protected long getLastModifiedTime()
+            {
+                return 1000000;
+            }
+
+            @Override
+            protected String generateCachableContent(HttpServletRequest request, HttpServletResponse response) throws IOException
+            {
+                if ("/slow.js".equals(request.getPathInfo()))
+                {
+                    slowGenerated.incrementAndGet();
+                    slowStarted.countDown();
+                    try
+                    {
+                        releaseSlow.await();
+                    }
+                    catch (InterruptedException ex)
+                    {
+                        throw new IOException("interrupted");
+                    }
+                }
+                return CONTENT;
+            }
+        };
+
+        Runnable slowRequest = new Runnable()
+        {
+            public void run()
+            {
+                try
+                {
+                    HeaderRequest request = new HeaderRequest();
+                    request.setPathInfo("/slow.js");
+                    blocking.handle(request, new FakeHttpServletResponse());
+                }
+                catch (IOException ex)
+                {
+                    throw new RuntimeException(ex);
+                }
+            }
+        };
+
+        Thread first = new Thread(slowRequest);
+        Thread second = new Thread(slowRequest);
+        first.start();
+        assertTrue(slowStarted.await(5, TimeUnit.SECONDS));
+        second.start();
+
+        // Another resource is not held up by the slow one
+        HeaderRequest request = new HeaderRequest();
+        request.setPathInfo("/fast.js");
+        FakeHttpServletResponse response = new FakeHttpServletResponse();
+        blocking.handle(request, response);
+        assertEquals(CONTENT, new String(response.getContentAsByteArray(), "UTF-8"));
+
+        releaseSlow.countDown();
+        first.join(5000);
+        second.join(5000);
+        assertEquals(1, slowGenerated.get());
+    }
+
+    private static HeaderRequest requestAccepting(String acceptEncoding)
+    {
+        HeaderRequest request = new HeaderRequest();
+        request.headers.put(HttpConstants.HEADER_ACCEPT_ENCODING, acceptEncoding);
+        return request;
+    }
+
+    private static String header(FakeHttpServletResponse response, String name)
+    {
+        return (String) response.getHeaders(name).get(0);
+    }
+
+    private static byte[] gunzip(byte[] data) throws IOException
+    {
+        InputStream in = new GZIPInputStream(new ByteArrayInputStream(data));
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        byte[] buffer = new byte[1024];
+        int read;
+        while ((read = in.read(buffer)) != -1)
+        {
+            out.write(buffer, 0, read);
+        }
+        return out.toByteArray();
+    }
+
+    private static class HeaderRequest extends FakeHttpServletRequest
+    {
+        @Override
+        public String getHeader(String name)
+        {
+            return headers.get(name);
+        }
+
+        private final Map<String, String> headers = new HashMap<String, String>();
+    }
+}
@@ -0,0 +1,87 @@
+/*
+ * Copyright 2005 Joe Walker
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.directwebremoting.servlet;
+
+import javax.servlet.ServletConfig;
+
+import org.directwebremoting.extend.Remoter;
+import org.directwebremoting.impl.DefaultContainer;
+import org.directwebremoting.impl.DefaultRemoter;
+import org.directwebremoting.impl.StartupUtil;
+import org.directwebremoting.util.FakeHttpServletRequest;
+import org.directwebremoting.util.FakeHttpServletResponse;
+import org.easymock.EasyMock;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * @author Joe Walker [joe at getahead dot ltd dot uk]
+ */
+public class InterfaceHandlerTest
+{
+    @Test
+    public void preGenerate() throws Exception
+    {
+        Remoter remoter = EasyMock.createMock(Remoter.class);
+        EasyMock.expect(remoter.generateInterfaceScript("Remoted", true, "/app/dwr")).andReturn("var Remoted = {};").once();
+        EasyMock.replay(remoter);
+
+        InterfaceHandler handler = new InterfaceHandler();
+        handler.setRemoter(remoter);
+        handler.setInterfaceHandlerUrl("/interface/");
+        handler.setGenerateDtoClasses("interface");
+        handler.setDebug(true);
+
+        handler.preGenerate("Remoted", "/app", "/dwr");
+
+        // A request is served from the cache
+        FakeHttpServletRequest request = new FakeHttpServletRequest();
+        request.setPathInfo("/interface/Remoted.js");
+        FakeHttpServletResponse response = new FakeHttpServletResponse();
+        handler.handle(request, response);
+
+        assertEquals("var Remoted = {};", new String(response.getContentAsByteArray(), "UTF-8"));
+        EasyMock.verify(remoter);
+    }
+
+    @Test
+    public void absolutePathIsNotPreGenerated()
+    {
+        // Generating an absolute path needs the request from a WebContext
+        Remoter unused = EasyMock.createMock(Remoter.class);
+        EasyMock.replay(unused);
+
+        InterfaceHandler handler = new InterfaceHandler();
+        handler.setRemoter(unused);
+        handler.setInterfaceHandlerUrl("/interface/");
+
+        DefaultRemoter remoter = new DefaultRemoter();
+        remoter.setUseAbsolutePath(true);
+
+        DefaultContainer container = new DefaultContainer();
+        container.addParameter("interfaceHandlerUrl", "/interface/");
+        container.addParameter(PathConstants.PATH_PREFIX + "/interface/", handler);
+        container.addBean(Remoter.class, remoter);
+
+        ServletConfig servletConfig = EasyMock.createMock(ServletConfig.class);
+        EasyMock.replay(servletConfig);
+
+        StartupUtil.preGenerateInterfaceScripts(container, servletConfig);
+
+        EasyMock.verify(servletConfig, unused);
+    }
+}
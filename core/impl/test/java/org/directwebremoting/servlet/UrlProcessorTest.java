@@ -0,0 +1,67 @@
+/*
+ * Copyright 2005 Joe Walker
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.directwebremoting.servlet;
+
+import org.directwebremoting.extend.Handler;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * @author Joe Walker [joe at getahead dot ltd dot uk]
+ */
+public class UrlProcessorTest
+{
+    private final UrlProcessor processor = new UrlProcessor();
+
+    private final Handler engine = new NotFoundHandler();
+    private final Handler test = new NotFoundHandler();
+    private final Handler testDeep = new NotFoundHandler();
+    private final Handler call = new NotFoundHandler();
+    private final Handler poll = new NotFoundHandler();
+
+    @Before
+    public void setUp()
+    {
+        processor.urlMapping.put("/engine.js", engine);
+        processor.urlMapping.put("/test/", test);
+        processor.urlMapping.put("/test/deep/", testDeep);
+        processor.urlMapping.put("/call/plaincall/", call);
+        processor.urlMapping.put("/call/plainpoll/", poll);
+        processor.setPlainCallHandlerUrl("/call/plaincall/");
+        processor.setPlainPollHandlerUrl("/call/plainpoll/");
+        processor.compileMappings();
+    }
+
+    @Test
+    public void findHandler()
+    {
+        assertSame(engine, processor.findHandler("/engine.js"));
+        assertSame(test, processor.findHandler("/test/Remoted"));
+        assertSame(call, processor.findHandler("/call/plaincall/Remoted.method.dwr"));
+        assertSame(poll, processor.findHandler("/call/plainpoll/ReverseAjax.dwr"));
+        assertNull(processor.findHandler("/call/other/"));
+        assertNull(processor.findHandler("/tes"));
+    }
+
+    @Test
+    public void longestPrefixWins()
+    {
+        assertSame(testDeep, processor.findHandler("/test/deep/Remoted"));
+        assertSame(test, processor.findHandler("/test/dee"));
+    }
+}
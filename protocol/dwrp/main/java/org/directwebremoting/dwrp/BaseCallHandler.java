@@ -28,8 +28,10 @@ import org.apache.commons.logging.LogFactory;
 import org.directwebremoting.ConversionException;
 import org.directwebremoting.ScriptBuffer;
 import org.directwebremoting.WebContextFactory;
+import org.directwebremoting.extend.Alarm;
 import org.directwebremoting.extend.Call;
 import org.directwebremoting.extend.Calls;
+import org.directwebremoting.extend.ContainerAbstraction;
 import org.directwebremoting.extend.ConverterManager;
 import org.directwebremoting.extend.CreatorManager;
 import org.directwebremoting.extend.EnginePrivate;
@@ -48,6 +50,10 @@ import org.directwebremoting.extend.Reply;
 import org.directwebremoting.extend.ScriptBufferUtil;
 import org.directwebremoting.extend.ScriptConduit;
 import org.directwebremoting.extend.SimpleInputStreamFactory;
+import org.directwebremoting.extend.Sleeper;
+import org.directwebremoting.impl.HashedWheelTimer;
+import org.directwebremoting.impl.ThreadWaitSleeper;
+import org.directwebremoting.impl.TimedAlarm;
 import org.directwebremoting.io.FileTransfer;
 import org.directwebremoting.io.InputStreamFactory;
 import org.directwebremoting.util.DebuggingPrintWriter;
@@ -65,8 +71,18 @@ public abstract class BaseCallHandler extends BaseDwrpHandler
     /* (non-Javadoc)
      * @see org.directwebremoting.Handler#handle(javax.servlet.http.HttpServletRequest, javax.servlet.http.HttpServletResponse)
      */
-    public void handle(HttpServletRequest request, HttpServletResponse response) throws IOException
+    public void handle(HttpServletRequest request, final HttpServletResponse response) throws IOException
     {
+        // Some containers (see BasePollHandler) restart the request when a
+        // Sleeper is woken up, in which case there is nothing left to do.
+        if (containerAbstraction != null && containerAbstraction.isResponseCompleted(request))
+        {
+            return;
+        }
+
+        Sleeper sleeper = null;
+        Runnable onAwakening = null;
+
         try
         {
             CallBatch batch = new CallBatch(request);
@@ -88,11 +104,52 @@ public abstract class BaseCallHandler extends BaseDwrpHandler
             Calls calls = marshallInbound(batch);
 
             Replies replies = remoter.execute(calls);
-            marshallOutbound(replies, response);
+
+            final PendingReplies pending = new PendingReplies(replies);
+            if (pending.isComplete())
+            {
+                marshallOutbound(pending.resolve(), response);
+            }
+            else
+            {
+                // Some of the remote methods returned Futures that have not
+                // completed, so we sleep until they have. The request may be
+                // resumed on another thread, so we remember the ScriptSession
+                final RealScriptSession scriptSession = (RealScriptSession) webContext.getScriptSession();
+
+                sleeper = containerAbstraction != null ? containerAbstraction.createSleeper(request) : new ThreadWaitSleeper();
+                final Alarm timeout = new TimedAlarm(sleeper, maxAsyncCallTime, timer);
+                pending.wakeWhenComplete(sleeper, timer);
+
+                onAwakening = new Runnable()
+                {
+                    public void run()
+                    {
+                        timeout.cancel();
+                        pending.cancel();
+
+                        try
+                        {
+                            marshallOutbound(pending.resolve(), scriptSession, response);
+                        }
+                        catch (IOException ex)
+                        {
+                            log.warn("Failed to write asynchronous replies to browser: " + ex);
+                        }
+                    }
+                };
+            }
         }
         catch (Exception ex)
         {
             marshallException(request, response, ex);
+            return;
+        }
+
+        // This *must* be the last thing in this method. See BasePollHandler
+        if (sleeper != null)
+        {
+            sleeper.goToSleep(onAwakening);
         }
     }
 
@@ -272,6 +329,21 @@ public abstract class BaseCallHandler extends BaseDwrpHandler
             return;
         }
 
+        marshallOutbound(replies, scriptSession, response);
+    }
+
+    /**
+     * Write the replies to the response.
+     * This is separate from {@link #marshallOutbound(Replies, HttpServletResponse)}
+     * because replies to asynchronous methods can be written from a thread
+     * that does not have a WebContext.
+     * @param replies The replies to write
+     * @param scriptSession The ScriptSession of the page that made the calls
+     * @param response The http response to write to
+     * @throws IOException If the write fails
+     */
+    protected void marshallOutbound(Replies replies, RealScriptSession scriptSession, HttpServletResponse response) throws IOException
+    {
         // Basic setup
         response.setContentType(getOutboundMimeType());
         PrintWriter out;
@@ -409,6 +481,22 @@ public abstract class BaseCallHandler extends BaseDwrpHandler
      */
     protected abstract void sendScript(PrintWriter out, String script) throws IOException;
 
+    /**
+     * Convert a script and send it to the browser.
+     * By default this converts the script to a String and passes it to
+     * {@link #sendScript(PrintWriter, String)}. Subclasses that do not need to
+     * alter the script can stream it straight to the browser instead using
+     * {@link ScriptBufferUtil#writeOutput(ScriptBuffer, ConverterManager, boolean, java.io.Writer)}
+     * @param out The stream to write to
+     * @param script The script to convert and send
+     * @throws IOException If the write fails
+     * @throws ConversionException If the script data can not be converted
+     */
+    protected void sendScript(PrintWriter out, ScriptBuffer script) throws IOException, ConversionException
+    {
+        sendScript(out, ScriptBufferUtil.createOutput(script, converterManager, jsonOutput));
+    }
+
     /**
      * What mime type should we send to the browser for this data?
      * @return A mime-type
@@ -469,7 +557,7 @@ public abstract class BaseCallHandler extends BaseDwrpHandler
         @Override
         public boolean addScript(ScriptBuffer script) throws IOException, ConversionException
         {
-            sendScript(out, ScriptBufferUtil.createOutput(script, converterManager, jsonOutput));
+            sendScript(out, script);
             return true;
         }
 
@@ -584,6 +672,49 @@ public abstract class BaseCallHandler extends BaseDwrpHandler
      */
     protected CreatorManager creatorManager = null;
 
+    /**
+     * @param containerAbstraction the containerAbstraction to set
+     */
+    public void setContainerAbstraction(ContainerAbstraction containerAbstraction)
+    {
+        this.containerAbstraction = containerAbstraction;
+    }
+
+    /**
+     * How we abstract away container specific logic, in this case the ability
+     * to sleep while waiting for asynchronous remote methods
+     */
+    protected ContainerAbstraction containerAbstraction = null;
+
+    /**
+     * Used to schedule the alarm that gives up on asynchronous remote methods,
+     * and to check on those that can't tell us when they are done
+     */
+    public void setHashedWheelTimer(HashedWheelTimer timer)
+    {
+        this.timer = timer;
+    }
+
+    /**
+     * @see #setHashedWheelTimer(HashedWheelTimer)
+     */
+    protected HashedWheelTimer timer;
+
+    /**
+     * How long do we wait for remote methods that return a
+     * {@link java.util.concurrent.Future} before we give up on them?
+     * @param maxAsyncCallTime The time to wait in milliseconds
+     */
+    public void setMaxAsyncCallTime(long maxAsyncCallTime)
+    {
+        this.maxAsyncCallTime = maxAsyncCallTime;
+    }
+
+    /**
+     * @see #setMaxAsyncCallTime(long)
+     */
+    protected long maxAsyncCallTime = 60000;
+
     /**
      * How we stash away the results of the request parse
      */
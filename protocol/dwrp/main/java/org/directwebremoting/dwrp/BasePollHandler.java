@@ -20,13 +20,13 @@ import java.io.PrintWriter;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.List;
-import java.util.concurrent.ScheduledThreadPoolExecutor;
 
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
 
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
+import org.directwebremoting.ScriptSession;
 import org.directwebremoting.WebContextFactory;
 import org.directwebremoting.extend.Alarm;
 import org.directwebremoting.extend.ContainerAbstraction;
@@ -39,6 +39,7 @@ import org.directwebremoting.extend.RealWebContext;
 import org.directwebremoting.extend.ScriptSessionManager;
 import org.directwebremoting.extend.ServerLoadMonitor;
 import org.directwebremoting.extend.Sleeper;
+import org.directwebremoting.impl.HashedWheelTimer;
 import org.directwebremoting.impl.OutputAlarm;
 import org.directwebremoting.impl.PollingServerLoadMonitor;
 import org.directwebremoting.impl.ShutdownAlarm;
@@ -106,7 +107,16 @@ public class BasePollHandler extends BaseDwrpHandler
         }
 
         // Security checks first, once we've parsed the input
-        checkGetAllowed(batch);
+        // An EventSource can only use GET, so event streams are only allowed
+        // GET when they have been turned on. We still check for CSRF attacks.
+        if (batch.getPartialResponse() == PartialResponse.EVENT_STREAM)
+        {
+            checkEventStreamAllowed();
+        }
+        else
+        {
+            checkGetAllowed(batch);
+        }
         checkNotCsrfAttack(request, batch);
 
         // Check to see that the page and script session id are valid
@@ -134,7 +144,7 @@ public class BasePollHandler extends BaseDwrpHandler
         Sleeper sleeper = containerAbstraction.createSleeper(request);
 
         // Create a conduit depending on the type of request (from the URL)
-        final BaseScriptConduit conduit = createScriptConduit(sleeper, batch, response);
+        final BaseScriptConduit conduit = createScriptConduit(sleeper, batch, response, scriptSession);
 
         // There are various reasons why we want to wake up and carry on ...
         final List<Alarm> alarms = new ArrayList<Alarm>();
@@ -147,7 +157,7 @@ public class BasePollHandler extends BaseDwrpHandler
         {
             // add an output listener to the script session that calls the
             // "wake me" method on whatever is putting us to sleep
-            alarms.add(new OutputAlarm(sleeper, scriptSession, maxWaitAfterWrite, executor));
+            alarms.add(new OutputAlarm(sleeper, scriptSession, maxWaitAfterWrite, timer));
         }
 
         // Use of comet depends on the type of browser and the number of current
@@ -186,7 +196,7 @@ public class BasePollHandler extends BaseDwrpHandler
         long connectedTime = slm.getConnectedTime();
         final int disconnectedTime = slm.getDisconnectedTime();
 
-        alarms.add(new TimedAlarm(sleeper, connectedTime, executor));
+        alarms.add(new TimedAlarm(sleeper, connectedTime, timer));
 
         // We also need to wake-up if the server is being shut down
         // WARNING: This code has a non-obvious side effect - The server load
@@ -238,14 +248,19 @@ public class BasePollHandler extends BaseDwrpHandler
      * Create the correct type of ScriptConduit depending on the request.
      * @param batch The parsed request
      * @param response Conduits need a response to write to
+     * @param scriptSession The session that the conduit will be added to
      * @return A correctly configured conduit
      * @throws IOException If the response can't be interrogated
      */
-    private BaseScriptConduit createScriptConduit(Sleeper sleeper, PollBatch batch, HttpServletResponse response) throws IOException
+    private BaseScriptConduit createScriptConduit(Sleeper sleeper, PollBatch batch, HttpServletResponse response, ScriptSession scriptSession) throws IOException
     {
         BaseScriptConduit conduit;
 
-        if (plain)
+        if (batch.getPartialResponse() == PartialResponse.EVENT_STREAM)
+        {
+            conduit = new EventStreamScriptConduit(sleeper, response, batch.getBatchId(), converterManager, jsonOutput, scriptSession, batch.getLastEventId());
+        }
+        else if (plain)
         {
             conduit = new PlainScriptConduit(sleeper, response, batch.getBatchId(), converterManager, jsonOutput);
         }
@@ -264,6 +279,18 @@ public class BasePollHandler extends BaseDwrpHandler
         return conduit;
     }
 
+    /**
+     * Complain if event streams are disabled
+     */
+    protected void checkEventStreamAllowed()
+    {
+        if (!eventStreamEnabled)
+        {
+            log.error("Event streams are disabled. To enable them set the init-param eventStreamEnabled to true.");
+            throw new SecurityException("Event streams disabled");
+        }
+    }
+
     /**
      * Send a script to the browser and wrap it in the required prefixes etc.
      * @param response The http response to write to
@@ -333,6 +360,22 @@ public class BasePollHandler extends BaseDwrpHandler
      */
     protected boolean activeReverseAjaxEnabled = false;
 
+    /**
+     * Do we allow browsers to poll using an EventSource? EventSource can only
+     * use GET, so this allows GET for polling even when
+     * allowGetForSafariButMakeForgeryEasier is not set.
+     * @param eventStreamEnabled Are event streams allowed
+     */
+    public void setEventStreamEnabled(boolean eventStreamEnabled)
+    {
+        this.eventStreamEnabled = eventStreamEnabled;
+    }
+
+    /**
+     * Do we allow browsers to poll using an EventSource?
+     */
+    protected boolean eventStreamEnabled = false;
+
     /**
      * Sometimes with proxies, you need to close the stream all the time to
      * make the flush work. A value of -1 indicated that we do not do early
@@ -426,17 +469,17 @@ public class BasePollHandler extends BaseDwrpHandler
     protected ContainerAbstraction containerAbstraction = null;
 
     /**
-     * How often do we check for script sessions that need timing out
+     * How we schedule the alarms that wake up polls
      */
-    public void setScheduledThreadPoolExecutor(ScheduledThreadPoolExecutor executor)
+    public void setHashedWheelTimer(HashedWheelTimer timer)
     {
-        this.executor = executor;
+        this.timer = timer;
     }
 
     /**
-     * @see #setScheduledThreadPoolExecutor(ScheduledThreadPoolExecutor)
+     * @see #setHashedWheelTimer(HashedWheelTimer)
      */
-    protected ScheduledThreadPoolExecutor executor;
+    protected HashedWheelTimer timer;
 
     /**
      * Are we using plain javascript or html wrapped javascript.
@@ -15,14 +15,13 @@
  */
 package org.directwebremoting.dwrp;
 
-import java.io.BufferedReader;
 import java.io.IOException;
 import java.io.InputStreamReader;
+import java.io.Reader;
 import java.util.Enumeration;
 import java.util.HashMap;
 import java.util.Iterator;
 import java.util.Map;
-import java.util.StringTokenizer;
 
 import javax.servlet.http.HttpServletRequest;
 
@@ -164,7 +163,7 @@ public class Batch
         Map<String, FormField> paramMap;
         paramMap = new HashMap<String, FormField>();
 
-        BufferedReader in = null;
+        Reader in = null;
         try
         {
             // I've had reports of data loss in Tomcat 5.0 that relate to this bug
@@ -174,48 +173,70 @@ public class Batch
             //   From: CAKALIC, JAMES P [AG-Contractor/1000]
             // It would be more normal to do the following:
             // BufferedReader in = req.getReader();
-            in = new BufferedReader(new InputStreamReader(req.getInputStream()));
-
-            while (true)
+            in = new InputStreamReader(req.getInputStream());
+
+            // We read the body in a single pass, splitting it into lines as
+            // we go. This is what BufferedReader.readLine() does, but without
+            // its extra buffer copy, and without a new String per line when
+            // a line arrives in a single read
+            char[] buffer = new char[BUFFER_SIZE];
+            StringBuilder partial = new StringBuilder();
+            boolean skipLf = false;
+
+            int read;
+            while ((read = in.read(buffer)) != -1)
             {
-                String line = in.readLine();
-
-                if (line == null)
+                int lineStart = 0;
+                for (int i = 0; i < read; i++)
                 {
-                    if (paramMap.isEmpty())
+                    char c = buffer[i];
+                    if (c == '\r' || c == '\n')
                     {
-                        // Normally speaking we should just bail out, but if
-                        // we are using DWR with Acegi without ActiveX on IE,
-                        // then Acegi 'fixes' the parameters for us.
-                        Enumeration<String> en = req.getParameterNames();
-                        while (en.hasMoreElements())
+                        // A \r\n pair is a single line ending
+                        if (!(skipLf && c == '\n'))
                         {
-                            String name = en.nextElement();
-                            paramMap.put(name, new FormField(req.getParameter(name)));
+                            String line;
+                            if (partial.length() == 0)
+                            {
+                                line = new String(buffer, lineStart, i - lineStart);
+                            }
+                            else
+                            {
+                                partial.append(buffer, lineStart, i - lineStart);
+                                line = partial.toString();
+                                partial.setLength(0);
+                            }
+
+                            parseBasicPostLine(line, paramMap);
                         }
-                    }
 
-                    break;
-                }
-
-                if (line.indexOf('&') != -1)
-                {
-                    // If there are any &'s then this must be iframe post and all the
-                    // parameters have got dumped on one line, split with &
-                    log.debug("Using iframe POST mode");
-                    StringTokenizer st = new StringTokenizer(line, "&");
-                    while (st.hasMoreTokens())
+                        skipLf = c == '\r';
+                        lineStart = i + 1;
+                    }
+                    else
                     {
-                        String part = st.nextToken();
-                        part = LocalUtil.urlDecode(part);
-
-                        parsePostLine(part, paramMap);
+                        skipLf = false;
                     }
                 }
-                else
+
+                partial.append(buffer, lineStart, read - lineStart);
+            }
+
+            if (partial.length() != 0)
+            {
+                parseBasicPostLine(partial.toString(), paramMap);
+            }
+
+            if (paramMap.isEmpty())
+            {
+                // Normally speaking we should just bail out, but if
+                // we are using DWR with Acegi without ActiveX on IE,
+                // then Acegi 'fixes' the parameters for us.
+                Enumeration<String> en = req.getParameterNames();
+                while (en.hasMoreElements())
                 {
-                    // Hooray, this is a normal one!
-                    parsePostLine(line, paramMap);
+                    String name = en.nextElement();
+                    paramMap.put(name, new FormField(req.getParameter(name)));
                 }
             }
         }
@@ -240,6 +261,54 @@ public class Batch
         return paramMap;
     }
 
+    /**
+     * Sort out a single line of a normal form submit
+     * @param line The line to parse
+     * @param paramMap The map to add parsed parameters to
+     */
+    private static void parseBasicPostLine(String line, Map<String, FormField> paramMap)
+    {
+        if (line.indexOf('&') != -1)
+        {
+            // If there are any &'s then this must be iframe post and all the
+            // parameters have got dumped on one line, split with &
+            log.debug("Using iframe POST mode");
+            parseSplitLine(line, '&', paramMap);
+        }
+        else
+        {
+            // Hooray, this is a normal one!
+            parsePostLine(line, paramMap);
+        }
+    }
+
+    /**
+     * Split a line that contains many parameters, URL decoding each one
+     * @param line The line to split
+     * @param separator The character between parameters
+     * @param paramMap The map to add parsed parameters to
+     */
+    private static void parseSplitLine(String line, char separator, Map<String, FormField> paramMap)
+    {
+        int start = 0;
+        while (start < line.length())
+        {
+            int end = line.indexOf(separator, start);
+            if (end == -1)
+            {
+                end = line.length();
+            }
+
+            if (end > start)
+            {
+                String part = LocalUtil.urlDecode(line.substring(start, end));
+                parsePostLine(part, paramMap);
+            }
+
+            start = end + 1;
+        }
+    }
+
     /**
      * All the parameters have got dumped on one line split with \n
      * See: http://bugzilla.opendarwin.org/show_bug.cgi?id=3565
@@ -265,14 +334,7 @@ public class Batch
         String value = paramMap.get(key).getString();
         String line = key + ProtocolConstants.INBOUND_DECL_SEPARATOR + value;
 
-        StringTokenizer st = new StringTokenizer(line, "\n");
-        while (st.hasMoreTokens())
-        {
-            String part = st.nextToken();
-            part = LocalUtil.urlDecode(part);
-
-            parsePostLine(part, paramMap);
-        }
+        parseSplitLine(line, '\n', paramMap);
     }
 
     /**
@@ -414,6 +476,11 @@ public class Batch
      */
     private final Map<String, FormField> extraParameters;
 
+    /**
+     * How many chars do we read from a POST body at a time?
+     */
+    private static final int BUFFER_SIZE = 4096;
+
     /**
      * What implementation of FileUpload are we using?
      */
@@ -16,6 +16,7 @@
 package org.directwebremoting.dwrp;
 
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
@@ -90,55 +91,54 @@ public class CallBatch extends Batch
             throw new SecurityException("CallBatch IDs may only contain Java Identifiers");
         }
 
+        // Sort the per-call parameters by call number in a single pass rather
+        // than searching all the parameters for each call
+        List<Map<String, FormField>> callParameters = indexCallParameters(callCount);
+
         // Extract the ids, script names and method names
         for (int callNum = 0; callNum < callCount; callNum++)
         {
             InboundContext inboundContext = new InboundContext();
             inboundContexts.add(inboundContext);
 
+            Map<String, FormField> parameters = callParameters.get(callNum);
             String prefix = ProtocolConstants.INBOUND_CALLNUM_PREFIX + callNum + ProtocolConstants.INBOUND_CALLNUM_SUFFIX;
 
             // The special values
-            String callId = extractParameter(prefix + ProtocolConstants.INBOUND_KEY_ID);
+            String callId = extractCallParameter(parameters, prefix + ProtocolConstants.INBOUND_KEY_ID);
             if (!LocalUtil.isLetterOrDigitOrUnderline(callId))
             {
                 throw new SecurityException("Call IDs may only contain Java Identifiers");
             }
 
-            String scriptName = extractParameter(prefix + ProtocolConstants.INBOUND_KEY_SCRIPTNAME);
+            String scriptName = extractCallParameter(parameters, prefix + ProtocolConstants.INBOUND_KEY_SCRIPTNAME);
             if (!LocalUtil.isLetterOrDigitOrUnderline(scriptName))
             {
                 throw new SecurityException("Script names may only contain Java Identifiers");
             }
 
-            String methodName = extractParameter(prefix + ProtocolConstants.INBOUND_KEY_METHODNAME);
+            String methodName = extractCallParameter(parameters, prefix + ProtocolConstants.INBOUND_KEY_METHODNAME);
             if (!LocalUtil.isLetterOrDigitOrUnderline(methodName))
             {
                 throw new SecurityException("Method names may only contain Java Identifiers");
             }
 
-            // Look for parameters to this method
-            for (Iterator<Map.Entry<String, FormField>> it = getExtraParameters().entrySet().iterator(); it.hasNext();)
+            // Everything else is a parameter to this method
+            for (Map.Entry<String, FormField> entry : parameters.entrySet())
             {
-                Map.Entry<String, FormField> entry = it.next();
                 String key = entry.getKey();
-
-                if (key.startsWith(prefix))
+                FormField formField = entry.getValue();
+                if (formField.isFile())
                 {
-                    FormField formField = entry.getValue();
-                    if (formField.isFile())
-                    {
-                        inboundContext.createInboundVariable(callNum, key, ProtocolConstants.TYPE_FILE, formField);
-                    }
-                    else
-                    {
-                        String[] split = ConvertUtil.splitInbound(formField.getString());
-
-                        String value = split[ConvertUtil.INBOUND_INDEX_VALUE];
-                        String type = split[ConvertUtil.INBOUND_INDEX_TYPE];
-                        inboundContext.createInboundVariable(callNum, key, type, value);
-                    }
-                    it.remove();
+                    inboundContext.createInboundVariable(callNum, key, ProtocolConstants.TYPE_FILE, formField);
+                }
+                else
+                {
+                    String[] split = ConvertUtil.splitInbound(formField.getString());
+
+                    String value = split[ConvertUtil.INBOUND_INDEX_VALUE];
+                    String type = split[ConvertUtil.INBOUND_INDEX_TYPE];
+                    inboundContext.createInboundVariable(callNum, key, type, value);
                 }
             }
 
@@ -147,6 +147,97 @@ public class CallBatch extends Batch
         }
     }
 
+    /**
+     * Remove all the parameters that belong to a call (i.e. that start with
+     * <code>c[callNum]-</code>) from the extra parameters, sorting them by
+     * call number.
+     * @param callCount The number of calls in the batch
+     * @return A map of parameters for each call
+     */
+    private List<Map<String, FormField>> indexCallParameters(int callCount)
+    {
+        List<Map<String, FormField>> callParameters = new ArrayList<Map<String, FormField>>(callCount);
+        for (int callNum = 0; callNum < callCount; callNum++)
+        {
+            callParameters.add(new HashMap<String, FormField>());
+        }
+
+        for (Iterator<Map.Entry<String, FormField>> it = getExtraParameters().entrySet().iterator(); it.hasNext();)
+        {
+            Map.Entry<String, FormField> entry = it.next();
+            int callNum = getCallNumber(entry.getKey(), callCount);
+            if (callNum != -1)
+            {
+                callParameters.get(callNum).put(entry.getKey(), entry.getValue());
+                it.remove();
+            }
+        }
+
+        return callParameters;
+    }
+
+    /**
+     * Find the call number from a parameter name like <code>c[callNum]-...</code>
+     * @param key The parameter name
+     * @param callCount The number of calls in the batch
+     * @return The call number or -1 if the key is not part of a call in this batch
+     */
+    private static int getCallNumber(String key, int callCount)
+    {
+        int prefixLength = ProtocolConstants.INBOUND_CALLNUM_PREFIX.length();
+        if (!key.startsWith(ProtocolConstants.INBOUND_CALLNUM_PREFIX) || key.length() <= prefixLength)
+        {
+            return -1;
+        }
+
+        // The call number is written without leading zeros
+        if (key.charAt(prefixLength) == '0' && !key.startsWith(ProtocolConstants.INBOUND_CALLNUM_SUFFIX, prefixLength + 1))
+        {
+            return -1;
+        }
+
+        int callNum = 0;
+        for (int i = prefixLength; i < key.length(); i++)
+        {
+            char c = key.charAt(i);
+            if (c >= '0' && c <= '9')
+            {
+                callNum = callNum * 10 + (c - '0');
+                if (callNum >= callCount)
+                {
+                    return -1;
+                }
+            }
+            else if (i > prefixLength && key.startsWith(ProtocolConstants.INBOUND_CALLNUM_SUFFIX, i))
+            {
+                return callNum;
+            }
+            else
+            {
+                return -1;
+            }
+        }
+
+        return -1;
+    }
+
+    /**
+     * Extract one of the special parameters of a call
+     * @param parameters The parameters to the call
+     * @param paramName The name of the parameter sent
+     * @return The found value
+     */
+    private static String extractCallParameter(Map<String, FormField> parameters, String paramName)
+    {
+        FormField formField = parameters.remove(paramName);
+        if (formField == null)
+        {
+            throw new IllegalArgumentException("Failed to find parameter: " + paramName);
+        }
+
+        return formField.getString();
+    }
+
     /**
      * @return the inboundContexts
      */
@@ -0,0 +1,189 @@
+/*
+ * Copyright 2005 Joe Walker
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.directwebremoting.dwrp;
+
+import java.util.ArrayList;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.ListIterator;
+
+import org.directwebremoting.ScriptSession;
+
+/**
+ * The events recently sent to a script session through an
+ * {@link EventStreamScriptConduit}, so that when an EventSource reconnects
+ * with a Last-Event-ID we can resend anything that was lost with the old
+ * connection.
+ * <p>The history is bounded both in number of events and in total size, since
+ * it is only there to bridge the gap between one connection and the next.
+ * @author Joe Walker [joe at getahead dot ltd dot uk]
+ */
+class EventStreamHistory
+{
+    /**
+     * Find the history for a script session, creating it if needed
+     * @param scriptSession The session that the events are sent to
+     * @return The history of events for that session
+     */
+    static EventStreamHistory getHistory(ScriptSession scriptSession)
+    {
+        synchronized (scriptSession)
+        {
+            EventStreamHistory history = (EventStreamHistory) scriptSession.getAttribute(ATTRIBUTE_HISTORY);
+            if (history == null)
+            {
+                history = new EventStreamHistory();
+                scriptSession.setAttribute(ATTRIBUTE_HISTORY, history);
+            }
+
+            return history;
+        }
+    }
+
+    /**
+     * Find an id for an event that is about to be sent. The event is only
+     * recorded using {@link #add(long, String)} when the send succeeds.
+     * @return The id of the new event
+     */
+    synchronized long nextId()
+    {
+        return nextId++;
+    }
+
+    /**
+     * Record an event that has been sent
+     * @param id The id from {@link #nextId()}
+     * @param data The content of the event
+     */
+    synchronized void add(long id, String data)
+    {
+        // Two conduits for a session may finish their writes out of order
+        ListIterator<Event> it = events.listIterator(events.size());
+        while (it.hasPrevious())
+        {
+            if (it.previous().id < id)
+            {
+                it.next();
+                break;
+            }
+        }
+        it.add(new Event(id, data));
+        size += data.length();
+
+        while (events.size() > MAX_EVENTS || (size > MAX_SIZE && events.size() > 1))
+        {
+            size -= events.removeFirst().data.length();
+        }
+    }
+
+    /**
+     * Find the events sent after the given event
+     * @param lastEventId The Last-Event-ID from a reconnecting EventSource
+     * @return The events that followed, oldest first, with the ids they were
+     * first sent with. Empty if the id is not one of ours or there is nothing
+     * to resend.
+     */
+    synchronized List<Event> getEventsAfter(String lastEventId)
+    {
+        List<Event> reply = new ArrayList<Event>();
+        if (lastEventId == null)
+        {
+            return reply;
+        }
+
+        long lastId;
+        try
+        {
+            lastId = Long.parseLong(lastEventId.trim());
+        }
+        catch (NumberFormatException ex)
+        {
+            return reply;
+        }
+
+        // An id we have not issued yet comes from some other history
+        if (lastId >= nextId)
+        {
+            return reply;
+        }
+
+        for (Event event : events)
+        {
+            if (event.id > lastId)
+            {
+                reply.add(event);
+            }
+        }
+
+        return reply;
+    }
+
+    /**
+     * An event that we have sent
+     */
+    static final class Event
+    {
+        /**
+         * @param id The id of the event
+         * @param data The content of the event
+         */
+        Event(long id, String data)
+        {
+            this.id = id;
+            this.data = data;
+        }
+
+        /**
+         * The id of the event
+         */
+        final long id;
+
+        /**
+         * The content of the event
+         */
+        final String data;
+    }
+
+    /**
+     * The recent events, oldest first
+     */
+    private final LinkedList<Event> events = new LinkedList<Event>();
+
+    /**
+     * The total length of the data in {@link #events}
+     */
+    private long size = 0;
+
+    /**
+     * The id for the next event
+     */
+    private long nextId = 1;
+
+    /**
+     * The most events that we remember
+     */
+    private static final int MAX_EVENTS = 100;
+
+    /**
+     * The most characters of events that we remember
+     */
+    private static final int MAX_SIZE = 64 * 1024;
+
+    /**
+     * The script session attribute under which we store the history
+     */
+    private static final String ATTRIBUTE_HISTORY = "org.directwebremoting.dwrp.EventStreamHistory";
+}
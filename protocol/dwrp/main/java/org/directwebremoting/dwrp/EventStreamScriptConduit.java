@@ -0,0 +1,175 @@
+/*
+ * Copyright 2005 Joe Walker
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.directwebremoting.dwrp;
+
+import java.io.IOException;
+
+import javax.servlet.http.HttpServletResponse;
+
+import org.directwebremoting.ConversionException;
+import org.directwebremoting.ScriptBuffer;
+import org.directwebremoting.ScriptSession;
+import org.directwebremoting.extend.ConverterManager;
+import org.directwebremoting.extend.ScriptBufferUtil;
+import org.directwebremoting.extend.Sleeper;
+import org.directwebremoting.util.MimeConstants;
+
+/**
+ * A ScriptConduit for use with a browser's Server-Sent Events EventSource.
+ * <p>Each script is sent as a single event, with an id so that a reconnecting
+ * EventSource can tell us (using Last-Event-ID) what it last saw. There is no
+ * need for the padding or the script-start and script-end markers of the other
+ * conduits because the browser does the framing for us.
+ * <p>When the poll finishes we do not send a callback script; we tell the
+ * EventSource how long to wait using a retry field and let it reconnect by
+ * itself.
+ * @author Joe Walker [joe at getahead dot ltd dot uk]
+ */
+public class EventStreamScriptConduit extends BaseScriptConduit
+{
+    /**
+     * Simple ctor
+     * @param sleeper If an error happens, who wants to know?
+     * @param response Used to flush output
+     * @param batchId The id of the batch that we are responding to
+     * @param converterManager How we convert objects to script
+     * @param jsonOutput Are we outputting in JSON mode?
+     * @param scriptSession The session that this conduit sends scripts to
+     * @param lastEventId The Last-Event-ID sent by a reconnecting EventSource
+     * @throws IOException If stream actions fail
+     */
+    public EventStreamScriptConduit(Sleeper sleeper, HttpServletResponse response, String batchId, ConverterManager converterManager, boolean jsonOutput, ScriptSession scriptSession, String lastEventId) throws IOException
+    {
+        super(sleeper, response, batchId, converterManager, jsonOutput);
+
+        history = EventStreamHistory.getHistory(scriptSession);
+
+        // Resend anything that was lost when the last connection closed. The
+        // events keep their ids, they are already in the history.
+        for (EventStreamHistory.Event event : history.getEventsAfter(lastEventId))
+        {
+            writeEvent(event.id, event.data);
+        }
+    }
+
+    /* (non-Javadoc)
+     * @see org.directwebremoting.dwrp.BaseScriptConduit#getOutboundMimeType()
+     */
+    @Override
+    protected String getOutboundMimeType()
+    {
+        return MimeConstants.MIME_EVENT_STREAM;
+    }
+
+    /* (non-Javadoc)
+     * @see org.directwebremoting.dwrp.BaseScriptConduit#beginStream()
+     */
+    @Override
+    public void beginStream()
+    {
+        // Proxies must not cache or buffer an event stream
+        response.setHeader("Cache-Control", "no-cache");
+    }
+
+    /* (non-Javadoc)
+     * @see org.directwebremoting.dwrp.BaseScriptConduit#endStream()
+     */
+    @Override
+    public void endStream()
+    {
+        flush();
+    }
+
+    /* (non-Javadoc)
+     * @see org.directwebremoting.dwrp.BaseScriptConduit#close(int)
+     */
+    @Override
+    public void close(int timetoNextPoll) throws IOException
+    {
+        synchronized (out)
+        {
+            out.print("retry: " + timetoNextPoll + "\n\n");
+        }
+
+        endStream();
+    }
+
+    /* (non-Javadoc)
+     * @see org.directwebremoting.ScriptConduit#addScript(org.directwebremoting.ScriptBuffer)
+     */
+    @Override
+    public boolean addScript(ScriptBuffer scriptBuffer) throws IOException, ConversionException
+    {
+        String script = ScriptBufferUtil.createOutput(scriptBuffer, converterManager, jsonOutput);
+
+        synchronized (out)
+        {
+            // If the write fails the script session queues the script again,
+            // so it must not also be in the history for a reconnecting
+            // EventSource, or the browser would get it twice
+            long id = history.nextId();
+            if (!writeEvent(id, script))
+            {
+                return false;
+            }
+
+            history.add(id, script);
+            return true;
+        }
+    }
+
+    /**
+     * Write a single event. A data field may not contain a newline, so each
+     * line of the script gets a data field of its own; the browser joins them
+     * back together with newlines.
+     * @param id The id of the event
+     * @param script The content of the event
+     * @return true/false depending on the write status
+     */
+    private boolean writeEvent(long id, String script)
+    {
+        synchronized (out)
+        {
+            out.print(formatEvent(id, script));
+            return flush();
+        }
+    }
+
+    /**
+     * Frame a script as a Server-Sent Event
+     * @param id The id of the event
+     * @param script The content of the event
+     * @return The text to send to the browser
+     */
+    protected static String formatEvent(long id, String script)
+    {
+        StringBuilder buffer = new StringBuilder(script.length() + 32);
+        buffer.append("id: ").append(id).append('\n');
+
+        for (String line : script.split("\r\n|\r|\n", -1))
+        {
+            buffer.append("data: ").append(line).append('\n');
+        }
+
+        buffer.append('\n');
+        return buffer.toString();
+    }
+
+    /**
+     * The events sent to our script session, to replay on reconnection
+     */
+    private final EventStreamHistory history;
+}
@@ -38,7 +38,13 @@ public enum PartialResponse
      * The client can only handle partial responses with a 4k data post
      * (can be whitespace) - we're talking IE here.
      */
-    FLUSH("2");
+    FLUSH("2"),
+
+    /**
+     * The client is using a Server-Sent Events EventSource, so partial
+     * responses are framed as events, and the browser reconnects by itself.
+     */
+    EVENT_STREAM("3");
 
     /**
      * @param id The string that the browser passes for this value
@@ -71,8 +77,8 @@ public enum PartialResponse
 
     /**
      * Convert a string from the web into a PartialResponse. The values are
-     * PARTIAL_RESPONSE_NO = "0", PARTIAL_RESPONSE_YES = "1" and
-     * PARTIAL_RESPONSE_FLUSH = "2"
+     * PARTIAL_RESPONSE_NO = "0", PARTIAL_RESPONSE_YES = "1",
+     * PARTIAL_RESPONSE_FLUSH = "2" and PARTIAL_RESPONSE_EVENT_STREAM = "3"
      * @param lookupid The PartialResponse to look-up
      * @return a matching PartialResponse or null if one was not found
      */
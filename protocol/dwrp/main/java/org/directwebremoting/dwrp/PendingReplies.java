@@ -0,0 +1,465 @@
+/*
+ * Copyright 2005 Joe Walker
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.directwebremoting.dwrp;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.directwebremoting.extend.Replies;
+import org.directwebremoting.extend.Reply;
+import org.directwebremoting.extend.Sleeper;
+import org.directwebremoting.impl.HashedWheelTimer;
+
+/**
+ * Remote methods may return a {@link Future} or a
+ * <code>java.util.concurrent.CompletionStage</code> rather than a value, in
+ * which case the reply can not be sent until it completes.
+ * PendingReplies keeps track of those so that the request can be put to sleep
+ * using a {@link Sleeper} and woken again when they are done.
+ * <p>
+ * A CompletionStage tells us directly when it completes. Since DWR needs to
+ * run on JDKs without CompletionStage this is done through reflection. Any
+ * other Future is checked periodically using a {@link HashedWheelTimer}.
+ * @author Joe Walker [joe at getahead dot ltd dot uk]
+ */
+final class PendingReplies
+{
+    /**
+     * @param replies The replies from the Remoter, some of which may be Futures
+     * or CompletionStages
+     */
+    PendingReplies(Replies replies)
+    {
+        this.replies = replies;
+
+        for (Reply reply : replies)
+        {
+            Object data = reply.getReply();
+            if (completionStageClass != null && completionStageClass.isInstance(data))
+            {
+                stages.put(data, new StageOutcome(data));
+            }
+            else if (data instanceof Future<?> && !((Future<?>) data).isDone())
+            {
+                futures.add((Future<?>) data);
+            }
+        }
+    }
+
+    /**
+     * @return true if there is nothing that has yet to complete
+     */
+    public boolean isComplete()
+    {
+        if (!futures.isEmpty())
+        {
+            return false;
+        }
+
+        for (StageOutcome outcome : stages.values())
+        {
+            if (!outcome.isDone())
+            {
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+    /**
+     * Arrange for the sleeper to be woken when everything completes
+     * @param sleeper The sleeper to wake
+     * @param timer Used to check up on Futures that can't tell us when they
+     * are done
+     */
+    public void wakeWhenComplete(final Sleeper sleeper, final HashedWheelTimer timer)
+    {
+        final AtomicInteger outstanding = new AtomicInteger(futures.size() + stages.size());
+        final Runnable onComplete = new Runnable()
+        {
+            public void run()
+            {
+                if (outstanding.decrementAndGet() == 0)
+                {
+                    sleeper.wakeUp();
+                }
+            }
+        };
+
+        for (StageOutcome outcome : stages.values())
+        {
+            outcome.whenDone(onComplete);
+        }
+
+        if (!futures.isEmpty())
+        {
+            final List<Future<?>> unobservable = new ArrayList<Future<?>>(futures);
+            Runnable check = new Runnable()
+            {
+                public void run()
+                {
+                    for (int i = unobservable.size() - 1; i >= 0; i--)
+                    {
+                        if (unobservable.get(i).isDone())
+                        {
+                            unobservable.remove(i);
+                            onComplete.run();
+                        }
+                    }
+
+                    // Only this task touches the list, and it does not run
+                    // again until it has rescheduled itself
+                    if (!unobservable.isEmpty() && !cancelled)
+                    {
+                        poller = timer.schedule(this, POLL_INTERVAL);
+                    }
+                }
+            };
+
+            poller = timer.schedule(check, POLL_INTERVAL);
+        }
+    }
+
+    /**
+     * Stop checking on Futures that can't tell us when they are done.
+     */
+    public void cancel()
+    {
+        cancelled = true;
+
+        HashedWheelTimer.Timeout temp = poller;
+        if (temp != null)
+        {
+            temp.cancel();
+        }
+    }
+
+    /**
+     * Create a set of replies in which each completed Future or
+     * CompletionStage is replaced by its value (or exception). Those that have
+     * not completed (because we ran out of time) are replied to with a
+     * {@link TimeoutException}.
+     * @return Replies that are ready to be marshalled
+     */
+    public Replies resolve()
+    {
+        Replies resolved = new Replies(replies.getCalls());
+        for (Reply reply : replies)
+        {
+            resolved.addReply(resolve(reply));
+        }
+
+        return resolved;
+    }
+
+    /**
+     * Replace a Future or CompletionStage in a Reply with its value
+     * @param reply The reply to check
+     * @return A reply that does not contain a Future or CompletionStage
+     */
+    private Reply resolve(Reply reply)
+    {
+        Object data = reply.getReply();
+
+        StageOutcome outcome = stages.get(data);
+        if (outcome != null)
+        {
+            return outcome.toReply(reply.getCallId());
+        }
+
+        if (!(data instanceof Future<?>))
+        {
+            return reply;
+        }
+
+        Future<?> future = (Future<?>) data;
+        if (!future.isDone())
+        {
+            future.cancel(false);
+            return timedOut(reply.getCallId());
+        }
+
+        try
+        {
+            return new Reply(reply.getCallId(), future.get());
+        }
+        catch (ExecutionException ex)
+        {
+            return new Reply(reply.getCallId(), null, ex.getCause());
+        }
+        catch (CancellationException ex)
+        {
+            return new Reply(reply.getCallId(), null, ex);
+        }
+        catch (InterruptedException ex)
+        {
+            Thread.currentThread().interrupt();
+            return new Reply(reply.getCallId(), null, ex);
+        }
+    }
+
+    /**
+     * The reply for something that did not complete in time
+     * @param callId The call that we are replying to
+     * @return A reply containing a {@link TimeoutException}
+     */
+    private static Reply timedOut(String callId)
+    {
+        return new Reply(callId, null, new TimeoutException("Remote method did not complete in time"));
+    }
+
+    /**
+     * Records the outcome of a CompletionStage when it tells us it is done.
+     * This is the InvocationHandler behind the BiConsumer that we pass to
+     * CompletionStage.whenComplete().
+     */
+    private static final class StageOutcome implements InvocationHandler
+    {
+        /**
+         * @param stage The CompletionStage to listen to
+         */
+        StageOutcome(Object stage)
+        {
+            this.stage = stage;
+
+            try
+            {
+                Object listener = Proxy.newProxyInstance(biConsumerClass.getClassLoader(), new Class<?>[] { biConsumerClass }, this);
+                whenCompleteMethod.invoke(stage, listener);
+            }
+            catch (Exception ex)
+            {
+                log.warn("Failed to listen for completion of " + stage, ex);
+                complete(null, ex);
+            }
+        }
+
+        /* (non-Javadoc)
+         * @see java.lang.reflect.InvocationHandler#invoke(java.lang.Object, java.lang.reflect.Method, java.lang.Object[])
+         */
+        public Object invoke(Object proxy, Method method, Object[] args)
+        {
+            if (method.getDeclaringClass() == Object.class)
+            {
+                if ("equals".equals(method.getName()))
+                {
+                    return proxy == args[0];
+                }
+                if ("hashCode".equals(method.getName()))
+                {
+                    return System.identityHashCode(proxy);
+                }
+                return "PendingReplies.listener";
+            }
+
+            // BiConsumer.accept(result, throwable)
+            complete(args[0], (Throwable) args[1]);
+            return null;
+        }
+
+        /**
+         * Record the outcome and tell anyone who is waiting
+         * @param value The result of the stage
+         * @param ex The exception that the stage failed with, or null
+         */
+        private void complete(Object value, Throwable ex)
+        {
+            Runnable temp;
+            synchronized (this)
+            {
+                if (done)
+                {
+                    return;
+                }
+
+                this.done = true;
+                this.value = value;
+                this.exception = unwrap(ex);
+                temp = listener;
+            }
+
+            if (temp != null)
+            {
+                temp.run();
+            }
+        }
+
+        /**
+         * @return true if the stage has completed
+         */
+        synchronized boolean isDone()
+        {
+            return done;
+        }
+
+        /**
+         * Run a task when the stage completes, or now if it already has
+         * @param task The task to run
+         */
+        void whenDone(Runnable task)
+        {
+            synchronized (this)
+            {
+                if (!done)
+                {
+                    listener = task;
+                    return;
+                }
+            }
+
+            task.run();
+        }
+
+        /**
+         * @param callId The call that we are replying to
+         * @return A reply containing the outcome of the stage
+         */
+        synchronized Reply toReply(String callId)
+        {
+            if (!done)
+            {
+                if (stage instanceof Future<?>)
+                {
+                    ((Future<?>) stage).cancel(false);
+                }
+                return timedOut(callId);
+            }
+
+            if (exception != null)
+            {
+                return new Reply(callId, null, exception);
+            }
+
+            return new Reply(callId, value);
+        }
+
+        /**
+         * Dependent stages report failures wrapped in a CompletionException
+         * @param ex The exception to unwrap
+         * @return The exception that the remote method failed with
+         */
+        private static Throwable unwrap(Throwable ex)
+        {
+            if (ex != null && ex.getCause() != null && "java.util.concurrent.CompletionException".equals(ex.getClass().getName()))
+            {
+                return ex.getCause();
+            }
+
+            return ex;
+        }
+
+        private final Object stage;
+
+        /**
+         * GuardedBy("this")
+         */
+        private boolean done = false;
+
+        /**
+         * GuardedBy("this")
+         */
+        private Object value;
+
+        /**
+         * GuardedBy("this")
+         */
+        private Throwable exception;
+
+        /**
+         * GuardedBy("this")
+         */
+        private Runnable listener;
+    }
+
+    /**
+     * The replies as returned from the Remoter
+     */
+    private final Replies replies;
+
+    /**
+     * The Futures in the replies that were not done when we were created and
+     * that can't tell us when they are done
+     */
+    private final List<Future<?>> futures = new ArrayList<Future<?>>();
+
+    /**
+     * The CompletionStages in the replies, and what became of them
+     */
+    private final Map<Object, StageOutcome> stages = new IdentityHashMap<Object, StageOutcome>();
+
+    /**
+     * The next check on Futures that can't tell us when they are done
+     */
+    private volatile HashedWheelTimer.Timeout poller = null;
+
+    /**
+     * Set when we no longer need to check on Futures
+     */
+    private volatile boolean cancelled = false;
+
+    /**
+     * How often do we check on Futures that can't tell us when they are done
+     */
+    private static final long POLL_INTERVAL = 25;
+
+    /**
+     * java.util.concurrent.CompletionStage if we are on a JDK that has it
+     */
+    private static Class<?> completionStageClass;
+
+    /**
+     * java.util.function.BiConsumer if we are on a JDK that has it
+     */
+    private static Class<?> biConsumerClass;
+
+    /**
+     * CompletionStage.whenComplete(BiConsumer)
+     */
+    private static Method whenCompleteMethod;
+
+    /**
+     * The log stream
+     */
+    private static final Log log = LogFactory.getLog(PendingReplies.class);
+
+    static
+    {
+        try
+        {
+            completionStageClass = Class.forName("java.util.concurrent.CompletionStage");
+            biConsumerClass = Class.forName("java.util.function.BiConsumer");
+            whenCompleteMethod = completionStageClass.getMethod("whenComplete", biConsumerClass);
+        }
+        catch (Exception ex)
+        {
+            log.debug("CompletionStage is not available. Futures returned from remote methods will be polled.");
+            completionStageClass = null;
+        }
+    }
+}
@@ -18,6 +18,10 @@ package org.directwebremoting.dwrp;
 import java.io.IOException;
 import java.io.PrintWriter;
 
+import org.directwebremoting.ConversionException;
+import org.directwebremoting.ScriptBuffer;
+import org.directwebremoting.extend.ScriptBufferUtil;
+import org.directwebremoting.util.DebuggingPrintWriter;
 import org.directwebremoting.util.MimeConstants;
 
 /**
@@ -70,6 +74,26 @@ public class PlainCallHandler extends BaseCallHandler
         }
     }
 
+    /* (non-Javadoc)
+     * @see org.directwebremoting.dwrp.BaseCallHandler#sendScript(java.io.PrintWriter, org.directwebremoting.ScriptBuffer)
+     */
+    @Override
+    protected void sendScript(PrintWriter out, ScriptBuffer script) throws IOException, ConversionException
+    {
+        // DebuggingPrintWriter only logs print()s so we don't stream to it
+        if (out instanceof DebuggingPrintWriter)
+        {
+            super.sendScript(out, script);
+            return;
+        }
+
+        synchronized (out)
+        {
+            ScriptBufferUtil.writeOutput(script, converterManager, jsonOutput, out);
+            out.println();
+        }
+    }
+
     /**
      * Do we allow ScriptTag remoting?
      * @param allowScriptTagRemoting The new value to set
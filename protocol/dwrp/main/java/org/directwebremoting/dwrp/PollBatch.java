@@ -38,6 +38,7 @@ public class PollBatch extends Batch
         batchId = extractParameter(ProtocolConstants.INBOUND_KEY_BATCHID);
         String prString = extractParameter(ProtocolConstants.INBOUND_KEY_PARTIAL_RESPONSE);
         partialResponse = PartialResponse.fromOrdinal(prString);
+        lastEventId = request.getHeader(HEADER_LAST_EVENT_ID);
     }
 
     /**
@@ -66,6 +67,26 @@ public class PollBatch extends Batch
      */
     private final PartialResponse partialResponse;
 
+    /**
+     * When an EventSource reconnects it tells us the id of the last event
+     * that it received.
+     * @return The Last-Event-ID header or null if there was not one
+     */
+    public String getLastEventId()
+    {
+        return lastEventId;
+    }
+
+    /**
+     * The id of the last event received by a reconnecting EventSource
+     */
+    private final String lastEventId;
+
+    /**
+     * The header in which EventSource sends the id of the last event
+     */
+    private static final String HEADER_LAST_EVENT_ID = "Last-Event-ID";
+
     /* (non-Javadoc)
      * @see java.lang.Object#toString()
      */
@@ -0,0 +1,167 @@
+/*
+ * Copyright 2005 Joe Walker
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.directwebremoting.dwrp;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import javax.servlet.ServletInputStream;
+
+import org.directwebremoting.extend.FormField;
+import org.directwebremoting.util.FakeHttpServletRequest;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * @author Joe Walker [joe at getahead dot ltd dot uk]
+ */
+public class BatchTest
+{
+    private static final String HEADER = "scriptSessionId=ss\nhttpSessionId=hs\npage=/page\nwindowName=win\n";
+
+    @Test
+    public void crlfSplitAcrossReads() throws Exception
+    {
+        Map<String, FormField> params = parse(HEADER, "a=1\r", "\nb=2\r\n", "c=3\r", "\r\n", "d=4\r\n");
+        assertEquals(4, params.size());
+        assertEquals("1", params.get("a").getString());
+        assertEquals("2", params.get("b").getString());
+        assertEquals("3", params.get("c").getString());
+        assertEquals("4", params.get("d").getString());
+    }
+
+    @Test
+    public void lineSplitAcrossReads() throws Exception
+    {
+        Map<String, FormField> params = parse(HEADER, "a=he", "ll", "o\nb", "=", "2\n");
+        assertEquals("hello", params.get("a").getString());
+        assertEquals("2", params.get("b").getString());
+    }
+
+    @Test
+    public void missingTrailingNewline() throws Exception
+    {
+        Map<String, FormField> params = parse(HEADER + "a=1\r\nb=last");
+        assertEquals("1", params.get("a").getString());
+        assertEquals("last", params.get("b").getString());
+    }
+
+    @Test
+    public void oversizedLine() throws Exception
+    {
+        StringBuilder value = new StringBuilder();
+        for (int i = 0; i < 10000; i++)
+        {
+            value.append((char) ('a' + i % 26));
+        }
+
+        // Longer than the read buffer, and broken into uneven reads
+        String body = HEADER + "big=" + value + "\r\nsmall=1\r\n";
+        List<String> chunks = new ArrayList<String>();
+        int size = 999;
+        for (int start = 0; start < body.length(); start += size)
+        {
+            size = (size == 999) ? 1001 : 999;
+            chunks.add(body.substring(start, Math.min(body.length(), start + size)));
+        }
+
+        Map<String, FormField> params = parse(chunks.toArray(new String[chunks.size()]));
+        assertEquals(value.toString(), params.get("big").getString());
+        assertEquals("1", params.get("small").getString());
+    }
+
+    @Test
+    public void iframePost() throws Exception
+    {
+        Map<String, FormField> params = parse("scriptSessionId=ss&httpSessionId=hs&page=%2Fpage&windowName=win&a=x%20y\n");
+        assertEquals("x y", params.get("a").getString());
+    }
+
+    /**
+     * Parse a POST body that arrives in the given reads
+     */
+    private static Map<String, FormField> parse(String... chunks) throws Exception
+    {
+        ChunkedRequest request = new ChunkedRequest(chunks);
+        request.setMethod("POST");
+        return new Batch(request).getExtraParameters();
+    }
+
+    /**
+     * A request whose body arrives in separate reads
+     */
+    private static class ChunkedRequest extends FakeHttpServletRequest
+    {
+        ChunkedRequest(String[] chunks)
+        {
+            this.chunks = chunks;
+        }
+
+        /* (non-Javadoc)
+         * @see org.directwebremoting.util.FakeHttpServletRequest#getInputStream()
+         */
+        @Override
+        public ServletInputStream getInputStream()
+        {
+            return new ServletInputStream()
+            {
+                @Override
+                public int read()
+                {
+                    byte[] single = new byte[1];
+                    return read(single, 0, 1) == -1 ? -1 : single[0];
+                }
+
+                @Override
+                public int read(byte[] b, int off, int len)
+                {
+                    while (current == null || position == current.length)
+                    {
+                        if (next == chunks.length)
+                        {
+                            return -1;
+                        }
+                        current = chunks[next++].getBytes();
+                        position = 0;
+                    }
+
+                    int count = Math.min(len, current.length - position);
+                    System.arraycopy(current, position, b, off, count);
+                    position += count;
+                    return count;
+                }
+
+                @Override
+                public int available() throws IOException
+                {
+                    // Nothing is ready until the next read, like a slow network
+                    return 0;
+                }
+
+                private byte[] current;
+
+                private int position;
+
+                private int next = 0;
+            };
+        }
+
+        private final String[] chunks;
+    }
+}
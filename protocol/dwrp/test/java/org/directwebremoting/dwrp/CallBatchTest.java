@@ -0,0 +1,127 @@
+/*
+ * Copyright 2005 Joe Walker
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.directwebremoting.dwrp;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.directwebremoting.extend.Call;
+import org.directwebremoting.extend.FormField;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * @author Joe Walker [joe at getahead dot ltd dot uk]
+ */
+public class CallBatchTest
+{
+    @Test
+    public void outOfOrderCalls()
+    {
+        Map<String, FormField> params = header(2);
+        call(params, 1, "Second", "two");
+        params.put("c1-param0", new FormField("string:b"));
+        call(params, 0, "First", "one");
+        params.put("c0-param0", new FormField("string:a"));
+
+        CallBatch batch = new CallBatch(params, false);
+        assertEquals(2, batch.getCalls().getCallCount());
+
+        Call first = batch.getCalls().getCall(0);
+        assertEquals("First", first.getScriptName());
+        assertEquals("one", first.getMethodName());
+        assertEquals("a", batch.getInboundContexts().get(0).getParameter(0, 0).getValue());
+
+        Call second = batch.getCalls().getCall(1);
+        assertEquals("Second", second.getScriptName());
+        assertEquals("b", batch.getInboundContexts().get(1).getParameter(1, 0).getValue());
+        assertTrue(batch.getExtraParameters().isEmpty());
+    }
+
+    @Test
+    public void multiDigitCallNumbers()
+    {
+        Map<String, FormField> params = header(12);
+        for (int i = 11; i >= 0; i--)
+        {
+            call(params, i, "Script" + i, "method");
+        }
+
+        CallBatch batch = new CallBatch(params, false);
+        for (int i = 0; i < 12; i++)
+        {
+            assertEquals("Script" + i, batch.getCalls().getCall(i).getScriptName());
+        }
+    }
+
+    @Test
+    public void sparseCalls()
+    {
+        Map<String, FormField> params = header(3);
+        call(params, 0, "First", "one");
+        call(params, 2, "Third", "three");
+
+        try
+        {
+            new CallBatch(params, false);
+            fail("Expected call 1 to be missing");
+        }
+        catch (IllegalArgumentException ex)
+        {
+            assertTrue(ex.getMessage().indexOf("c1-") != -1);
+        }
+    }
+
+    @Test
+    public void notCallParameters()
+    {
+        Map<String, FormField> params = header(1);
+        call(params, 0, "First", "one");
+
+        // Beyond the call count, leading zeros and missing numbers are not
+        // parameters of any call
+        params.put("c1-param0", new FormField("string:x"));
+        params.put("c00-param0", new FormField("string:x"));
+        params.put("c-param0", new FormField("string:x"));
+        params.put("c0x-param0", new FormField("string:x"));
+
+        CallBatch batch = new CallBatch(params, false);
+        assertEquals(1, batch.getCalls().getCallCount());
+        assertEquals(0, batch.getInboundContexts().get(0).getParameterCount(0));
+        assertEquals(4, batch.getExtraParameters().size());
+    }
+
+    private static Map<String, FormField> header(int callCount)
+    {
+        Map<String, FormField> params = new LinkedHashMap<String, FormField>();
+        params.put("callCount", new FormField(String.valueOf(callCount)));
+        params.put("batchId", new FormField("1"));
+        params.put("scriptSessionId", new FormField("ss"));
+        params.put("httpSessionId", new FormField("hs"));
+        params.put("page", new FormField("/page"));
+        params.put("windowName", new FormField("win"));
+        return params;
+    }
+
+    private static void call(Map<String, FormField> params, int callNum, String scriptName, String methodName)
+    {
+        String prefix = "c" + callNum + "-";
+        params.put(prefix + "id", new FormField(String.valueOf(callNum)));
+        params.put(prefix + "scriptName", new FormField(scriptName));
+        params.put(prefix + "methodName", new FormField(methodName));
+    }
+}
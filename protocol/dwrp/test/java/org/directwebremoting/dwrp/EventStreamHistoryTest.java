@@ -0,0 +1,136 @@
+/*
+ * Copyright 2005 Joe Walker
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.directwebremoting.dwrp;
+
+import java.util.List;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * @author Joe Walker [joe at getahead dot ltd dot uk]
+ */
+public class EventStreamHistoryTest
+{
+    private final EventStreamHistory history = new EventStreamHistory();
+
+    @Test
+    public void eventsAfter()
+    {
+        assertEquals(1, add("a"));
+        assertEquals(2, add("b"));
+        assertEquals(3, add("c"));
+
+        List<EventStreamHistory.Event> events = history.getEventsAfter("1");
+        assertEquals(2, events.size());
+        assertEquals(2, events.get(0).id);
+        assertEquals("b", events.get(0).data);
+        assertEquals(3, events.get(1).id);
+        assertEquals("c", events.get(1).data);
+
+        assertEquals(2, history.getEventsAfter(" 1 ").size());
+        assertTrue(history.getEventsAfter("3").isEmpty());
+    }
+
+    @Test
+    public void unknownIdsResendNothing()
+    {
+        add("a");
+        add("b");
+
+        assertTrue(history.getEventsAfter(null).isEmpty());
+        assertTrue(history.getEventsAfter("").isEmpty());
+        assertTrue(history.getEventsAfter("abc").isEmpty());
+
+        // An id we have not issued yet comes from some other history
+        assertTrue(history.getEventsAfter("3").isEmpty());
+        assertTrue(history.getEventsAfter("99").isEmpty());
+    }
+
+    @Test
+    public void staleIdsResendEverythingWeHave()
+    {
+        for (int i = 0; i < 150; i++)
+        {
+            add("event" + i);
+        }
+
+        List<EventStreamHistory.Event> events = history.getEventsAfter("10");
+        assertEquals(100, events.size());
+        assertEquals(51, events.get(0).id);
+        assertEquals(150, events.get(99).id);
+    }
+
+    @Test
+    public void boundedBySize()
+    {
+        String large = new String(new char[40 * 1024]);
+
+        add(large);
+        add(large);
+        List<EventStreamHistory.Event> events = history.getEventsAfter("0");
+        assertEquals(1, events.size());
+        assertEquals(2, events.get(0).id);
+
+        // An event bigger than the limit is still kept until the next one
+        String huge = new String(new char[100 * 1024]);
+        add(huge);
+        events = history.getEventsAfter("0");
+        assertEquals(1, events.size());
+        assertEquals(3, events.get(0).id);
+
+        add("small");
+        events = history.getEventsAfter("0");
+        assertEquals(1, events.size());
+        assertEquals("small", events.get(0).data);
+    }
+
+    @Test
+    public void failedSendsAreNotRecorded()
+    {
+        long failed = history.nextId();
+        add("b");
+
+        // The failed event is sent again later with a new id
+        List<EventStreamHistory.Event> events = history.getEventsAfter("0");
+        assertEquals(1, events.size());
+        assertEquals(failed + 1, events.get(0).id);
+    }
+
+    @Test
+    public void outOfOrderSendsAreKeptInOrder()
+    {
+        long first = history.nextId();
+        long second = history.nextId();
+        history.add(second, "b");
+        history.add(first, "a");
+        add("c");
+
+        List<EventStreamHistory.Event> events = history.getEventsAfter("0");
+        assertEquals(3, events.size());
+        assertEquals("a", events.get(0).data);
+        assertEquals("b", events.get(1).data);
+        assertEquals("c", events.get(2).data);
+    }
+
+    private long add(String data)
+    {
+        long id = history.nextId();
+        history.add(id, data);
+        return id;
+    }
+}
@@ -0,0 +1,193 @@
+/*
+ * Copyright 2005 Joe Walker
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.directwebremoting.dwrp;
+
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.io.Writer;
+
+import javax.servlet.http.HttpServletResponse;
+
+import org.directwebremoting.ScriptBuffer;
+import org.directwebremoting.ScriptSession;
+import org.directwebremoting.extend.ConverterManager;
+import org.directwebremoting.extend.NonNestedOutboundVariable;
+import org.directwebremoting.extend.OutboundContext;
+import org.directwebremoting.extend.Sleeper;
+import org.junit.Test;
+
+import static org.easymock.EasyMock.*;
+import static org.junit.Assert.*;
+
+/**
+ * @author Joe Walker [joe at getahead dot ltd dot uk]
+ */
+public class EventStreamScriptConduitTest
+{
+    @Test
+    public void formatEvent()
+    {
+        assertEquals("id: 7\ndata: alert(1);\n\n", EventStreamScriptConduit.formatEvent(7, "alert(1);"));
+        assertEquals("id: 1\ndata: \n\n", EventStreamScriptConduit.formatEvent(1, ""));
+    }
+
+    @Test
+    public void formatEventSplitsLines()
+    {
+        assertEquals("id: 2\ndata: a\ndata: b\ndata: c\ndata: d\n\n", EventStreamScriptConduit.formatEvent(2, "a\nb\r\nc\rd"));
+
+        // Empty lines and a trailing newline must survive the round trip
+        assertEquals("id: 3\ndata: a\ndata: \ndata: b\ndata: \n\n", EventStreamScriptConduit.formatEvent(3, "a\n\nb\n"));
+    }
+
+    @Test
+    public void replayKeepsIds() throws Exception
+    {
+        EventStreamHistory history = new EventStreamHistory();
+        add(history, "a");
+        add(history, "b");
+        add(history, "c");
+
+        StringWriter written = new StringWriter();
+        new EventStreamScriptConduit(createNiceMock(Sleeper.class), createResponse(written), "0", null, false, createScriptSession(history), "1");
+
+        assertEquals("id: 2\ndata: b\n\nid: 3\ndata: c\n\n", written.toString());
+
+        // Replaying must not add the events to the history again
+        assertEquals(3, history.getEventsAfter("0").size());
+        assertEquals(4, history.nextId());
+    }
+
+    @Test
+    public void replayTwice() throws Exception
+    {
+        EventStreamHistory history = new EventStreamHistory();
+        add(history, "a");
+        add(history, "b");
+
+        new EventStreamScriptConduit(createNiceMock(Sleeper.class), createResponse(new StringWriter()), "0", null, false, createScriptSession(history), "0");
+
+        // A browser that lost the replay as well gets the same events again
+        StringWriter written = new StringWriter();
+        new EventStreamScriptConduit(createNiceMock(Sleeper.class), createResponse(written), "0", null, false, createScriptSession(history), "0");
+        assertEquals("id: 1\ndata: a\n\nid: 2\ndata: b\n\n", written.toString());
+    }
+
+    @Test
+    public void failedWriteIsNotReplayed() throws Exception
+    {
+        EventStreamHistory history = new EventStreamHistory();
+        add(history, "a");
+
+        ConverterManager converterManager = createMock(ConverterManager.class);
+        expect(converterManager.convertOutbound(anyObject(), isA(OutboundContext.class))).andReturn(new NonNestedOutboundVariable("go();")).anyTimes();
+        replay(converterManager);
+
+        ScriptBuffer script = new ScriptBuffer();
+        script.appendScript("go();");
+
+        // The client has gone, so the script session will queue the script
+        // again, to send through the next conduit
+        BrokenWriter broken = new BrokenWriter();
+        EventStreamScriptConduit lost = new EventStreamScriptConduit(createNiceMock(Sleeper.class), createResponse(broken), "0", converterManager, false, createScriptSession(history), null);
+        broken.broken = true;
+        assertFalse(lost.addScript(script));
+
+        // The reconnecting EventSource must only get the queued copy
+        StringWriter written = new StringWriter();
+        EventStreamScriptConduit reconnected = new EventStreamScriptConduit(createNiceMock(Sleeper.class), createResponse(written), "0", converterManager, false, createScriptSession(history), "1");
+        assertEquals("", written.toString());
+
+        assertTrue(reconnected.addScript(script));
+        assertEquals("id: 3\ndata: go();\n\n", written.toString());
+        assertEquals(1, history.getEventsAfter("1").size());
+    }
+
+    @Test
+    public void eventStreamsNeedEnabling()
+    {
+        BasePollHandler handler = new PlainPollHandler();
+        try
+        {
+            handler.checkEventStreamAllowed();
+            fail("Event streams should be disabled by default");
+        }
+        catch (SecurityException ex)
+        {
+            // expected
+        }
+
+        handler.setEventStreamEnabled(true);
+        handler.checkEventStreamAllowed();
+    }
+
+    private static long add(EventStreamHistory history, String data)
+    {
+        long id = history.nextId();
+        history.add(id, data);
+        return id;
+    }
+
+    private static HttpServletResponse createResponse(Writer written) throws Exception
+    {
+        HttpServletResponse response = createNiceMock(HttpServletResponse.class);
+        expect(response.getWriter()).andReturn(new PrintWriter(written));
+        replay(response);
+        return response;
+    }
+
+    private static ScriptSession createScriptSession(EventStreamHistory history)
+    {
+        ScriptSession scriptSession = createNiceMock(ScriptSession.class);
+        expect(scriptSession.getAttribute((String) anyObject())).andReturn(history).anyTimes();
+        replay(scriptSession);
+        return scriptSession;
+    }
+
+    /**
+     * A Writer for a client that has gone away
+     */
+    private static class BrokenWriter extends Writer
+    {
+        @Override
+        public void write(char[] cbuf, int off, int len) throws IOException
+        {
+            checkBroken();
+        }
+
+        @Override
+        public void flush() throws IOException
+        {
+            checkBroken();
+        }
+
+        private void checkBroken() throws IOException
+        {
+            if (broken)
+            {
+                throw new IOException("Broken pipe");
+            }
+        }
+
+        @Override
+        public void close()
+        {
+        }
+
+        private boolean broken = false;
+    }
+}
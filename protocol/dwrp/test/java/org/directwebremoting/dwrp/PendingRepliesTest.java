@@ -0,0 +1,221 @@
+/*
+ * Copyright 2005 Joe Walker
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.directwebremoting.dwrp;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import org.directwebremoting.extend.Calls;
+import org.directwebremoting.extend.Replies;
+import org.directwebremoting.extend.Reply;
+import org.directwebremoting.extend.Sleeper;
+import org.directwebremoting.impl.HashedWheelTimer;
+import org.junit.After;
+import org.junit.Assume;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * @author Joe Walker [joe at getahead dot ltd dot uk]
+ */
+public class PendingRepliesTest
+{
+    private final HashedWheelTimer timer = new HashedWheelTimer();
+
+    @After
+    public void tearDown()
+    {
+        timer.stop();
+    }
+
+    @Test
+    public void completed() throws Exception
+    {
+        FutureTask<String> future = task("done");
+        future.run();
+
+        PendingReplies pending = new PendingReplies(replies(future, "plain"));
+        assertTrue(pending.isComplete());
+
+        Replies resolved = pending.resolve();
+        assertEquals("done", resolved.getReply(0).getReply());
+        assertEquals("plain", resolved.getReply(1).getReply());
+    }
+
+    @Test
+    public void pending() throws Exception
+    {
+        FutureTask<String> future = task("later");
+        PendingReplies pending = new PendingReplies(replies(future));
+        assertFalse(pending.isComplete());
+
+        LatchSleeper sleeper = new LatchSleeper();
+        pending.wakeWhenComplete(sleeper, timer);
+        assertFalse(sleeper.awoken.await(100, TimeUnit.MILLISECONDS));
+
+        future.run();
+        assertTrue(sleeper.awoken.await(5, TimeUnit.SECONDS));
+        assertEquals("later", pending.resolve().getReply(0).getReply());
+    }
+
+    @Test
+    public void failed() throws Exception
+    {
+        final IllegalStateException failure = new IllegalStateException("failed");
+        FutureTask<String> future = new FutureTask<String>(new Callable<String>()
+        {
+            public String call()
+            {
+                throw failure;
+            }
+        });
+        future.run();
+
+        Reply reply = new PendingReplies(replies(future)).resolve().getReply(0);
+        assertNull(reply.getReply());
+        assertSame(failure, reply.getThrowable());
+    }
+
+    @Test
+    public void timedOut() throws Exception
+    {
+        FutureTask<String> future = task("never");
+        PendingReplies pending = new PendingReplies(replies(future));
+        pending.wakeWhenComplete(new LatchSleeper(), timer);
+
+        // What BaseCallHandler does when the TimedAlarm goes off first
+        pending.cancel();
+        Reply reply = pending.resolve().getReply(0);
+        assertTrue(reply.getThrowable() instanceof TimeoutException);
+        assertTrue(future.isCancelled());
+    }
+
+    @Test
+    public void completionStage() throws Exception
+    {
+        Object completable = newCompletableFuture();
+        Object stage = stageOnly(completable);
+
+        PendingReplies pending = new PendingReplies(replies(stage));
+        assertFalse(pending.isComplete());
+
+        LatchSleeper sleeper = new LatchSleeper();
+        pending.wakeWhenComplete(sleeper, timer);
+
+        completable.getClass().getMethod("complete", Object.class).invoke(completable, "staged");
+        assertTrue(sleeper.awoken.await(5, TimeUnit.SECONDS));
+        assertTrue(pending.isComplete());
+        assertEquals("staged", pending.resolve().getReply(0).getReply());
+    }
+
+    @Test
+    public void failedCompletionStage() throws Exception
+    {
+        Object completable = newCompletableFuture();
+        IllegalStateException failure = new IllegalStateException("failed");
+        completable.getClass().getMethod("completeExceptionally", Throwable.class).invoke(completable, failure);
+
+        PendingReplies pending = new PendingReplies(replies(stageOnly(completable)));
+        assertTrue(pending.isComplete());
+        assertSame(failure, pending.resolve().getReply(0).getThrowable());
+    }
+
+    @Test
+    public void timedOutCompletionStage() throws Exception
+    {
+        PendingReplies pending = new PendingReplies(replies(stageOnly(newCompletableFuture())));
+        pending.wakeWhenComplete(new LatchSleeper(), timer);
+
+        pending.cancel();
+        assertTrue(pending.resolve().getReply(0).getThrowable() instanceof TimeoutException);
+    }
+
+    private static FutureTask<String> task(final String value)
+    {
+        return new FutureTask<String>(new Callable<String>()
+        {
+            public String call()
+            {
+                return value;
+            }
+        });
+    }
+
+    private static Replies replies(Object... data)
+    {
+        Replies replies = new Replies(new Calls());
+        for (int i = 0; i < data.length; i++)
+        {
+            replies.addReply(new Reply(String.valueOf(i), data[i]));
+        }
+        return replies;
+    }
+
+    /**
+     * DWR builds for JDKs without CompletableFuture, so we find it reflectively
+     */
+    private static Object newCompletableFuture() throws Exception
+    {
+        Class<?> completableClass = null;
+        try
+        {
+            completableClass = Class.forName("java.util.concurrent.CompletableFuture");
+        }
+        catch (ClassNotFoundException ex)
+        {
+            Assume.assumeNoException(ex);
+        }
+        return completableClass.newInstance();
+    }
+
+    /**
+     * Wrap a CompletableFuture so that it is a CompletionStage but not a Future
+     */
+    private static Object stageOnly(final Object completable) throws Exception
+    {
+        Class<?> stageClass = Class.forName("java.util.concurrent.CompletionStage");
+        return Proxy.newProxyInstance(stageClass.getClassLoader(), new Class<?>[] { stageClass }, new InvocationHandler()
+        {
+            public Object invoke(Object proxy, Method method, Object[] args) throws Throwable
+            {
+                return method.invoke(completable, args);
+            }
+        });
+    }
+
+    private static class LatchSleeper implements Sleeper
+    {
+        public void goToSleep(Runnable onAwakening)
+        {
+        }
+
+        public void wakeUp()
+        {
+            awoken.countDown();
+        }
+
+        private final CountDownLatch awoken = new CountDownLatch(1);
+
+        private static final long serialVersionUID = 1L;
+    }
+}